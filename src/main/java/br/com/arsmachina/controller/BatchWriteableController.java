@@ -0,0 +1,68 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+/**
+ * {@link WriteableController} that can write many objects in a single round trip to the object
+ * store, for example through JDBC batching.
+ * 
+ * @param <T> the entity class related to this controller.
+ * @param <K> the type of the field that represents the entity class' primary key.
+ */
+public interface BatchWriteableController<T, K extends Serializable> extends
+		WriteableController<T, K> {
+
+	/**
+	 * Tells whether the methods of this interface write all objects in a single round trip to the
+	 * object store. If not, they write them one by one.
+	 * 
+	 * @return a <code>boolean</code>.
+	 */
+	boolean isBatchWriteSupported();
+
+	/**
+	 * Saves (inserts) some objects.
+	 * 
+	 * @param objects a {@link Collection} of <code>T</code>.
+	 */
+	void saveAll(Collection<T> objects);
+
+	/**
+	 * Updates some objects. If any of them is not persistent, an
+	 * {@link IllegalArgumentException} is thrown.
+	 * 
+	 * @param objects a {@link Collection} of <code>T</code>.
+	 * @throws IllegalArgumentException if any object is null or not persistent.
+	 */
+	void updateAll(Collection<T> objects);
+
+	/**
+	 * Removes some objects.
+	 * 
+	 * @param objects a {@link Collection} of <code>T</code>.
+	 */
+	void deleteAll(Collection<T> objects);
+
+	/**
+	 * Removes some objects given their primary keys.
+	 * 
+	 * @param ids a {@link Collection} of <code>K</code>.
+	 */
+	void deleteByIds(Collection<K> ids);
+
+}
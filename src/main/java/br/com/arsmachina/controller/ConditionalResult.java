@@ -0,0 +1,93 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller;
+
+import java.io.Serializable;
+
+/**
+ * Class that represents the result of a conditional read, such as
+ * {@link ReadableController#findByIdIfChanged(Serializable, Serializable)}. When the object was
+ * not modified since the version known by the caller, it is not loaded and
+ * {@link #isModified()} returns <code>false</code>.
+ * 
+ * @param <T> the entity class.
+ */
+public class ConditionalResult<T> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final T object;
+
+	private final Serializable version;
+
+	private final boolean modified;
+
+	private ConditionalResult(T object, Serializable version, boolean modified) {
+		this.object = object;
+		this.version = version;
+		this.modified = modified;
+	}
+
+	/**
+	 * Returns a result telling that an object was not modified.
+	 * 
+	 * @param version a {@link Serializable} with the current version of the object.
+	 * @return a {@link ConditionalResult}.
+	 */
+	public static <T> ConditionalResult<T> notModified(Serializable version) {
+		return new ConditionalResult<T>(null, version, false);
+	}
+
+	/**
+	 * Returns a result with the current state of a modified object.
+	 * 
+	 * @param object a <code>T</code> or <code>null</code> if the object no longer exists.
+	 * @param version a {@link Serializable} with the current version of the object or
+	 * <code>null</code> if it is not known.
+	 * @return a {@link ConditionalResult}.
+	 */
+	public static <T> ConditionalResult<T> modified(T object, Serializable version) {
+		return new ConditionalResult<T>(object, version, true);
+	}
+
+	/**
+	 * Tells whether the object was modified since the version known by the caller.
+	 * 
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isModified() {
+		return modified;
+	}
+
+	/**
+	 * Returns the current state of the object.
+	 * 
+	 * @return a <code>T</code> or <code>null</code> if the object was not modified or no longer
+	 * exists.
+	 */
+	public T getObject() {
+		return object;
+	}
+
+	/**
+	 * Returns the current version of the object.
+	 * 
+	 * @return a {@link Serializable} or <code>null</code> if it is not known.
+	 */
+	public Serializable getVersion() {
+		return version;
+	}
+
+}
@@ -0,0 +1,50 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller;
+
+import java.util.List;
+
+/**
+ * {@link Controller} for entity classes whose primary keys are <code>int</code>s. It adds
+ * overloads that receive primitive identifiers, so callers do not need to box them.
+ * 
+ * @param <T> the entity class related to this controller.
+ */
+public interface IntKeyController<T> extends Controller<T, Integer> {
+
+	/**
+	 * Returns the object with a given primary key value.
+	 * 
+	 * @param id a <code>int</code>.
+	 * @return a <code>T</code>.
+	 */
+	T findById(int id);
+
+	/**
+	 * Returns the objects with some given primary key values.
+	 * 
+	 * @param ids a <code>int</code> array.
+	 * @return a {@link List} of <code>T</code>.
+	 */
+	List<T> findByIds(int[] ids);
+
+	/**
+	 * Removes an object given its primary key.
+	 * 
+	 * @param id a <code>int</code>.
+	 */
+	void delete(int id);
+
+}
@@ -0,0 +1,125 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller;
+
+import java.io.Serializable;
+import java.util.List;
+
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * Class that represents a page of objects returned by
+ * {@link ReadableController#findPage(int, int, SortCriterion...)}.
+ * 
+ * @param <T> the entity class.
+ */
+public class Page<T> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Value of {@link #getTotalCount()} when the total number of objects was not counted.
+	 */
+	public static final long UNKNOWN_TOTAL_COUNT = -1;
+
+	private final List<T> rows;
+
+	private final int firstResult;
+
+	private final int maxResults;
+
+	private final long totalCount;
+
+	private final boolean hasNext;
+
+	/**
+	 * Single constructor of this class.
+	 * 
+	 * @param rows a {@link List} of <code>T</code>. It cannot be <code>null</code>.
+	 * @param firstResult an <code>int</code> with the index of the first object of the page.
+	 * @param maxResults an <code>int</code> with the maximum number of objects in the page.
+	 * @param totalCount a <code>long</code> with the total number of objects or
+	 * {@link #UNKNOWN_TOTAL_COUNT}.
+	 * @param hasNext a <code>boolean</code> telling whether there are objects after this page.
+	 */
+	public Page(List<T> rows, int firstResult, int maxResults, long totalCount, boolean hasNext) {
+
+		if (rows == null) {
+			throw new IllegalArgumentException("Parameter rows cannot be null");
+		}
+
+		this.rows = rows;
+		this.firstResult = firstResult;
+		this.maxResults = maxResults;
+		this.totalCount = totalCount;
+		this.hasNext = hasNext;
+
+	}
+
+	/**
+	 * Returns the objects in this page.
+	 * 
+	 * @return a {@link List} of <code>T</code>.
+	 */
+	public List<T> getRows() {
+		return rows;
+	}
+
+	/**
+	 * Returns the index of the first object of this page. The first object has index 0.
+	 * 
+	 * @return an <code>int</code>.
+	 */
+	public int getFirstResult() {
+		return firstResult;
+	}
+
+	/**
+	 * Returns the maximum number of objects in this page.
+	 * 
+	 * @return an <code>int</code>.
+	 */
+	public int getMaxResults() {
+		return maxResults;
+	}
+
+	/**
+	 * Returns the total number of objects, in all pages.
+	 * 
+	 * @return a <code>long</code> or {@link #UNKNOWN_TOTAL_COUNT} if it was not counted.
+	 */
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Tells whether the total number of objects was counted.
+	 * 
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isTotalCountKnown() {
+		return totalCount != UNKNOWN_TOTAL_COUNT;
+	}
+
+	/**
+	 * Tells whether there are objects after this page.
+	 * 
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean hasNext() {
+		return hasNext;
+	}
+
+}
@@ -15,7 +15,9 @@
 package br.com.arsmachina.controller;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import br.com.arsmachina.dao.SortCriterion;
 
@@ -59,6 +61,28 @@ public interface ReadableController<T, K extends Serializable> {
 	 */
 	List<T> findByIds(K... ids);
 	
+	/**
+	 * Returns the object with a given primary key value unless it was not modified since a given
+	 * version, in which case the object is not loaded. It is meant to answer conditional requests
+	 * without loading unchanged objects.
+	 * 
+	 * @param id a <code>K</code>.
+	 * @param version a {@link Serializable} with the version known by the caller or
+	 * <code>null</code> if it does not know any.
+	 * @return a {@link ConditionalResult} of <code>T</code>.
+	 */
+	ConditionalResult<T> findByIdIfChanged(K id, Serializable version);
+	
+	/**
+	 * Bulk version of {@link #findByIdIfChanged(Serializable, Serializable)}.
+	 * 
+	 * @param versions a {@link Map} from primary key value to the version known by the caller,
+	 * which may be <code>null</code>.
+	 * @return a {@link Map} from primary key value to {@link ConditionalResult}, in the same
+	 * order of <code>versions</code>.
+	 */
+	Map<K, ConditionalResult<T>> findByIdsIfChanged(Map<K, ? extends Serializable> versions);
+	
 	/**
 	 * Executes a query by example.
 	 * 
@@ -79,6 +103,38 @@ public interface ReadableController<T, K extends Serializable> {
 	 */
 	List<T> findAll(int firstResult, int maxResults, SortCriterion... sortConstraints);
 	
+	/**
+	 * Returns a page of instances of the related entity class together with the total number of
+	 * instances, avoiding separate {@link #countAll()} and
+	 * {@link #findAll(int, int, SortCriterion...)} calls.
+	 * 
+	 * @param firstResult an <code>int</code> with the index of the first object to be returned.
+	 * The first object has index 0.
+	 * @param maxResults an <code>int</code> with the maximum number of objects to be returned.
+	 * @param sortCriteria a {@link SortCriterion} array used to define how the returned list
+	 * will be sorted.
+	 * @return a {@link Page} of <code>T</code>.
+	 */
+	Page<T> findPage(int firstResult, int maxResults, SortCriterion... sortCriteria);
+	
+	/**
+	 * Returns a page of instances of the related entity class. If <code>countTotal</code> is
+	 * <code>false</code>, the total number of instances is not counted, so
+	 * {@link Page#getTotalCount()} returns {@link Page#UNKNOWN_TOTAL_COUNT}, but
+	 * {@link Page#hasNext()} is still valid.
+	 * 
+	 * @param firstResult an <code>int</code> with the index of the first object to be returned.
+	 * The first object has index 0.
+	 * @param maxResults an <code>int</code> with the maximum number of objects to be returned.
+	 * @param countTotal a <code>boolean</code> telling whether the total number of instances must
+	 * be counted.
+	 * @param sortCriteria a {@link SortCriterion} array used to define how the returned list
+	 * will be sorted.
+	 * @return a {@link Page} of <code>T</code>.
+	 */
+	Page<T> findPage(int firstResult, int maxResults, boolean countTotal,
+			SortCriterion... sortCriteria);
+	
 	/**
 	 * Reattaches an object to the persistence context, if there is one. The object store
 	 * must not be changed. The attached object, which not necessarily is the one passed
@@ -99,4 +155,24 @@ public interface ReadableController<T, K extends Serializable> {
 	 */
 	T refresh(T object);
 	
+	/**
+	 * Reattaches some objects to the persistence context, if there is one. It is equivalent to
+	 * invoking {@link #reattach(Object)} for each object.
+	 * 
+	 * @param objects a {@link Collection} of <code>T</code>.
+	 * @return a {@link List} of <code>T</code> with the attached objects, in the same order.
+	 */
+	List<T> reattachAll(Collection<T> objects);
+	
+	/**
+	 * Refreshes some objects, getting the most recent version of their data from the object store
+	 * with as few round trips as possible. It is equivalent to invoking {@link #refresh(Object)}
+	 * for each object.
+	 * 
+	 * @param objects a {@link Collection} of <code>T</code>.
+	 * @return a {@link List} of <code>T</code> with the refreshed objects, in the same order, which
+	 * may or may not be the same objects passed in the parameter.
+	 */
+	List<T> refreshAll(Collection<T> objects);
+	
 }
@@ -0,0 +1,66 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+import br.com.arsmachina.controller.BatchWriteableController;
+import br.com.arsmachina.dao.WriteableDAO;
+
+/**
+ * Interface that can be implemented by {@link WriteableDAO}s that are able to write many objects
+ * in a single round trip to the object store, for example through JDBC batching. When a
+ * controller DAO implements it, the {@link BatchWriteableController} methods of the controller
+ * delegate to it.
+ *
+ * @param <T> the entity class.
+ * @param <K> the type of the field that represents the entity class' primary key.
+ */
+public interface BatchWriteSupport<T, K extends Serializable> {
+
+	/**
+	 * Saves (inserts) some objects. Its semantics are the same of invoking
+	 * {@link WriteableDAO#save(Object)} for each one.
+	 *
+	 * @param objects a {@link Collection} of <code>T</code>.
+	 */
+	void saveAll(Collection<T> objects);
+
+	/**
+	 * Updates some persistent objects in place. Its semantics are the same of invoking
+	 * {@link WriteableDAO#update(Object)} for each one, ignoring the returned objects.
+	 *
+	 * @param objects a {@link Collection} of <code>T</code>.
+	 */
+	void updateAll(Collection<T> objects);
+
+	/**
+	 * Removes some objects. Its semantics are the same of invoking
+	 * {@link WriteableDAO#delete(Object)} for each one.
+	 *
+	 * @param objects a {@link Collection} of <code>T</code>.
+	 */
+	void deleteAll(Collection<T> objects);
+
+	/**
+	 * Removes some objects given their primary keys. Its semantics are the same of invoking
+	 * {@link WriteableDAO#delete(Serializable)} for each one.
+	 *
+	 * @param ids a {@link Collection} of <code>K</code>.
+	 */
+	void deleteByIds(Collection<K> ids);
+
+}
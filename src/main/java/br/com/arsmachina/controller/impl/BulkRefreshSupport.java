@@ -0,0 +1,41 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.Collection;
+import java.util.List;
+
+import br.com.arsmachina.dao.ReadableDAO;
+
+/**
+ * Interface that can be implemented by {@link ReadableDAO}s that are able to refresh many
+ * objects at once, for example ORM-backed DAOs whose persistence context must see the new state.
+ * When a controller DAO implements it, the controller <code>refreshAll()</code> method delegates
+ * to it.
+ *
+ * @param <T> the entity class.
+ */
+public interface BulkRefreshSupport<T> {
+
+	/**
+	 * Refreshes some objects. Its semantics are the same of invoking
+	 * {@link ReadableDAO#refresh(Object)} for each one.
+	 *
+	 * @param objects a {@link Collection} of <code>T</code>.
+	 * @return a {@link List} of <code>T</code>, in the same order of <code>objects</code>.
+	 */
+	List<T> refreshAll(Collection<T> objects);
+
+}
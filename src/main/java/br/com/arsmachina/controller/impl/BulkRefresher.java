@@ -0,0 +1,172 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.com.arsmachina.dao.ReadableDAO;
+
+/**
+ * Class that implements the <code>refreshAll()</code> and <code>reattachAll()</code> methods
+ * shared by {@link ReadableControllerImpl} and {@link ControllerImpl}.
+ */
+final class BulkRefresher {
+
+	/**
+	 * Default maximum number of identifiers passed to a single <code>findByIds()</code> call.
+	 */
+	static final int DEFAULT_CHUNK_SIZE = 500;
+
+	private BulkRefresher() {
+	}
+
+	/**
+	 * Refreshes some objects. If the DAO implements {@link BulkRefreshSupport}, it does the work.
+	 * Otherwise, if there is an {@link IdentifierResolver}, the current state of the objects is
+	 * loaded through <code>findByIds()</code> calls with at most <code>chunkSize</code>
+	 * identifiers each and copied to the objects, except for {@link Collection}, {@link Map} and
+	 * object array properties, which usually map lazy associations. Objects managed by the
+	 * persistence context of a DAO implementing {@link PersistenceContextSupport} are refreshed
+	 * one by one without being loaded, as are objects without identifier or not found this way,
+	 * objects returned themselves by <code>findByIds()</code> and all objects if there is no
+	 * resolver.
+	 *
+	 * @return a {@link List} of <code>T</code>, in the same order of <code>objects</code>.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T, K extends Serializable> List<T> refreshAll(ReadableDAO<T, K> dao,
+			IdentifierResolver<T, K> resolver, Collection<T> objects, int chunkSize) {
+
+		if (objects == null) {
+			throw new IllegalArgumentException("Parameter objects cannot be null");
+		}
+
+		if (dao instanceof BulkRefreshSupport) {
+			return ((BulkRefreshSupport<T>) dao).refreshAll(objects);
+		}
+
+		final List<T> result = new ArrayList<T>(objects);
+
+		if (resolver == null) {
+
+			for (int i = 0; i < result.size(); i++) {
+				result.set(i, dao.refresh(result.get(i)));
+			}
+
+			return result;
+
+		}
+
+		final PersistenceContextSupport<T> context = dao instanceof PersistenceContextSupport
+				? (PersistenceContextSupport<T>) dao : null;
+		final boolean[] managed = new boolean[result.size()];
+		final List<K> ids = new ArrayList<K>(result.size());
+
+		for (int i = 0; i < result.size(); i++) {
+
+			final T object = result.get(i);
+
+			if (object != null && context != null && context.isManaged(object)) {
+				result.set(i, dao.refresh(object));
+				managed[i] = true;
+				continue;
+			}
+
+			final K id = object != null ? resolver.getId(object) : null;
+
+			if (id != null) {
+				ids.add(id);
+			}
+
+		}
+
+		final Map<K, T> current = new HashMap<K, T>();
+
+		for (int start = 0; start < ids.size(); start += chunkSize) {
+
+			final List<K> chunk = ids.subList(start, Math.min(start + chunkSize, ids.size()));
+			for (T object : dao.findByIds(Identifiers.toArray(chunk))) {
+				current.put(resolver.getId(object), object);
+			}
+
+		}
+
+		for (int i = 0; i < result.size(); i++) {
+
+			if (managed[i]) {
+				continue;
+			}
+
+			final T object = result.get(i);
+			final T loaded = object != null ? current.get(resolver.getId(object)) : null;
+
+			if (loaded == null || loaded == object) {
+				result.set(i, dao.refresh(object));
+			}
+			else {
+				copy(loaded, object);
+			}
+
+		}
+
+		return result;
+
+	}
+
+	/**
+	 * Reattaches some objects one by one, as reattaching does not reach the object store.
+	 *
+	 * @return a {@link List} of <code>T</code>, in the same order of <code>objects</code>.
+	 */
+	static <T, K extends Serializable> List<T> reattachAll(ReadableDAO<T, K> dao,
+			Collection<T> objects) {
+
+		if (objects == null) {
+			throw new IllegalArgumentException("Parameter objects cannot be null");
+		}
+
+		final List<T> result = new ArrayList<T>(objects.size());
+
+		for (T object : objects) {
+			result.add(dao.reattach(object));
+		}
+
+		return result;
+
+	}
+
+	/**
+	 * Copies the values of all writeable properties of an object to another one, except for
+	 * multi-valued ones, so the objects do not share collections.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> void copy(T source, T target) {
+
+		for (PropertyAccessor<T> accessor : PropertyAccessors.get((Class<T>) target.getClass()).values()) {
+
+			if (accessor.isWriteable() && !PropertyAccessors.isMultiValued(accessor.getType())) {
+				accessor.set(target, accessor.get(source));
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,738 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import br.com.arsmachina.controller.Controller;
+
+/**
+ * {@link Controller} decorator that caches the objects returned by
+ * {@link #findById(Serializable)} and {@link #findByIds(Serializable...)} for a given time to
+ * live (TTL).
+ * <p>
+ * When a cached object older than a given fraction of the TTL is read, it is still returned, but
+ * it is also scheduled to be reloaded in the background. Scheduled objects are reloaded through
+ * <code>findByIds()</code> calls of the decorated controller with at most
+ * {@link #setRefreshBatchSize(int) refreshBatchSize} primary key values each, run by the
+ * {@link Executor} passed to the constructor. This way, objects read more often than the TTL never
+ * expire. Objects that are not found when reloaded are removed from the cache.
+ * </p>
+ * <p>
+ * Objects written through this controller are removed from the cache, and loads of the same
+ * objects running at that time do not cache what they loaded. Writes done through other
+ * controllers are only seen after a refresh or after the TTL. The other methods are not cached.
+ * At most {@link #setMaximumSize(int) maximumSize} objects are cached, removing the least recently
+ * used ones when it is exceeded.
+ * </p>
+ * <p>
+ * Cached instances are not copied: the same instance is returned to every caller, in any thread,
+ * until it is refreshed or removed, so callers must treat it as read-only and must not attach it
+ * to a persistence context of their own. Background refreshes run in the {@link Executor}
+ * threads, outside the session or transaction of the thread that read the object, so the
+ * decorated controller must not rely on state bound to the calling thread, such as a
+ * thread-bound persistence context.
+ * </p>
+ *
+ * @param <T> the entity class related to this controller.
+ * @param <K> the type of the field that represents the entity class' primary key.
+ */
+public class CachingController<T, K extends Serializable> extends DelegatingController<T, K> {
+
+	/**
+	 * Default time to live, in seconds.
+	 */
+	public static final long DEFAULT_TIME_TO_LIVE = 300;
+
+	/**
+	 * Default fraction of the time to live after which cached objects are refreshed when read.
+	 */
+	public static final double DEFAULT_REFRESH_AHEAD_FACTOR = 0.75;
+
+	/**
+	 * Default maximum number of primary key values passed to a single <code>findByIds()</code>
+	 * refresh call.
+	 */
+	public static final int DEFAULT_REFRESH_BATCH_SIZE = 100;
+
+	/**
+	 * Default maximum number of cached objects.
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+	/**
+	 * Cached entries and invalidation markers in access order, guarded by <code>lock</code>.
+	 */
+	private final Map<K, Entry<T>> entries = new LinkedHashMap<K, Entry<T>>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, CachingController.Entry<T>> eldest) {
+
+			if (size() <= maximumSize) {
+				return false;
+			}
+
+			// loads that started before the invalidation can no longer see it
+			if (eldest.getValue().isInvalidation()) {
+				invalidationCount--;
+				epoch++;
+			}
+
+			return true;
+
+		}
+
+	};
+
+	private final Lock lock = new ReentrantLock();
+
+	/**
+	 * Number of invalidation markers in <code>entries</code>, guarded by <code>lock</code>.
+	 */
+	private int invalidationCount;
+
+	/**
+	 * Changed, while holding <code>lock</code>, when invalidations may have been lost, so no
+	 * load running at that time caches its result.
+	 */
+	private volatile long epoch;
+
+	private final ConcurrentMap<K, Entry<T>> pendingRefreshes = new ConcurrentHashMap<K, Entry<T>>();
+
+	private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong refreshCount = new AtomicLong();
+
+	private final AtomicLong refreshFailureCount = new AtomicLong();
+
+	private final IdentifierResolver<T, K> resolver;
+
+	private final Executor executor;
+
+	private volatile long timeToLive = TimeUnit.SECONDS.toNanos(DEFAULT_TIME_TO_LIVE);
+
+	private volatile double refreshAheadFactor = DEFAULT_REFRESH_AHEAD_FACTOR;
+
+	private volatile int refreshBatchSize = DEFAULT_REFRESH_BATCH_SIZE;
+
+	private volatile int maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param delegate a {@link Controller}. It cannot be <code>null</code>.
+	 * @param resolver an {@link IdentifierResolver}. It cannot be <code>null</code>.
+	 * @param executor an {@link Executor} used to refresh objects. It cannot be <code>null</code>.
+	 */
+	public CachingController(Controller<T, K> delegate, IdentifierResolver<T, K> resolver,
+			Executor executor) {
+
+		super(delegate);
+
+		if (resolver == null) {
+			throw new IllegalArgumentException("Parameter resolver cannot be null");
+		}
+
+		if (executor == null) {
+			throw new IllegalArgumentException("Parameter executor cannot be null");
+		}
+
+		this.resolver = resolver;
+		this.executor = executor;
+
+	}
+
+	/**
+	 * Sets the time to live of cached objects. The default value is 300 seconds.
+	 *
+	 * @param timeToLive a <code>long</code>. It must be positive.
+	 * @param unit a {@link TimeUnit}. It cannot be <code>null</code>.
+	 */
+	public void setTimeToLive(long timeToLive, TimeUnit unit) {
+
+		if (timeToLive <= 0) {
+			throw new IllegalArgumentException("Parameter timeToLive must be positive");
+		}
+
+		if (unit == null) {
+			throw new IllegalArgumentException("Parameter unit cannot be null");
+		}
+
+		this.timeToLive = unit.toNanos(timeToLive);
+
+	}
+
+	/**
+	 * Sets the fraction of the time to live after which cached objects are refreshed when read.
+	 * The default value is 0.75. A value of 1 disables refreshing ahead.
+	 *
+	 * @param refreshAheadFactor a <code>double</code> between 0 (exclusive) and 1 (inclusive).
+	 */
+	public void setRefreshAheadFactor(double refreshAheadFactor) {
+
+		if (refreshAheadFactor <= 0 || refreshAheadFactor > 1) {
+			throw new IllegalArgumentException(
+					"Parameter refreshAheadFactor must be greater than 0 and not greater than 1");
+		}
+
+		this.refreshAheadFactor = refreshAheadFactor;
+
+	}
+
+	/**
+	 * Sets the maximum number of primary key values passed to a single <code>findByIds()</code>
+	 * refresh call. The default value is 100.
+	 *
+	 * @param refreshBatchSize an <code>int</code>. It must be positive.
+	 */
+	public void setRefreshBatchSize(int refreshBatchSize) {
+
+		if (refreshBatchSize <= 0) {
+			throw new IllegalArgumentException("Parameter refreshBatchSize must be positive");
+		}
+
+		this.refreshBatchSize = refreshBatchSize;
+
+	}
+
+	/**
+	 * Sets the maximum number of cached objects. When it is exceeded, the least recently used
+	 * object is removed. The default value is 10000.
+	 *
+	 * @param maximumSize an <code>int</code>. It must be positive.
+	 */
+	public void setMaximumSize(int maximumSize) {
+
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("Parameter maximumSize must be positive");
+		}
+
+		this.maximumSize = maximumSize;
+
+	}
+
+	/**
+	 * Returns the object with a given primary key value from the cache, loading it if it is not
+	 * cached or expired.
+	 *
+	 * @param id a <code>K</code>.
+	 * @return a <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findById(java.io.Serializable)
+	 */
+	@Override
+	public T findById(K id) {
+
+		final long now = currentTime();
+		final long epoch = this.epoch;
+		final Entry<T> entry = getEntry(id);
+
+		if (entry != null && isFresh(entry, id, now)) {
+			hitCount.incrementAndGet();
+			return entry.value;
+		}
+
+		missCount.incrementAndGet();
+
+		final T object = super.findById(id);
+
+		if (id != null) {
+			cache(id, object, now, entry, epoch);
+		}
+
+		return object;
+
+	}
+
+	/**
+	 * Returns the objects with some given primary key values, loading the ones not cached or
+	 * expired through a single <code>findByIds()</code> call. The objects are returned in the
+	 * same order of <code>ids</code>, skipping the ones not found.
+	 *
+	 * @param ids a <code>K</code> array. It cannot be <code>null</code> nor contain
+	 * <code>null</code> values.
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findByIds(K[])
+	 */
+	@Override
+	public List<T> findByIds(K... ids) {
+
+		if (ids == null) {
+			throw new IllegalArgumentException("Parameter ids cannot be null");
+		}
+
+		final long now = currentTime();
+		final long epoch = this.epoch;
+		final Map<K, T> found = new HashMap<K, T>();
+		final Map<K, Entry<T>> missing = new LinkedHashMap<K, Entry<T>>();
+
+		for (K id : ids) {
+
+			if (id == null) {
+				throw new IllegalArgumentException("Parameter ids cannot contain null values");
+			}
+
+			final Entry<T> entry = getEntry(id);
+
+			if (entry != null && isFresh(entry, id, now)) {
+				found.put(id, entry.value);
+			}
+			else {
+				missing.put(id, entry);
+			}
+
+		}
+
+		hitCount.addAndGet(ids.length - missing.size());
+
+		if (!missing.isEmpty()) {
+
+			missCount.addAndGet(missing.size());
+
+			for (T object : super.findByIds(Identifiers.toArray(missing.keySet()))) {
+
+				final K id = resolver.getId(object);
+				found.put(id, object);
+				cache(id, object, now, missing.get(id), epoch);
+
+			}
+
+		}
+
+		final List<T> result = new ArrayList<T>(ids.length);
+
+		for (K id : ids) {
+
+			final T object = found.get(id);
+
+			if (object != null) {
+				result.add(object);
+			}
+
+		}
+
+		return result;
+
+	}
+
+	/**
+	 * Invokes <code>delegate.delete()</code> and removes the object from the cache.
+	 * @param object
+	 */
+	@Override
+	public void delete(T object) {
+		super.delete(object);
+		invalidate(object);
+	}
+
+	/**
+	 * Invokes <code>delegate.delete()</code> and removes the object from the cache.
+	 * @param id
+	 */
+	@Override
+	public void delete(K id) {
+		super.delete(id);
+		invalidate(id);
+	}
+
+	/**
+	 * Invokes <code>delegate.save()</code> and removes the object from the cache.
+	 * @param object
+	 */
+	@Override
+	public void save(T object) {
+		super.save(object);
+		invalidate(object);
+	}
+
+	/**
+	 * Invokes <code>delegate.update()</code> and removes the object from the cache.
+	 * @param object
+	 * @return a <code>T</code>.
+	 */
+	@Override
+	public T update(T object) {
+
+		final T result = super.update(object);
+		invalidate(object);
+
+		return result;
+
+	}
+
+	/**
+	 * Invokes <code>delegate.saveOrUpdate()</code> and removes the object from the cache.
+	 * @param object
+	 * @return a <code>T</code>.
+	 */
+	@Override
+	public T saveOrUpdate(T object) {
+
+		final T result = super.saveOrUpdate(object);
+		invalidate(object);
+
+		return result;
+
+	}
+
+	/**
+	 * Removes the object with a given primary key value from the cache. Loads of this object
+	 * running at this time do not cache their results.
+	 *
+	 * @param id a <code>K</code>.
+	 */
+	public void invalidate(K id) {
+
+		if (id != null) {
+			put(id, Entry.<T> invalidation());
+		}
+
+	}
+
+	/**
+	 * Removes all objects from the cache. Loads running at this time do not cache their results.
+	 */
+	public void invalidateAll() {
+
+		lock.lock();
+
+		try {
+			entries.clear();
+			invalidationCount = 0;
+			epoch++;
+		}
+		finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * Returns the number of cached objects, including expired ones not removed yet.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int size() {
+
+		lock.lock();
+
+		try {
+			return entries.size() - invalidationCount;
+		}
+		finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * Returns the number of objects read from the cache.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * Returns the number of objects loaded because they were not cached or were expired.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Returns the number of objects refreshed ahead of their expiration.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getRefreshCount() {
+		return refreshCount.get();
+	}
+
+	/**
+	 * Returns the number of background <code>findByIds()</code> calls that failed. The objects
+	 * they should have refreshed are kept and expire normally.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getRefreshFailureCount() {
+		return refreshFailureCount.get();
+	}
+
+	/**
+	 * Returns the current time, in nanoseconds, used to compute the age of cached objects.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	protected long currentTime() {
+		return System.nanoTime();
+	}
+
+	private void invalidate(T object) {
+
+		if (object != null) {
+			invalidate(resolver.getId(object));
+		}
+
+	}
+
+	/**
+	 * Tells whether an entry can be returned, scheduling its refresh if it is old enough.
+	 */
+	private boolean isFresh(Entry<T> entry, K id, long now) {
+
+		final long age = now - entry.loadedAt;
+		final long timeToLive = this.timeToLive;
+
+		if (entry.isInvalidation() || age >= timeToLive) {
+			return false;
+		}
+
+		if (age >= (long) (timeToLive * refreshAheadFactor)) {
+			scheduleRefresh(id, entry);
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Returns the entry of a given primary key value, marking it as recently used.
+	 */
+	private Entry<T> getEntry(K id) {
+
+		if (id == null) {
+			return null;
+		}
+
+		lock.lock();
+
+		try {
+			return entries.get(id);
+		}
+		finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * Caches an object unless its entry is no longer <code>previous</code>, the one found before
+	 * it started being loaded, because it was invalidated, refreshed or cached by another load
+	 * in the meantime, or invalidations may have been lost since <code>epoch</code> was read.
+	 */
+	private void cache(K id, T object, long loadedAt, Entry<T> previous, long epoch) {
+
+		if (object != null) {
+
+			lock.lock();
+
+			try {
+
+				if (this.epoch == epoch && entries.get(id) == previous) {
+					put(id, new Entry<T>(object, loadedAt));
+				}
+
+			}
+			finally {
+				lock.unlock();
+			}
+
+		}
+
+	}
+
+	/**
+	 * Puts an entry or invalidation marker, keeping the count of markers. The least recently used
+	 * entry is removed if the maximum size is exceeded.
+	 */
+	private void put(K id, Entry<T> entry) {
+
+		lock.lock();
+
+		try {
+
+			final Entry<T> previous = entries.put(id, entry);
+
+			if (previous != null && previous.isInvalidation()) {
+				invalidationCount--;
+			}
+
+			if (entry.isInvalidation()) {
+				invalidationCount++;
+			}
+
+		}
+		finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * Replaces or, if <code>object</code> is <code>null</code>, removes the entry of a given
+	 * primary key value if it is still <code>previous</code>.
+	 */
+	private boolean replace(K id, Entry<T> previous, T object, long loadedAt) {
+
+		lock.lock();
+
+		try {
+
+			if (entries.get(id) != previous) {
+				return false;
+			}
+
+			if (object != null) {
+				put(id, new Entry<T>(object, loadedAt));
+			}
+			else {
+				entries.remove(id);
+			}
+
+			return true;
+
+		}
+		finally {
+			lock.unlock();
+		}
+
+	}
+
+	private void scheduleRefresh(K id, Entry<T> entry) {
+
+		if (pendingRefreshes.putIfAbsent(id, entry) == null
+				&& refreshScheduled.compareAndSet(false, true)) {
+
+			try {
+				executor.execute(new Runnable() {
+
+					public void run() {
+						refreshPending();
+					}
+
+				});
+			}
+			catch (RejectedExecutionException e) {
+				refreshScheduled.set(false);
+				pendingRefreshes.clear();
+			}
+
+		}
+
+	}
+
+	/**
+	 * Reloads the objects scheduled to be refreshed. Each refreshed object replaces the entry that
+	 * scheduled it, unless this entry was invalidated or replaced in the meantime.
+	 */
+	private void refreshPending() {
+
+		refreshScheduled.set(false);
+
+		final int refreshBatchSize = this.refreshBatchSize;
+		final Map<K, Entry<T>> batch = new HashMap<K, Entry<T>>();
+		final Iterator<Map.Entry<K, Entry<T>>> iterator = pendingRefreshes.entrySet().iterator();
+
+		while (iterator.hasNext()) {
+
+			final Map.Entry<K, Entry<T>> pending = iterator.next();
+			batch.put(pending.getKey(), pending.getValue());
+			iterator.remove();
+
+			if (batch.size() == refreshBatchSize || !iterator.hasNext()) {
+
+				final long now = currentTime();
+				try {
+
+					for (T object : super.findByIds(Identifiers.toArray(batch.keySet()))) {
+
+						final K id = resolver.getId(object);
+						final Entry<T> previous = batch.remove(id);
+
+						if (previous != null && replace(id, previous, object, now)) {
+							refreshCount.incrementAndGet();
+						}
+
+					}
+
+					for (Map.Entry<K, Entry<T>> missing : batch.entrySet()) {
+						replace(missing.getKey(), missing.getValue(), null, now);
+					}
+
+				}
+				catch (RuntimeException e) {
+					// the current entries are kept and expire normally
+					refreshFailureCount.incrementAndGet();
+				}
+
+				batch.clear();
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * A cached object and the time it was loaded, or an invalidation marker, which has no object.
+	 * Markers take the place of invalidated objects, so loads that started before them can tell
+	 * that they were invalidated.
+	 */
+	private static final class Entry<T> {
+
+		final T value;
+
+		final long loadedAt;
+
+		Entry(T value, long loadedAt) {
+			this.value = value;
+			this.loadedAt = loadedAt;
+		}
+
+		static <T> Entry<T> invalidation() {
+			return new Entry<T>(null, 0);
+		}
+
+		boolean isInvalidation() {
+			return value == null;
+		}
+
+	}
+
+}
@@ -0,0 +1,184 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import br.com.arsmachina.controller.Controller;
+
+/**
+ * {@link ControllerDecorator} that wraps controllers in a {@link CachingController}, configured
+ * through the options given by {@link ControllerRegistry}:
+ * <ul>
+ * <li><code>timeToLive</code>: the time to live, in seconds.</li>
+ * <li><code>refreshAheadFactor</code>: the fraction of the time to live after which cached
+ * objects are refreshed when read.</li>
+ * <li><code>refreshBatchSize</code>: the maximum number of objects reloaded by each background
+ * refresh.</li>
+ * <li><code>maximumSize</code>: the maximum number of cached objects.</li>
+ * </ul>
+ * <p>
+ * Options not given keep the {@link CachingController} defaults. Unknown options and invalid
+ * values are rejected with an {@link IllegalStateException}, so typos in the configuration are
+ * not silently ignored. The {@link IdentifierResolver} of each entity class is the one registered
+ * through {@link #registerIdentifierResolver(Class, IdentifierResolver)} or, if none, the one of
+ * the decorated {@link ControllerImpl}, looked up through any {@link DelegatingController}s
+ * applied before this decorator.
+ * </p>
+ */
+public class CachingControllerDecorator implements ControllerDecorator {
+
+	/**
+	 * Name of the option that sets the time to live, in seconds.
+	 */
+	public static final String TIME_TO_LIVE = "timeToLive";
+
+	/**
+	 * Name of the option that sets the refresh-ahead factor.
+	 */
+	public static final String REFRESH_AHEAD_FACTOR = "refreshAheadFactor";
+
+	/**
+	 * Name of the option that sets the refresh batch size.
+	 */
+	public static final String REFRESH_BATCH_SIZE = "refreshBatchSize";
+
+	/**
+	 * Name of the option that sets the maximum number of cached objects.
+	 */
+	public static final String MAXIMUM_SIZE = "maximumSize";
+
+	private final Executor executor;
+
+	private final ConcurrentMap<Class<?>, IdentifierResolver<?, ?>> resolvers = new ConcurrentHashMap<Class<?>, IdentifierResolver<?, ?>>();
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param executor the {@link Executor} that runs the background refreshes of every created
+	 * {@link CachingController}. It cannot be <code>null</code>.
+	 */
+	public CachingControllerDecorator(Executor executor) {
+
+		if (executor == null) {
+			throw new IllegalArgumentException("Parameter executor cannot be null");
+		}
+
+		this.executor = executor;
+
+	}
+
+	/**
+	 * Registers the {@link IdentifierResolver} of an entity class, replacing the one previously
+	 * registered for it.
+	 *
+	 * @param <T> the entity class.
+	 * @param <K> the type of the field that represents the entity class' primary key.
+	 * @param entityClass a {@link Class}. It cannot be <code>null</code>.
+	 * @param resolver an {@link IdentifierResolver}. It cannot be <code>null</code>.
+	 */
+	public <T, K extends Serializable> void registerIdentifierResolver(Class<T> entityClass,
+			IdentifierResolver<T, K> resolver) {
+
+		if (entityClass == null) {
+			throw new IllegalArgumentException("Parameter entityClass cannot be null");
+		}
+
+		if (resolver == null) {
+			throw new IllegalArgumentException("Parameter resolver cannot be null");
+		}
+
+		resolvers.put(entityClass, resolver);
+
+	}
+
+	/**
+	 * Returns a {@link CachingController} that decorates the given controller.
+	 *
+	 * @throws IllegalStateException if no {@link IdentifierResolver} is found for the entity
+	 * class or if an option is unknown or has an invalid value.
+	 */
+	public <T, K extends Serializable> CachingController<T, K> decorate(
+			Controller<T, K> controller, Class<T> entityClass, Map<String, String> options) {
+
+		final CachingController<T, K> cachingController = new CachingController<T, K>(
+				controller, getIdentifierResolver(controller, entityClass), executor);
+
+		for (Map.Entry<String, String> option : options.entrySet()) {
+
+			final String name = option.getKey();
+			final String value = option.getValue();
+
+			try {
+
+				if (TIME_TO_LIVE.equals(name)) {
+					cachingController.setTimeToLive(Long.parseLong(value), TimeUnit.SECONDS);
+				}
+				else if (REFRESH_AHEAD_FACTOR.equals(name)) {
+					cachingController.setRefreshAheadFactor(Double.parseDouble(value));
+				}
+				else if (REFRESH_BATCH_SIZE.equals(name)) {
+					cachingController.setRefreshBatchSize(Integer.parseInt(value));
+				}
+				else if (MAXIMUM_SIZE.equals(name)) {
+					cachingController.setMaximumSize(Integer.parseInt(value));
+				}
+				else {
+					throw new IllegalStateException("Unknown caching option " + name
+							+ " for entity class " + entityClass.getName());
+				}
+
+			}
+			catch (IllegalArgumentException e) {
+				throw new IllegalStateException("Invalid value " + value + " of caching option "
+						+ name + " for entity class " + entityClass.getName(), e);
+			}
+
+		}
+
+		return cachingController;
+
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T, K extends Serializable> IdentifierResolver<T, K> getIdentifierResolver(
+			Controller<T, K> controller, Class<T> entityClass) {
+
+		IdentifierResolver<T, K> resolver = (IdentifierResolver<T, K>) resolvers.get(entityClass);
+		Controller<T, K> decorated = controller;
+
+		while (resolver == null && decorated instanceof DelegatingController) {
+			decorated = ((DelegatingController<T, K>) decorated).getDelegate();
+		}
+
+		if (resolver == null && decorated instanceof ControllerImpl) {
+			resolver = ((ControllerImpl<T, K>) decorated).getIdentifierResolver();
+		}
+
+		if (resolver == null) {
+			throw new IllegalStateException("No identifier resolver found for entity class "
+					+ entityClass.getName());
+		}
+
+		return resolver;
+
+	}
+
+}
@@ -0,0 +1,33 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+/**
+ * Priority classes of controller calls, used by {@link PriorityScheduler}. They are declared from
+ * the highest priority to the lowest.
+ */
+public enum CallPriority {
+
+	/**
+	 * Calls made on behalf of a waiting user.
+	 */
+	INTERACTIVE,
+
+	/**
+	 * Calls made by background and batch jobs.
+	 */
+	BATCH
+
+}
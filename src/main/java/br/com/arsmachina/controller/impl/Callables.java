@@ -0,0 +1,72 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Utility methods to run {@link Callable}s that wrap controller calls, which only throw unchecked
+ * exceptions.
+ */
+final class Callables {
+
+	private Callables() {
+	}
+
+	/**
+	 * Runs a {@link Callable} in the current thread, rethrowing unchecked exceptions unchanged.
+	 *
+	 * @param callable a {@link Callable}.
+	 * @return the value returned by the {@link Callable}.
+	 */
+	static <V> V call(Callable<V> callable) {
+
+		try {
+			return callable.call();
+		}
+		catch (RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+
+	}
+
+	/**
+	 * Returns the unchecked exception to be thrown for a given {@link ExecutionException}.
+	 * {@link Error}s are thrown directly.
+	 *
+	 * @param e an {@link ExecutionException}.
+	 * @return a {@link RuntimeException}.
+	 */
+	static RuntimeException unwrap(ExecutionException e) {
+
+		final Throwable cause = e.getCause();
+
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+		else if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		else {
+			return new IllegalStateException(cause);
+		}
+
+	}
+
+}
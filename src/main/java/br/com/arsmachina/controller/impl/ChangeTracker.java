@@ -0,0 +1,378 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import br.com.arsmachina.dao.WriteableDAO;
+
+/**
+ * Class that detects whether objects were changed since they were loaded. For each tracked
+ * object, it keeps a snapshot of its readable property values, which are compared to the current
+ * ones through <code>equals()</code> when the object is updated.
+ * <p>
+ * Only values of immutable value types (primitives and their wrappers, {@link String},
+ * {@link java.math.BigDecimal}, {@link java.math.BigInteger}, {@link Class} and enums), dates and
+ * primitive arrays are kept, the last two as copies. Properties with any other kind of value,
+ * such as embedded objects or associations, cannot be compared and are always considered
+ * changed. {@link Collection}, {@link Map} and object array properties are not read, so lazy
+ * collections are not initialized, and are always considered changed too: objects with such
+ * properties are always updated.
+ * </p>
+ * <p>
+ * Objects are tracked by identity and weakly referenced, so tracking does not prevent them from
+ * being garbage collected. Instances of this class are thread-safe and may be shared by the
+ * readable and writeable parts of a controller.
+ * </p>
+ *
+ * @param <T> the entity class.
+ */
+public class ChangeTracker<T> {
+
+	/**
+	 * Snapshot value of properties that cannot be compared.
+	 */
+	private static final Object UNKNOWN = new Object();
+
+	private final Map<IdentityKey, Object[]> snapshots =
+		new ConcurrentHashMap<IdentityKey, Object[]>();
+
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+	private final AtomicLong skippedUpdateCount = new AtomicLong();
+
+	private final AtomicLong partialUpdateCount = new AtomicLong();
+
+	/**
+	 * Takes a snapshot of an object, replacing the previous one.
+	 *
+	 * @param object a <code>T</code>. If it is <code>null</code>, nothing is done.
+	 */
+	public void track(T object) {
+
+		if (object != null) {
+			expungeStaleEntries();
+			snapshots.put(new IdentityKey(object, queue), snapshot(object));
+		}
+
+	}
+
+	/**
+	 * Takes snapshots of some objects.
+	 *
+	 * @param objects a {@link Collection} of <code>T</code>. It may be <code>null</code>.
+	 */
+	public void trackAll(Collection<? extends T> objects) {
+
+		if (objects != null) {
+
+			for (T object : objects) {
+				track(object);
+			}
+
+		}
+
+	}
+
+	/**
+	 * Stops tracking an object.
+	 *
+	 * @param object a <code>T</code>.
+	 */
+	public void untrack(T object) {
+
+		if (object != null) {
+			snapshots.remove(new IdentityKey(object, null));
+		}
+
+	}
+
+	/**
+	 * Stops tracking all objects.
+	 */
+	public void clear() {
+		snapshots.clear();
+	}
+
+	/**
+	 * Tells whether an object is being tracked.
+	 *
+	 * @param object a <code>T</code>.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isTracked(T object) {
+		return object != null && snapshots.containsKey(new IdentityKey(object, null));
+	}
+
+	/**
+	 * Returns the names of the properties changed since an object was tracked.
+	 *
+	 * @param object a <code>T</code>.
+	 * @return a {@link Set} of {@link String}s, empty if nothing was changed, or <code>null</code>
+	 * if the object is not being tracked.
+	 */
+	public Set<String> getChangedProperties(T object) {
+
+		if (object == null) {
+			return null;
+		}
+
+		final Object[] snapshot = snapshots.get(new IdentityKey(object, null));
+
+		if (snapshot == null) {
+			return null;
+		}
+
+		Set<String> changed = null;
+		int i = 0;
+
+		for (PropertyAccessor<T> accessor : getAccessors(object).values()) {
+
+			final Object value = snapshot[i++];
+
+			if (value == UNKNOWN || !equal(value, accessor.get(object))) {
+
+				if (changed == null) {
+					changed = new LinkedHashSet<String>();
+				}
+
+				changed.add(accessor.getName());
+
+			}
+
+		}
+
+		return changed != null ? changed : Collections.<String> emptySet();
+
+	}
+
+	/**
+	 * Updates an object through a DAO unless it was not changed since it was tracked, in which
+	 * case the object itself is returned. If only some properties were changed and the DAO
+	 * implements {@link PartialUpdateSupport}, only them are passed to it. Untracked objects are
+	 * always updated. The updated object is tracked afterwards.
+	 *
+	 * @param object a <code>T</code>.
+	 * @param dao a {@link WriteableDAO}. It cannot be <code>null</code>.
+	 * @return a <code>T</code>.
+	 */
+	@SuppressWarnings("unchecked")
+	public T update(T object, WriteableDAO<T, ?> dao) {
+
+		final Set<String> changed = getChangedProperties(object);
+		final T result;
+
+		if (changed != null && changed.isEmpty()) {
+			skippedUpdateCount.incrementAndGet();
+			return object;
+		}
+		else if (changed != null && dao instanceof PartialUpdateSupport) {
+			result = ((PartialUpdateSupport<T>) dao).update(object, changed);
+			partialUpdateCount.incrementAndGet();
+		}
+		else {
+			result = dao.update(object);
+		}
+
+		track(object);
+
+		if (result != object) {
+			track(result);
+		}
+
+		return result;
+
+	}
+
+	/**
+	 * Updates some objects through a single {@link BatchWriteSupport#updateAll(Collection)} call,
+	 * leaving out the objects not changed since they were tracked. Untracked objects are always
+	 * updated. The updated objects are tracked afterwards.
+	 *
+	 * @param objects a {@link Collection} of <code>T</code>. It cannot be <code>null</code>.
+	 * @param dao a {@link BatchWriteSupport}. It cannot be <code>null</code>.
+	 */
+	public void updateAll(Collection<T> objects, BatchWriteSupport<T, ?> dao) {
+
+		final List<T> changed = new ArrayList<T>(objects.size());
+
+		for (T object : objects) {
+
+			final Set<String> properties = getChangedProperties(object);
+
+			if (properties != null && properties.isEmpty()) {
+				skippedUpdateCount.incrementAndGet();
+			}
+			else {
+				changed.add(object);
+			}
+
+		}
+
+		if (!changed.isEmpty()) {
+			dao.updateAll(changed);
+			trackAll(changed);
+		}
+
+	}
+
+	/**
+	 * Returns the number of updates skipped because nothing was changed.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getSkippedUpdateCount() {
+		return skippedUpdateCount.get();
+	}
+
+	/**
+	 * Returns the number of updates that were passed only the changed properties.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getPartialUpdateCount() {
+		return partialUpdateCount.get();
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, PropertyAccessor<T>> getAccessors(T object) {
+		return PropertyAccessors.get((Class<T>) object.getClass());
+	}
+
+	private Object[] snapshot(T object) {
+
+		final Collection<PropertyAccessor<T>> accessors = getAccessors(object).values();
+		final Object[] snapshot = new Object[accessors.size()];
+		int i = 0;
+
+		for (PropertyAccessor<T> accessor : accessors) {
+			snapshot[i++] = PropertyAccessors.isMultiValued(accessor.getType()) ? UNKNOWN
+					: copy(accessor.get(object));
+		}
+
+		return snapshot;
+
+	}
+
+	/**
+	 * Returns a value that can be kept in a snapshot: the value itself for immutable value types,
+	 * a copy for dates and primitive arrays and {@link #UNKNOWN} for anything else.
+	 */
+	private static Object copy(Object value) {
+
+		if (value == null) {
+			return null;
+		}
+
+		final Class<?> type = value.getClass();
+
+		if (value instanceof Date) {
+			return ((Date) value).clone();
+		}
+		else if (PropertyAccessors.isValueType(type)) {
+			return value;
+		}
+		else if (type.isArray() && type.getComponentType().isPrimitive()) {
+
+			final int length = Array.getLength(value);
+			final Object copy = Array.newInstance(type.getComponentType(), length);
+			System.arraycopy(value, 0, copy, 0, length);
+
+			return copy;
+
+		}
+		else {
+			return UNKNOWN;
+		}
+
+	}
+
+	/**
+	 * Compares a snapshot value to a current one. Primitive arrays are compared by their contents.
+	 */
+	private static boolean equal(Object snapshot, Object value) {
+
+		if (snapshot == null || value == null) {
+			return snapshot == value;
+		}
+		else if (snapshot.getClass().isArray()) {
+			return Arrays.deepEquals(new Object[] { snapshot }, new Object[] { value });
+		}
+		else {
+			return snapshot.equals(value);
+		}
+
+	}
+
+	private void expungeStaleEntries() {
+
+		Object reference;
+
+		while ((reference = queue.poll()) != null) {
+			snapshots.remove(reference);
+		}
+
+	}
+
+	/**
+	 * Map key that weakly references an object and compares it by identity.
+	 */
+	private static final class IdentityKey extends WeakReference<Object> {
+
+		private final int hashCode;
+
+		public IdentityKey(Object object, ReferenceQueue<Object> queue) {
+			super(object, queue);
+			hashCode = System.identityHashCode(object);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+
+			if (this == object) {
+				return true;
+			}
+
+			if (!(object instanceof IdentityKey)) {
+				return false;
+			}
+
+			final Object referent = get();
+
+			return referent != null && referent == ((IdentityKey) object).get();
+
+		}
+
+	}
+
+}
@@ -0,0 +1,203 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.com.arsmachina.controller.ConditionalResult;
+import br.com.arsmachina.dao.ReadableDAO;
+
+/**
+ * Class that implements the conditional read methods shared by {@link ReadableControllerImpl} and
+ * {@link ControllerImpl}.
+ */
+final class ConditionalFinder {
+
+	private ConditionalFinder() {
+	}
+
+	/**
+	 * Returns the object with a given primary key value unless its current version, obtained from
+	 * a DAO implementing {@link VersionLookupSupport} or from the {@link VersionTracker}, is equal
+	 * to <code>version</code>. Loaded objects are compared again using the version tracker, if
+	 * there is one. Modified objects are not recorded in the version tracker, which is left to
+	 * the caller.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T, K extends Serializable> ConditionalResult<T> findByIdIfChanged(
+			ReadableDAO<T, K> dao, VersionTracker<T, K> versionTracker, K id, Serializable version) {
+
+		if (id == null) {
+			throw new IllegalArgumentException("Parameter id cannot be null");
+		}
+
+		final long generation = versionTracker != null ? versionTracker.getGeneration() : 0;
+		Serializable current = null;
+
+		if (version != null) {
+
+			if (dao instanceof VersionLookupSupport) {
+				current = ((VersionLookupSupport<K>) dao).findVersion(id);
+			}
+			else if (versionTracker != null) {
+				current = versionTracker.getVersion(id);
+			}
+
+			if (version.equals(current)) {
+				return ConditionalResult.notModified(current);
+			}
+
+		}
+
+		return toResult(versionTracker, generation, id, dao.findById(id), version, current);
+
+	}
+
+	/**
+	 * Bulk version of {@link #findByIdIfChanged(ReadableDAO, VersionTracker, Serializable,
+	 * Serializable)}. The objects that must be loaded are loaded in a single
+	 * <code>dao.findByIds()</code> call if there is an {@link IdentifierResolver} to match them
+	 * with their primary key values and one by one otherwise.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T, K extends Serializable> Map<K, ConditionalResult<T>> findByIdsIfChanged(
+			ReadableDAO<T, K> dao, VersionTracker<T, K> versionTracker,
+			IdentifierResolver<T, K> resolver, Map<K, ? extends Serializable> versions) {
+
+		if (versions == null) {
+			throw new IllegalArgumentException("Parameter versions cannot be null");
+		}
+
+		final List<K> known = new ArrayList<K>(versions.size());
+
+		for (Map.Entry<K, ? extends Serializable> entry : versions.entrySet()) {
+
+			if (entry.getKey() == null) {
+				throw new IllegalArgumentException("Parameter versions cannot have null keys");
+			}
+
+			if (entry.getValue() != null) {
+				known.add(entry.getKey());
+			}
+
+		}
+
+		final long generation = versionTracker != null ? versionTracker.getGeneration() : 0;
+		final Map<K, Serializable> current;
+
+		if (known.isEmpty()) {
+			current = new HashMap<K, Serializable>();
+		}
+		else if (dao instanceof VersionLookupSupport) {
+			current = ((VersionLookupSupport<K>) dao).findVersions(known);
+		}
+		else {
+
+			current = new HashMap<K, Serializable>();
+
+			if (versionTracker != null) {
+
+				for (K id : known) {
+					current.put(id, versionTracker.getVersion(id));
+				}
+
+			}
+
+		}
+
+		final Map<K, ConditionalResult<T>> result = new LinkedHashMap<K, ConditionalResult<T>>();
+		final List<K> missing = new ArrayList<K>();
+
+		for (Map.Entry<K, ? extends Serializable> entry : versions.entrySet()) {
+
+			final K id = entry.getKey();
+			final Serializable version = entry.getValue();
+			final Serializable currentVersion = current.get(id);
+
+			if (version != null && version.equals(currentVersion)) {
+				result.put(id, ConditionalResult.<T> notModified(currentVersion));
+			}
+			else {
+				result.put(id, null);
+				missing.add(id);
+			}
+
+		}
+
+		if (missing.isEmpty()) {
+			return result;
+		}
+
+		if (resolver == null) {
+
+			for (K id : missing) {
+				result.put(id, toResult(versionTracker, generation, id, dao.findById(id),
+						versions.get(id), current.get(id)));
+			}
+
+		}
+		else {
+
+			final Map<K, T> loaded = new HashMap<K, T>();
+			for (T object : dao.findByIds(Identifiers.toArray(missing))) {
+				loaded.put(resolver.getId(object), object);
+			}
+
+			for (K id : missing) {
+				result.put(id, toResult(versionTracker, generation, id, loaded.get(id),
+						versions.get(id), current.get(id)));
+			}
+
+		}
+
+		return result;
+
+	}
+
+	private static <T, K extends Serializable> ConditionalResult<T> toResult(
+			VersionTracker<T, K> versionTracker, long generation, K id, T object,
+			Serializable version, Serializable current) {
+
+		if (object == null) {
+
+			if (versionTracker != null) {
+				versionTracker.forgetId(id);
+			}
+
+			return ConditionalResult.modified(null, null);
+
+		}
+
+		if (versionTracker == null) {
+			return ConditionalResult.modified(object, current);
+		}
+
+		final Serializable loaded = versionTracker.versionOf(object);
+
+		if (version != null && version.equals(loaded)) {
+			versionTracker.record(object, generation);
+			return ConditionalResult.notModified(loaded);
+		}
+
+		return ConditionalResult.modified(object, loaded);
+
+	}
+
+}
@@ -0,0 +1,42 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import br.com.arsmachina.controller.Controller;
+
+/**
+ * Interface that defines a named decorator that {@link ControllerRegistry} applies to the
+ * controllers of the entity classes configured to use it, such as a {@link CachingController}.
+ */
+public interface ControllerDecorator {
+
+	/**
+	 * Decorates a controller.
+	 *
+	 * @param <T> the entity class.
+	 * @param <K> the type of the field that represents the entity class' primary key.
+	 * @param controller a {@link Controller}.
+	 * @param entityClass a {@link Class}.
+	 * @param options a {@link Map} with the options configured for this decorator and entity
+	 * class. It may be empty.
+	 * @return a {@link Controller}. It cannot be <code>null</code>.
+	 */
+	<T, K extends Serializable> Controller<T, K> decorate(Controller<T, K> controller,
+			Class<T> entityClass, Map<String, String> options);
+
+}
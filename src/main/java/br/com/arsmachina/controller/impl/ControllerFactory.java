@@ -0,0 +1,38 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+
+import br.com.arsmachina.controller.Controller;
+
+/**
+ * Interface that defines how {@link ControllerRegistry} creates the controller of an entity
+ * class. It is only invoked when the controller is first needed.
+ *
+ * @param <T> the entity class.
+ * @param <K> the type of the field that represents the entity class' primary key.
+ */
+public interface ControllerFactory<T, K extends Serializable> {
+
+	/**
+	 * Creates the controller of an entity class.
+	 *
+	 * @param entityClass a {@link Class}.
+	 * @return a {@link Controller}. It cannot be <code>null</code>.
+	 */
+	Controller<T, K> create(Class<T> entityClass);
+
+}
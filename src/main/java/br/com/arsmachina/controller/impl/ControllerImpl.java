@@ -15,25 +15,34 @@
 package br.com.arsmachina.controller.impl;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
+import br.com.arsmachina.controller.BatchWriteableController;
+import br.com.arsmachina.controller.ConditionalResult;
 import br.com.arsmachina.controller.Controller;
+import br.com.arsmachina.controller.Page;
 import br.com.arsmachina.dao.DAO;
 import br.com.arsmachina.dao.SortCriterion;
 
 /**
  * Abstract class that implements the {@link Controller} interface by delegating all method calls to
- * a {@link DAO} passed through its constructor.
+ * a {@link DAO} passed through its constructor. Reads are handled by a {@link ReadableControllerImpl}
+ * and writes by a {@link WriteableControllerImpl}, both created once in the constructor and sharing
+ * the same change and version trackers.
  * 
  * @author Thiago H. de Paula Figueiredo
  * @param <T> the entity class related to this controller.
  * @param <K> the type of the field that represents the entity class' primary key.
  */
-public abstract class ControllerImpl<T, K extends Serializable> implements Controller<T, K> {
+public abstract class ControllerImpl<T, K extends Serializable> implements Controller<T, K>,
+		BatchWriteableController<T, K> {
 
-	private ReadableControllerImpl<T, K> readableController;
+	private final ReadableControllerImpl<T, K> readableController;
 
-	private WriteableControllerImpl<T, K> writeableController;
+	private final WriteableControllerImpl<T, K> writeableController;
 
 	/**
 	 * Single constructor of this class.
@@ -51,6 +60,122 @@ public abstract class ControllerImpl<T, K extends Serializable> implements Contr
 
 	}
 
+	/**
+	 * Returns the {@link ChangeTracker} used to skip updates of unchanged objects.
+	 * 
+	 * @return a {@link ChangeTracker} or <code>null</code> if change tracking is disabled.
+	 */
+	public ChangeTracker<T> getChangeTracker() {
+		return readableController.getChangeTracker();
+	}
+
+	/**
+	 * Sets the {@link ChangeTracker} used to skip updates of unchanged objects. When it is set,
+	 * the objects returned by the finder methods and by {@link #refresh(Object)} are tracked and
+	 * {@link #update(Object)} only invokes the DAO for objects that were changed.
+	 * 
+	 * @param changeTracker a {@link ChangeTracker} or <code>null</code> to disable change tracking.
+	 * @see ReadableControllerImpl#setChangeTracker(ChangeTracker)
+	 * @see WriteableControllerImpl#setChangeTracker(ChangeTracker)
+	 */
+	public void setChangeTracker(ChangeTracker<T> changeTracker) {
+		readableController.setChangeTracker(changeTracker);
+		writeableController.setChangeTracker(changeTracker);
+	}
+
+	/**
+	 * Returns the {@link VersionTracker} used by the conditional read methods.
+	 * 
+	 * @return a {@link VersionTracker} or <code>null</code>.
+	 */
+	public VersionTracker<T, K> getVersionTracker() {
+		return readableController.getVersionTracker();
+	}
+
+	/**
+	 * Sets the {@link VersionTracker} used by the conditional read methods.
+	 * 
+	 * @param versionTracker a {@link VersionTracker} or <code>null</code>.
+	 * @see ReadableControllerImpl#setVersionTracker(VersionTracker)
+	 * @see WriteableControllerImpl#setVersionTracker(VersionTracker)
+	 */
+	public void setVersionTracker(VersionTracker<T, K> versionTracker) {
+		readableController.setVersionTracker(versionTracker);
+		writeableController.setVersionTracker(versionTracker);
+	}
+
+	/**
+	 * Returns the {@link IdentifierResolver} used to match objects loaded in bulk.
+	 * 
+	 * @return an {@link IdentifierResolver} or <code>null</code>.
+	 */
+	public IdentifierResolver<T, K> getIdentifierResolver() {
+		return readableController.getIdentifierResolver();
+	}
+
+	/**
+	 * Sets the {@link IdentifierResolver} used to match objects loaded in bulk.
+	 * 
+	 * @param identifierResolver an {@link IdentifierResolver} or <code>null</code>.
+	 * @see ReadableControllerImpl#setIdentifierResolver(IdentifierResolver)
+	 */
+	public void setIdentifierResolver(IdentifierResolver<T, K> identifierResolver) {
+		readableController.setIdentifierResolver(identifierResolver);
+	}
+
+	/**
+	 * Sets the maximum number of identifiers passed to a single <code>dao.findByIds()</code> call
+	 * by {@link #refreshAll(Collection)}.
+	 * 
+	 * @param refreshChunkSize an <code>int</code>. It must be positive.
+	 * @see ReadableControllerImpl#setRefreshChunkSize(int)
+	 */
+	public void setRefreshChunkSize(int refreshChunkSize) {
+		readableController.setRefreshChunkSize(refreshChunkSize);
+	}
+
+	/**
+	 * Returns the {@link ExecutorService} used by the <code>findPage()</code> methods to count
+	 * objects concurrently with the loading of the page.
+	 * 
+	 * @return an {@link ExecutorService} or <code>null</code>.
+	 */
+	public ExecutorService getCountExecutor() {
+		return readableController.getCountExecutor();
+	}
+
+	/**
+	 * Sets the {@link ExecutorService} used by the <code>findPage()</code> methods to count
+	 * objects concurrently with the loading of the page.
+	 * 
+	 * @param countExecutor an {@link ExecutorService} or <code>null</code>.
+	 * @see ReadableControllerImpl#setCountExecutor(ExecutorService)
+	 */
+	public void setCountExecutor(ExecutorService countExecutor) {
+		readableController.setCountExecutor(countExecutor);
+	}
+
+	/**
+	 * Returns the number of objects loaded at once by the lists returned in lazy mode.
+	 * 
+	 * @return an <code>int</code>, 0 if lazy mode is disabled.
+	 */
+	public int getLazyChunkSize() {
+		return readableController.getLazyChunkSize();
+	}
+
+	/**
+	 * Enables or disables lazy mode. The lists returned in lazy mode load their objects after
+	 * the methods return, so they must be accessed while the DAO is still usable.
+	 * 
+	 * @param lazyChunkSize an <code>int</code> with the number of objects loaded at once or 0 to
+	 * disable lazy mode. It cannot be negative.
+	 * @see ReadableControllerImpl#setLazyChunkSize(int)
+	 */
+	public void setLazyChunkSize(int lazyChunkSize) {
+		readableController.setLazyChunkSize(lazyChunkSize);
+	}
+
 	/**
 	 * Invokes <code>dao.countAll()<code>.
 	 * @return
@@ -111,6 +236,27 @@ public abstract class ControllerImpl<T, K extends Serializable> implements Contr
 		return readableController.findByIds(ids);
 	}
 
+	/**
+	 * Returns the object with a given primary key value unless its version did not change.
+	 * @param id
+	 * @param version
+	 * @return a {@link ConditionalResult} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.impl.ReadableControllerImpl#findByIdIfChanged(java.io.Serializable, java.io.Serializable)
+	 */
+	public ConditionalResult<T> findByIdIfChanged(K id, Serializable version) {
+		return readableController.findByIdIfChanged(id, version);
+	}
+
+	/**
+	 * Bulk version of {@link #findByIdIfChanged(Serializable, Serializable)}.
+	 * @param versions
+	 * @return a {@link Map} from primary key value to {@link ConditionalResult}.
+	 * @see br.com.arsmachina.controller.impl.ReadableControllerImpl#findByIdsIfChanged(java.util.Map)
+	 */
+	public Map<K, ConditionalResult<T>> findByIdsIfChanged(Map<K, ? extends Serializable> versions) {
+		return readableController.findByIdsIfChanged(versions);
+	}
+
 	/**
 	 * Invokes <code>dao.refresh()<code>.
 	 * @param object
@@ -194,6 +340,52 @@ public abstract class ControllerImpl<T, K extends Serializable> implements Contr
 		return writeableController.update(object);
 	}
 	
+	/**
+	 * Tells whether the DAO implements {@link BatchWriteSupport}.
+	 * @return a <code>boolean</code>.
+	 * @see br.com.arsmachina.controller.impl.WriteableControllerImpl#isBatchWriteSupported()
+	 */
+	public boolean isBatchWriteSupported() {
+		return writeableController.isBatchWriteSupported();
+	}
+
+	/**
+	 * Saves some objects, in a single DAO call if the DAO implements {@link BatchWriteSupport}.
+	 * @param objects
+	 * @see br.com.arsmachina.controller.impl.WriteableControllerImpl#saveAll(java.util.Collection)
+	 */
+	public void saveAll(Collection<T> objects) {
+		writeableController.saveAll(objects);
+	}
+
+	/**
+	 * Updates some objects, in a single DAO call if the DAO implements {@link BatchWriteSupport}.
+	 * @param objects
+	 * @see br.com.arsmachina.controller.impl.WriteableControllerImpl#updateAll(java.util.Collection)
+	 */
+	public void updateAll(Collection<T> objects) {
+		writeableController.updateAll(objects);
+	}
+
+	/**
+	 * Removes some objects, in a single DAO call if the DAO implements {@link BatchWriteSupport}.
+	 * @param objects
+	 * @see br.com.arsmachina.controller.impl.WriteableControllerImpl#deleteAll(java.util.Collection)
+	 */
+	public void deleteAll(Collection<T> objects) {
+		writeableController.deleteAll(objects);
+	}
+
+	/**
+	 * Removes some objects given their primary keys, in a single DAO call if the DAO implements
+	 * {@link BatchWriteSupport}.
+	 * @param ids
+	 * @see br.com.arsmachina.controller.impl.WriteableControllerImpl#deleteByIds(java.util.Collection)
+	 */
+	public void deleteByIds(Collection<K> ids) {
+		writeableController.deleteByIds(ids);
+	}
+
 	/**
 	 * Invokes <code>dao.reattach()<code>.
 	 * @param object
@@ -204,6 +396,53 @@ public abstract class ControllerImpl<T, K extends Serializable> implements Contr
 		return readableController.reattach(object);
 	}
 
+	/**
+	 * Refreshes some objects.
+	 * @param objects
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.impl.ReadableControllerImpl#refreshAll(java.util.Collection)
+	 */
+	public List<T> refreshAll(Collection<T> objects) {
+		return readableController.refreshAll(objects);
+	}
+
+	/**
+	 * Reattaches some objects.
+	 * @param objects
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.impl.ReadableControllerImpl#reattachAll(java.util.Collection)
+	 */
+	public List<T> reattachAll(Collection<T> objects) {
+		return readableController.reattachAll(objects);
+	}
+
+	/**
+	 * Returns a page of objects and their total count.
+	 * @param firstResult
+	 * @param maxResults
+	 * @param sortCriteria
+	 * @return a {@link Page} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.impl.ReadableControllerImpl#findPage(int, int, br.com.arsmachina.dao.SortCriterion[])
+	 */
+	public Page<T> findPage(int firstResult, int maxResults, SortCriterion... sortCriteria) {
+		return readableController.findPage(firstResult, maxResults, sortCriteria);
+	}
+
+	/**
+	 * Returns a page of objects, with their total count if <code>countTotal</code> is
+	 * <code>true</code>.
+	 * @param firstResult
+	 * @param maxResults
+	 * @param countTotal
+	 * @param sortCriteria
+	 * @return a {@link Page} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.impl.ReadableControllerImpl#findPage(int, int, boolean, br.com.arsmachina.dao.SortCriterion[])
+	 */
+	public Page<T> findPage(int firstResult, int maxResults, boolean countTotal,
+			SortCriterion... sortCriteria) {
+		return readableController.findPage(firstResult, maxResults, countTotal, sortCriteria);
+	}
+
 	/**
 	 * Concrete {@link ReadableControllerImpl} subclass.
 	 * 
@@ -0,0 +1,435 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import br.com.arsmachina.controller.Controller;
+
+/**
+ * Class that resolves controllers by entity class, creating each one only when it is first
+ * requested. Registering a {@link ControllerFactory} is cheap, so applications with hundreds of
+ * entity classes do not pay for creating controllers they do not use at startup.
+ * <p>
+ * Created controllers are wrapped by the {@link ControllerDecorator}s configured for their entity
+ * class through {@link #configure(Properties)}. The <code>&lt;class name&gt;.decorators</code>
+ * property lists the names of the decorators, separated by commas, from the innermost to the
+ * outermost. Entity classes without it use the <code>default.decorators</code> property, if
+ * any. The <code>&lt;class name&gt;.&lt;decorator&gt;.&lt;option&gt;</code> and
+ * <code>default.&lt;decorator&gt;.&lt;option&gt;</code> properties are passed to the decorators
+ * as options, the former overriding the latter. For example:
+ * </p>
+ *
+ * <pre>
+ * default.decorators = metrics
+ * com.example.Person.decorators = caching, metrics
+ * com.example.Person.caching.timeToLive = 60
+ * </pre>
+ * <p>
+ * {@link CachingControllerDecorator} is a decorator that reads its options this way.
+ * </p>
+ * <p>
+ * Once created, a controller is returned without locking. Creation is done at most once per
+ * entity class, even when many threads request it at the same time. If it fails, the exception is
+ * thrown to the caller and the next request tries again. A factory or decorator may request the
+ * controllers of other entity classes, but a request for the controller being created, directly
+ * or through a cycle of entity classes, fails with an {@link IllegalStateException} instead of
+ * recursing. Configuration changes do not affect controllers already created. Instances of this
+ * class are thread-safe.
+ * </p>
+ */
+public class ControllerRegistry {
+
+	/**
+	 * Prefix of the properties used for entity classes without specific configuration.
+	 */
+	public static final String DEFAULT_PREFIX = "default";
+
+	/**
+	 * Suffix of the properties that list the decorators of an entity class.
+	 */
+	public static final String DECORATORS_SUFFIX = ".decorators";
+
+	private final ConcurrentMap<Class<?>, Holder<?, ?>> holders = new ConcurrentHashMap<Class<?>, Holder<?, ?>>();
+
+	private final ConcurrentMap<String, ControllerDecorator> decorators = new ConcurrentHashMap<String, ControllerDecorator>();
+
+	private volatile Properties configuration = new Properties();
+
+	/**
+	 * Registers the factory of the controller of an entity class.
+	 *
+	 * @param <T> the entity class.
+	 * @param <K> the type of the field that represents the entity class' primary key.
+	 * @param entityClass a {@link Class}. It cannot be <code>null</code>.
+	 * @param factory a {@link ControllerFactory}. It cannot be <code>null</code>.
+	 * @throws IllegalStateException if the entity class is already registered.
+	 */
+	public <T, K extends Serializable> void register(Class<T> entityClass,
+			ControllerFactory<T, K> factory) {
+
+		if (entityClass == null) {
+			throw new IllegalArgumentException("Parameter entityClass cannot be null");
+		}
+
+		if (factory == null) {
+			throw new IllegalArgumentException("Parameter factory cannot be null");
+		}
+
+		if (holders.putIfAbsent(entityClass, new Holder<T, K>(entityClass, factory)) != null) {
+			throw new IllegalStateException("Entity class already registered: "
+					+ entityClass.getName());
+		}
+
+	}
+
+	/**
+	 * Registers a decorator, replacing the one previously registered with the same name.
+	 *
+	 * @param name a {@link String}. It cannot be <code>null</code>.
+	 * @param decorator a {@link ControllerDecorator}. It cannot be <code>null</code>.
+	 */
+	public void registerDecorator(String name, ControllerDecorator decorator) {
+
+		if (name == null) {
+			throw new IllegalArgumentException("Parameter name cannot be null");
+		}
+
+		if (decorator == null) {
+			throw new IllegalArgumentException("Parameter decorator cannot be null");
+		}
+
+		decorators.put(name.trim(), decorator);
+
+	}
+
+	/**
+	 * Sets the configuration used to decorate the controllers created from now on. The
+	 * properties are copied.
+	 *
+	 * @param configuration a {@link Properties}. It cannot be <code>null</code>.
+	 */
+	public void configure(Properties configuration) {
+
+		if (configuration == null) {
+			throw new IllegalArgumentException("Parameter configuration cannot be null");
+		}
+
+		final Properties copy = new Properties();
+
+		for (Enumeration<?> names = configuration.propertyNames(); names.hasMoreElements();) {
+			final String name = (String) names.nextElement();
+			copy.setProperty(name, configuration.getProperty(name));
+		}
+
+		this.configuration = copy;
+
+	}
+
+	/**
+	 * Returns the controller of an entity class, creating and decorating it if needed.
+	 *
+	 * @param <T> the entity class.
+	 * @param <K> the type of the field that represents the entity class' primary key.
+	 * @param entityClass a {@link Class}. It cannot be <code>null</code>.
+	 * @return a {@link Controller}.
+	 * @throws IllegalArgumentException if the entity class is not registered.
+	 * @throws IllegalStateException if a configured decorator is not registered or if the
+	 * factory or a decorator of the entity class requests its controller, directly or through
+	 * other entity classes, while it is being created.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T, K extends Serializable> Controller<T, K> get(Class<T> entityClass) {
+
+		final Holder<T, K> holder = (Holder<T, K>) getHolder(entityClass);
+		final Controller<T, K> controller = holder.controller;
+
+		if (controller != null) {
+			return controller;
+		}
+
+		synchronized (holder) {
+
+			if (holder.controller == null) {
+
+				if (holder.creator == Thread.currentThread()) {
+					throw new IllegalStateException("Controller of entity class "
+							+ holder.entityClass.getName()
+							+ " requested again while it is being created");
+				}
+
+				holder.creator = Thread.currentThread();
+
+				try {
+					create(holder);
+				}
+				finally {
+					holder.creator = null;
+				}
+
+			}
+
+			return holder.controller;
+
+		}
+
+	}
+
+	/**
+	 * Tells whether an entity class is registered.
+	 *
+	 * @param entityClass a {@link Class}.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isRegistered(Class<?> entityClass) {
+		return entityClass != null && holders.containsKey(entityClass);
+	}
+
+	/**
+	 * Tells whether the controller of an entity class was already created.
+	 *
+	 * @param entityClass a {@link Class}.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isCreated(Class<?> entityClass) {
+
+		final Holder<?, ?> holder = entityClass != null ? holders.get(entityClass) : null;
+
+		return holder != null && holder.controller != null;
+
+	}
+
+	/**
+	 * Returns the number of registered entity classes.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getRegisteredCount() {
+		return holders.size();
+	}
+
+	/**
+	 * Returns the number of controllers already created.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getCreatedCount() {
+
+		int count = 0;
+
+		for (Holder<?, ?> holder : holders.values()) {
+
+			if (holder.controller != null) {
+				count++;
+			}
+
+		}
+
+		return count;
+
+	}
+
+	/**
+	 * Returns how long it took to create and decorate the controller of an entity class.
+	 *
+	 * @param entityClass a {@link Class}. It cannot be <code>null</code>.
+	 * @param unit a {@link TimeUnit}. It cannot be <code>null</code>.
+	 * @return a <code>long</code>, or <code>-1</code> if the controller was not created yet.
+	 * @throws IllegalArgumentException if the entity class is not registered.
+	 */
+	public long getInitializationTime(Class<?> entityClass, TimeUnit unit) {
+
+		if (unit == null) {
+			throw new IllegalArgumentException("Parameter unit cannot be null");
+		}
+
+		final Holder<?, ?> holder = getHolder(entityClass);
+
+		return holder.controller != null ? unit.convert(holder.initializationTime,
+				TimeUnit.NANOSECONDS) : -1;
+
+	}
+
+	/**
+	 * Returns how long it took to create and decorate each controller already created.
+	 *
+	 * @param unit a {@link TimeUnit}. It cannot be <code>null</code>.
+	 * @return a {@link Map} from entity class to initialization time, from the slowest to the
+	 * fastest.
+	 */
+	public Map<Class<?>, Long> getInitializationTimes(TimeUnit unit) {
+
+		if (unit == null) {
+			throw new IllegalArgumentException("Parameter unit cannot be null");
+		}
+
+		final Map<Holder<?, ?>, Long> times = new TreeMap<Holder<?, ?>, Long>(
+				new Comparator<Holder<?, ?>>() {
+
+					public int compare(Holder<?, ?> first, Holder<?, ?> second) {
+
+						if (first.initializationTime != second.initializationTime) {
+							return first.initializationTime > second.initializationTime ? -1 : 1;
+						}
+
+						return first.entityClass.getName().compareTo(second.entityClass.getName());
+
+					}
+
+				});
+
+		for (Holder<?, ?> holder : holders.values()) {
+
+			if (holder.controller != null) {
+				times.put(holder, unit.convert(holder.initializationTime, TimeUnit.NANOSECONDS));
+			}
+
+		}
+
+		final Map<Class<?>, Long> result = new LinkedHashMap<Class<?>, Long>();
+
+		for (Map.Entry<Holder<?, ?>, Long> entry : times.entrySet()) {
+			result.put(entry.getKey().entityClass, entry.getValue());
+		}
+
+		return Collections.unmodifiableMap(result);
+
+	}
+
+	private Holder<?, ?> getHolder(Class<?> entityClass) {
+
+		if (entityClass == null) {
+			throw new IllegalArgumentException("Parameter entityClass cannot be null");
+		}
+
+		final Holder<?, ?> holder = holders.get(entityClass);
+
+		if (holder == null) {
+			throw new IllegalArgumentException("Entity class not registered: "
+					+ entityClass.getName());
+		}
+
+		return holder;
+
+	}
+
+	/**
+	 * Creates and decorates the controller of a holder. It must be invoked while holding its
+	 * lock.
+	 */
+	private <T, K extends Serializable> void create(Holder<T, K> holder) {
+
+		final long start = System.nanoTime();
+		final Properties configuration = this.configuration;
+		final String className = holder.entityClass.getName();
+
+		Controller<T, K> controller = holder.factory.create(holder.entityClass);
+
+		if (controller == null) {
+			throw new IllegalStateException("Factory returned null for entity class " + className);
+		}
+
+		String names = configuration.getProperty(className + DECORATORS_SUFFIX);
+
+		if (names == null) {
+			names = configuration.getProperty(DEFAULT_PREFIX + DECORATORS_SUFFIX, "");
+		}
+
+		for (String name : names.split(",")) {
+
+			name = name.trim();
+
+			if (name.length() == 0) {
+				continue;
+			}
+
+			final ControllerDecorator decorator = decorators.get(name);
+
+			if (decorator == null) {
+				throw new IllegalStateException("Decorator " + name
+						+ " configured for entity class " + className + " is not registered");
+			}
+
+			final Map<String, String> options = new LinkedHashMap<String, String>();
+			addOptions(configuration, DEFAULT_PREFIX + "." + name + ".", options);
+			addOptions(configuration, className + "." + name + ".", options);
+
+			controller = decorator.decorate(controller, holder.entityClass, options);
+
+			if (controller == null) {
+				throw new IllegalStateException("Decorator " + name + " returned null for entity class "
+						+ className);
+			}
+
+		}
+
+		holder.initializationTime = System.nanoTime() - start;
+		holder.controller = controller;
+
+	}
+
+	private static void addOptions(Properties configuration, String prefix,
+			Map<String, String> options) {
+
+		for (Enumeration<?> names = configuration.propertyNames(); names.hasMoreElements();) {
+
+			final String name = (String) names.nextElement();
+
+			if (name.startsWith(prefix)) {
+				options.put(name.substring(prefix.length()), configuration.getProperty(name).trim());
+			}
+
+		}
+
+	}
+
+	/**
+	 * Holds the factory and, once created, the controller of an entity class. The initialization
+	 * time is written before the controller is published through its volatile field.
+	 */
+	private static final class Holder<T, K extends Serializable> {
+
+		private final Class<T> entityClass;
+
+		private final ControllerFactory<T, K> factory;
+
+		private volatile Controller<T, K> controller;
+
+		private long initializationTime;
+
+		/**
+		 * Thread creating the controller, used to detect circular requests. Guarded by the
+		 * holder lock.
+		 */
+		private Thread creator;
+
+		public Holder(Class<T> entityClass, ControllerFactory<T, K> factory) {
+			this.entityClass = entityClass;
+			this.factory = factory;
+		}
+
+	}
+
+}
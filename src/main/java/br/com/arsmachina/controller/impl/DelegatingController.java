@@ -0,0 +1,120 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+
+import br.com.arsmachina.controller.Controller;
+
+/**
+ * Abstract class that implements the {@link Controller} interface by delegating all method calls
+ * to another {@link Controller} passed through its constructor. It is meant to be subclassed by
+ * decorators, which only override the methods they change.
+ *
+ * @param <T> the entity class related to this controller.
+ * @param <K> the type of the field that represents the entity class' primary key.
+ */
+public abstract class DelegatingController<T, K extends Serializable> extends
+		DelegatingReadableController<T, K> implements Controller<T, K> {
+
+	private final Controller<T, K> delegate;
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param delegate a {@link Controller}. It cannot be <code>null</code>.
+	 */
+	public DelegatingController(Controller<T, K> delegate) {
+		super(delegate);
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Returns the controller that receives the method calls.
+	 *
+	 * @return a {@link Controller}.
+	 */
+	@Override
+	protected Controller<T, K> getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Invokes <code>delegate.delete()</code>.
+	 * @param object
+	 * @see br.com.arsmachina.controller.WriteableController#delete(java.lang.Object)
+	 */
+	public void delete(T object) {
+		delegate.delete(object);
+	}
+
+	/**
+	 * Invokes <code>delegate.delete()</code>.
+	 * @param id
+	 * @see br.com.arsmachina.controller.WriteableController#delete(java.io.Serializable)
+	 */
+	public void delete(K id) {
+		delegate.delete(id);
+	}
+
+	/**
+	 * Invokes <code>delegate.save()</code>.
+	 * @param object
+	 * @see br.com.arsmachina.controller.WriteableController#save(java.lang.Object)
+	 */
+	public void save(T object) {
+		delegate.save(object);
+	}
+
+	/**
+	 * Invokes <code>delegate.update()</code>.
+	 * @param object
+	 * @return a <code>T</code>.
+	 * @see br.com.arsmachina.controller.WriteableController#update(java.lang.Object)
+	 */
+	public T update(T object) {
+		return delegate.update(object);
+	}
+
+	/**
+	 * Invokes <code>delegate.saveOrUpdate()</code>.
+	 * @param object
+	 * @return a <code>T</code>.
+	 * @see br.com.arsmachina.controller.WriteableController#saveOrUpdate(java.lang.Object)
+	 */
+	public T saveOrUpdate(T object) {
+		return delegate.saveOrUpdate(object);
+	}
+
+	/**
+	 * Invokes <code>delegate.evict()</code>.
+	 * @param object
+	 * @see br.com.arsmachina.controller.WriteableController#evict(java.lang.Object)
+	 */
+	public void evict(T object) {
+		delegate.evict(object);
+	}
+
+	/**
+	 * Invokes <code>delegate.isPersistent()</code>.
+	 * @param object
+	 * @return a <code>boolean</code>.
+	 * @see br.com.arsmachina.controller.WriteableController#isPersistent(java.lang.Object)
+	 */
+	public boolean isPersistent(T object) {
+		return delegate.isPersistent(object);
+	}
+
+}
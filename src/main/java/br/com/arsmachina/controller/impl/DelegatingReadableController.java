@@ -0,0 +1,211 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import br.com.arsmachina.controller.ConditionalResult;
+import br.com.arsmachina.controller.Page;
+import br.com.arsmachina.controller.ReadableController;
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * Abstract class that implements the {@link ReadableController} interface by delegating all
+ * method calls to another {@link ReadableController} passed through its constructor. It is meant
+ * to be subclassed by decorators, which only override the methods they change.
+ *
+ * @param <T> the entity class related to this controller.
+ * @param <K> the type of the field that represents the entity class' primary key.
+ */
+public abstract class DelegatingReadableController<T, K extends Serializable> implements
+		ReadableController<T, K> {
+
+	private final ReadableController<T, K> delegate;
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param delegate a {@link ReadableController}. It cannot be <code>null</code>.
+	 */
+	public DelegatingReadableController(ReadableController<T, K> delegate) {
+
+		if (delegate == null) {
+			throw new IllegalArgumentException("Parameter delegate cannot be null");
+		}
+
+		this.delegate = delegate;
+
+	}
+
+	/**
+	 * Returns the controller that receives the method calls.
+	 *
+	 * @return a {@link ReadableController}.
+	 */
+	protected ReadableController<T, K> getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Invokes <code>delegate.countAll()</code>.
+	 * @return a <code>long</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#countAll()
+	 */
+	public long countAll() {
+		return delegate.countAll();
+	}
+
+	/**
+	 * Invokes <code>delegate.findAll()</code>.
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findAll()
+	 */
+	public List<T> findAll() {
+		return delegate.findAll();
+	}
+
+	/**
+	 * Invokes <code>delegate.findAll()</code>.
+	 * @param firstResult
+	 * @param maxResults
+	 * @param sortCriteria
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findAll(int, int, br.com.arsmachina.dao.SortCriterion[])
+	 */
+	public List<T> findAll(int firstResult, int maxResults, SortCriterion... sortCriteria) {
+		return delegate.findAll(firstResult, maxResults, sortCriteria);
+	}
+
+	/**
+	 * Invokes <code>delegate.findByExample()</code>.
+	 * @param example
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findByExample(java.lang.Object)
+	 */
+	public List<T> findByExample(T example) {
+		return delegate.findByExample(example);
+	}
+
+	/**
+	 * Invokes <code>delegate.findById()</code>.
+	 * @param id
+	 * @return a <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findById(java.io.Serializable)
+	 */
+	public T findById(K id) {
+		return delegate.findById(id);
+	}
+
+	/**
+	 * Invokes <code>delegate.findByIds()</code>.
+	 * @param ids
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findByIds(K[])
+	 */
+	public List<T> findByIds(K... ids) {
+		return delegate.findByIds(ids);
+	}
+
+	/**
+	 * Invokes <code>delegate.findByIdIfChanged()</code>.
+	 * @param id
+	 * @param version
+	 * @return a {@link ConditionalResult} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findByIdIfChanged(java.io.Serializable, java.io.Serializable)
+	 */
+	public ConditionalResult<T> findByIdIfChanged(K id, Serializable version) {
+		return delegate.findByIdIfChanged(id, version);
+	}
+
+	/**
+	 * Invokes <code>delegate.findByIdsIfChanged()</code>.
+	 * @param versions
+	 * @return a {@link Map} from primary key value to {@link ConditionalResult}.
+	 * @see br.com.arsmachina.controller.ReadableController#findByIdsIfChanged(java.util.Map)
+	 */
+	public Map<K, ConditionalResult<T>> findByIdsIfChanged(Map<K, ? extends Serializable> versions) {
+		return delegate.findByIdsIfChanged(versions);
+	}
+
+	/**
+	 * Invokes <code>delegate.refresh()</code>.
+	 * @param object
+	 * @return a <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#refresh(java.lang.Object)
+	 */
+	public T refresh(T object) {
+		return delegate.refresh(object);
+	}
+
+	/**
+	 * Invokes <code>delegate.reattach()</code>.
+	 * @param object
+	 * @return a <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#reattach(java.lang.Object)
+	 */
+	public T reattach(T object) {
+		return delegate.reattach(object);
+	}
+
+	/**
+	 * Invokes <code>delegate.refreshAll()</code>.
+	 * @param objects
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#refreshAll(java.util.Collection)
+	 */
+	public List<T> refreshAll(Collection<T> objects) {
+		return delegate.refreshAll(objects);
+	}
+
+	/**
+	 * Invokes <code>delegate.reattachAll()</code>.
+	 * @param objects
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#reattachAll(java.util.Collection)
+	 */
+	public List<T> reattachAll(Collection<T> objects) {
+		return delegate.reattachAll(objects);
+	}
+
+	/**
+	 * Invokes <code>delegate.findPage()</code>.
+	 * @param firstResult
+	 * @param maxResults
+	 * @param sortCriteria
+	 * @return a {@link Page} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findPage(int, int, br.com.arsmachina.dao.SortCriterion[])
+	 */
+	public Page<T> findPage(int firstResult, int maxResults, SortCriterion... sortCriteria) {
+		return delegate.findPage(firstResult, maxResults, sortCriteria);
+	}
+
+	/**
+	 * Invokes <code>delegate.findPage()</code>.
+	 * @param firstResult
+	 * @param maxResults
+	 * @param countTotal
+	 * @param sortCriteria
+	 * @return a {@link Page} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findPage(int, int, boolean, br.com.arsmachina.dao.SortCriterion[])
+	 */
+	public Page<T> findPage(int firstResult, int maxResults, boolean countTotal,
+			SortCriterion... sortCriteria) {
+		return delegate.findPage(firstResult, maxResults, countTotal, sortCriteria);
+	}
+
+}
@@ -0,0 +1,512 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import br.com.arsmachina.controller.ControllerTimeoutException;
+import br.com.arsmachina.controller.ReadableController;
+import br.com.arsmachina.dao.ReadableDAO;
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * {@link ReadableController} decorator that bounds the latency of the calls made to another
+ * controller.
+ * <p>
+ * Each method can have a deadline, set through {@link #setDeadline(String, long, TimeUnit)}. A
+ * call that does not finish within its deadline is cancelled and a
+ * {@link ControllerTimeoutException} is thrown. In addition, if an alternate {@link ReadableDAO}
+ * is set, {@link #findById(Serializable)} and {@link #findByIds(Serializable...)} calls that take
+ * longer than a given percentile of their recent latencies are hedged: a duplicate request is
+ * sent to the alternate DAO and the first result wins, while the other request is cancelled.
+ * Only the latencies of the decorated controller are recorded, including the calls that lost to
+ * a hedged request, which are recorded when they finish or stop after being cancelled.
+ * </p>
+ * <p>
+ * Calls with a deadline or that may be hedged are executed in the {@link ExecutorService} passed
+ * to the constructor, so the decorated controller and the alternate DAO must not rely on state
+ * bound to the calling thread. Calls without a deadline and not subject to hedging run in the
+ * calling thread.
+ * </p>
+ *
+ * @param <T> the entity class related to this controller.
+ * @param <K> the type of the field that represents the entity class' primary key.
+ */
+public class HedgingReadableController<T, K extends Serializable> extends
+		DelegatingReadableController<T, K> {
+
+	/**
+	 * Number of latency samples kept per hedged method.
+	 */
+	private static final int WINDOW_SIZE = 1024;
+
+	private static final Set<String> METHODS = new HashSet<String>(Arrays.asList("countAll",
+			"findAll", "findByExample", "findById", "findByIds", "refresh", "reattach"));
+
+	private final ExecutorService executor;
+
+	private final Map<String, Long> deadlines = new ConcurrentHashMap<String, Long>();
+
+	private final LatencyWindow findByIdLatencies = new LatencyWindow(WINDOW_SIZE);
+
+	private final LatencyWindow findByIdsLatencies = new LatencyWindow(WINDOW_SIZE);
+
+	private final AtomicLong hedgeCount = new AtomicLong();
+
+	private final AtomicLong hedgeWinCount = new AtomicLong();
+
+	private final AtomicLong timeoutCount = new AtomicLong();
+
+	private volatile ReadableDAO<T, K> alternate;
+
+	private volatile double hedgePercentile = 0.95;
+
+	private volatile long minimumHedgeDelay = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param delegate a {@link ReadableController}. It cannot be <code>null</code>.
+	 * @param executor an {@link ExecutorService} used to run the calls with deadlines and the
+	 * hedged calls. It cannot be <code>null</code>.
+	 */
+	public HedgingReadableController(ReadableController<T, K> delegate, ExecutorService executor) {
+
+		super(delegate);
+
+		if (executor == null) {
+			throw new IllegalArgumentException("Parameter executor cannot be null");
+		}
+
+		this.executor = executor;
+
+	}
+
+	/**
+	 * Sets the DAO that receives the hedged requests. If it is <code>null</code>, no requests are
+	 * hedged.
+	 *
+	 * @param alternate a {@link ReadableDAO}.
+	 */
+	public void setAlternate(ReadableDAO<T, K> alternate) {
+		this.alternate = alternate;
+	}
+
+	/**
+	 * Sets the deadline of a given method. Overloaded methods share the same deadline.
+	 *
+	 * @param method a {@link String} with the name of a {@link ReadableController} method.
+	 * @param timeout a <code>long</code>. If it is zero or negative, the method has no deadline.
+	 * @param unit a {@link TimeUnit}. It cannot be <code>null</code>.
+	 */
+	public void setDeadline(String method, long timeout, TimeUnit unit) {
+
+		if (!METHODS.contains(method)) {
+			throw new IllegalArgumentException("Unknown method: " + method);
+		}
+
+		if (unit == null) {
+			throw new IllegalArgumentException("Parameter unit cannot be null");
+		}
+
+		if (timeout > 0) {
+			deadlines.put(method, unit.toNanos(timeout));
+		}
+		else {
+			deadlines.remove(method);
+		}
+
+	}
+
+	/**
+	 * Sets the percentile of the recent latencies after which a request is hedged. The default
+	 * value is <code>0.95</code>.
+	 *
+	 * @param hedgePercentile a <code>double</code> between 0 (exclusive) and 1 (inclusive).
+	 */
+	public void setHedgePercentile(double hedgePercentile) {
+
+		if (hedgePercentile <= 0 || hedgePercentile > 1) {
+			throw new IllegalArgumentException("Parameter hedgePercentile must be in (0, 1]");
+		}
+
+		this.hedgePercentile = hedgePercentile;
+
+	}
+
+	/**
+	 * Sets the minimum time to wait before hedging a request. It is also used while there are
+	 * no latency samples. The default value is 1 millisecond.
+	 *
+	 * @param delay a <code>long</code>.
+	 * @param unit a {@link TimeUnit}. It cannot be <code>null</code>.
+	 */
+	public void setMinimumHedgeDelay(long delay, TimeUnit unit) {
+
+		if (unit == null) {
+			throw new IllegalArgumentException("Parameter unit cannot be null");
+		}
+
+		minimumHedgeDelay = unit.toNanos(delay);
+
+	}
+
+	/**
+	 * Returns the number of hedged requests issued so far.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getHedgeCount() {
+		return hedgeCount.get();
+	}
+
+	/**
+	 * Returns the number of hedged requests that finished before the original ones.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getHedgeWinCount() {
+		return hedgeWinCount.get();
+	}
+
+	/**
+	 * Returns the number of calls that did not finish within their deadlines.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	@Override
+	public long countAll() {
+
+		return call("countAll", new Callable<Long>() {
+
+			public Long call() {
+				return getDelegate().countAll();
+			}
+
+		}, null, null);
+
+	}
+
+	@Override
+	public List<T> findAll() {
+
+		return call("findAll", new Callable<List<T>>() {
+
+			public List<T> call() {
+				return getDelegate().findAll();
+			}
+
+		}, null, null);
+
+	}
+
+	@Override
+	public List<T> findAll(final int firstResult, final int maxResults,
+			final SortCriterion... sortCriteria) {
+
+		return call("findAll", new Callable<List<T>>() {
+
+			public List<T> call() {
+				return getDelegate().findAll(firstResult, maxResults, sortCriteria);
+			}
+
+		}, null, null);
+
+	}
+
+	@Override
+	public List<T> findByExample(final T example) {
+
+		return call("findByExample", new Callable<List<T>>() {
+
+			public List<T> call() {
+				return getDelegate().findByExample(example);
+			}
+
+		}, null, null);
+
+	}
+
+	@Override
+	public T findById(final K id) {
+
+		final ReadableDAO<T, K> alternate = this.alternate;
+		Callable<T> hedge = null;
+
+		if (alternate != null) {
+
+			hedge = new Callable<T>() {
+
+				public T call() {
+					return alternate.findById(id);
+				}
+
+			};
+
+		}
+
+		return call("findById", new Callable<T>() {
+
+			public T call() {
+				return getDelegate().findById(id);
+			}
+
+		}, hedge, findByIdLatencies);
+
+	}
+
+	@Override
+	public List<T> findByIds(final K... ids) {
+
+		final ReadableDAO<T, K> alternate = this.alternate;
+		Callable<List<T>> hedge = null;
+
+		if (alternate != null) {
+
+			hedge = new Callable<List<T>>() {
+
+				public List<T> call() {
+					return alternate.findByIds(ids);
+				}
+
+			};
+
+		}
+
+		return call("findByIds", new Callable<List<T>>() {
+
+			public List<T> call() {
+				return getDelegate().findByIds(ids);
+			}
+
+		}, hedge, findByIdsLatencies);
+
+	}
+
+	@Override
+	public T refresh(final T object) {
+
+		return call("refresh", new Callable<T>() {
+
+			public T call() {
+				return getDelegate().refresh(object);
+			}
+
+		}, null, null);
+
+	}
+
+	@Override
+	public T reattach(final T object) {
+
+		return call("reattach", new Callable<T>() {
+
+			public T call() {
+				return getDelegate().reattach(object);
+			}
+
+		}, null, null);
+
+	}
+
+	/**
+	 * Executes a call, enforcing the method deadline and hedging it if <code>hedge</code> is not
+	 * <code>null</code>.
+	 *
+	 * @param method a {@link String} with the method name.
+	 * @param primary a {@link Callable} that invokes the decorated controller.
+	 * @param hedge a {@link Callable} that invokes the alternate DAO, or <code>null</code>.
+	 * @param latencies the {@link LatencyWindow} that receives the latency of the primary call,
+	 * or <code>null</code>.
+	 * @return the result of the call that finished first.
+	 */
+	private <V> V call(String method, Callable<V> primary, Callable<V> hedge,
+			LatencyWindow latencies) {
+
+		final Long deadline = deadlines.get(method);
+		final long start = System.nanoTime();
+
+		if (latencies != null) {
+			primary = new RecordingCallable<V>(primary, latencies, start);
+		}
+
+		if (deadline == null && hedge == null) {
+			return Callables.call(primary);
+		}
+
+		final CompletionService<V> completionService = new ExecutorCompletionService<V>(executor);
+		final Future<V> primaryFuture = completionService.submit(primary);
+		Future<V> hedgeFuture = null;
+		int pending = 1;
+
+		try {
+
+			while (true) {
+
+				long timeout = deadline != null ? deadline - (System.nanoTime() - start)
+						: Long.MAX_VALUE;
+
+				if (hedge != null && hedgeFuture == null) {
+					timeout = Math.min(timeout, getHedgeDelay(latencies) - (System.nanoTime() - start));
+				}
+
+				final Future<V> done = completionService.poll(Math.max(timeout, 0), TimeUnit.NANOSECONDS);
+
+				if (done == null) {
+
+					if (hedge != null && hedgeFuture == null
+							&& (deadline == null || System.nanoTime() - start < deadline)) {
+						hedgeFuture = completionService.submit(hedge);
+						hedgeCount.incrementAndGet();
+						pending++;
+						continue;
+					}
+
+					timeoutCount.incrementAndGet();
+
+					throw new ControllerTimeoutException("Method " + method + " did not finish within "
+							+ TimeUnit.NANOSECONDS.toMillis(deadline) + " ms");
+
+				}
+
+				pending--;
+
+				try {
+
+					final V result = done.get();
+
+					if (done == hedgeFuture) {
+						hedgeWinCount.incrementAndGet();
+					}
+
+					return result;
+
+				}
+				catch (ExecutionException e) {
+
+					// if the other request is still running, its result is used instead
+					if (pending == 0) {
+						throw Callables.unwrap(e);
+					}
+
+				}
+
+			}
+
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for method " + method, e);
+		}
+		finally {
+
+			primaryFuture.cancel(true);
+
+			if (hedgeFuture != null) {
+				hedgeFuture.cancel(true);
+			}
+
+		}
+
+	}
+
+	/**
+	 * Returns the current delay after which calls to a given method are hedged.
+	 *
+	 * @param method a {@link String}, either <code>findById</code> or <code>findByIds</code>.
+	 * @param unit a {@link TimeUnit}. It cannot be <code>null</code>.
+	 * @return a <code>long</code>.
+	 */
+	public long getHedgeDelay(String method, TimeUnit unit) {
+
+		if (unit == null) {
+			throw new IllegalArgumentException("Parameter unit cannot be null");
+		}
+
+		final LatencyWindow latencies;
+
+		if ("findById".equals(method)) {
+			latencies = findByIdLatencies;
+		}
+		else if ("findByIds".equals(method)) {
+			latencies = findByIdsLatencies;
+		}
+		else {
+			throw new IllegalArgumentException("Method is not hedged: " + method);
+		}
+
+		return unit.convert(getHedgeDelay(latencies), TimeUnit.NANOSECONDS);
+
+	}
+
+	private long getHedgeDelay(LatencyWindow latencies) {
+
+		final long percentile = latencies.percentile(hedgePercentile);
+
+		return Math.max(percentile, minimumHedgeDelay);
+
+	}
+
+	/**
+	 * {@link Callable} that records the latency of the primary call when it finishes, even if
+	 * the hedged call won or the caller stopped waiting for it. Hedged calls are not recorded, so
+	 * the hedge delay follows the latency of the decorated controller alone.
+	 */
+	private static final class RecordingCallable<V> implements Callable<V> {
+
+		private final Callable<V> callable;
+
+		private final LatencyWindow latencies;
+
+		private final long start;
+
+		public RecordingCallable(Callable<V> callable, LatencyWindow latencies, long start) {
+			this.callable = callable;
+			this.latencies = latencies;
+			this.start = start;
+		}
+
+		public V call() throws Exception {
+
+			try {
+				return callable.call();
+			}
+			finally {
+				latencies.record(System.nanoTime() - start);
+			}
+
+		}
+
+	}
+
+}
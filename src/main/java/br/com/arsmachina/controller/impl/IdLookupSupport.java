@@ -0,0 +1,54 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.List;
+
+import br.com.arsmachina.dao.ReadableDAO;
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * Interface that can be implemented by {@link ReadableDAO}s that are able to return the primary
+ * key values of objects without loading them. When a controller DAO implements it and lazy
+ * loading is enabled, the controller <code>findAll()</code> methods return
+ * {@link LazyEntityList}s.
+ *
+ * @param <K> the type of the field that represents the entity class' primary key.
+ */
+public interface IdLookupSupport<K extends Serializable> {
+
+	/**
+	 * Returns the primary key values of all objects, in the same order
+	 * {@link ReadableDAO#findAll()} would return them.
+	 *
+	 * @return a {@link List} of <code>K</code>.
+	 */
+	List<K> findAllIds();
+
+	/**
+	 * Returns the primary key values of all objects in a paginated fashion, in the same order
+	 * {@link ReadableDAO#findAll(int, int, SortCriterion...)} would return them.
+	 *
+	 * @param firstResult an <code>int</code> with the index of the first value to be returned.
+	 * The first value has index 0.
+	 * @param maxResults an <code>int</code> with the maximum number of values to be returned.
+	 * @param sortCriteria a {@link SortCriterion} array used to define how the returned list will
+	 * be sorted.
+	 * @return a {@link List} of <code>K</code>.
+	 */
+	List<K> findAllIds(int firstResult, int maxResults, SortCriterion... sortCriteria);
+
+}
@@ -0,0 +1,69 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.Collection;
+
+/**
+ * Utility methods for primary key values.
+ */
+final class Identifiers {
+
+	private Identifiers() {
+	}
+
+	/**
+	 * Returns an array with some primary key values to be passed to a <code>findByIds()</code>
+	 * method. The array component type is the runtime class of the values, not
+	 * {@link Serializable}, so it can be passed to implementations declaring a concrete type, such
+	 * as <code>findByIds(Long... ids)</code>, without a {@link ClassCastException}.
+	 *
+	 * @param ids a {@link Collection} of <code>K</code>. It cannot be <code>null</code>. Its
+	 * <code>null</code> values are kept and do not change the component type.
+	 * @return a <code>K[]</code>.
+	 */
+	@SuppressWarnings("unchecked")
+	static <K extends Serializable> K[] toArray(Collection<K> ids) {
+
+		if (ids == null) {
+			throw new IllegalArgumentException("Parameter ids cannot be null");
+		}
+
+		Class<?> type = null;
+
+		for (K id : ids) {
+
+			if (id == null) {
+				continue;
+			}
+
+			if (type == null) {
+				type = id.getClass();
+			}
+			else if (!type.isInstance(id)) {
+				type = Serializable.class;
+				break;
+			}
+
+		}
+
+		return ids.toArray((K[]) Array.newInstance(type != null ? type : Serializable.class, ids
+				.size()));
+
+	}
+
+}
@@ -0,0 +1,209 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import br.com.arsmachina.dao.DAO;
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * {@link DAO} implementation that keeps its objects in memory, indexed by primary key value, and
+ * answers queries through an {@link InMemoryQueryEngine}. It is meant to stand in for a real DAO
+ * in tests and when replaying workloads with {@link WorkloadReplayer}. Objects are stored as
+ * they are, without copying. Instances of this class are thread-safe.
+ *
+ * @param <T> the entity class.
+ * @param <K> the type of the field that represents the entity class' primary key.
+ */
+public class InMemoryDAO<T, K extends Serializable> implements DAO<T, K> {
+
+	private static final SortCriterion[] NO_SORT_CRITERIA = new SortCriterion[0];
+
+	private final Map<K, T> objects = new ConcurrentHashMap<K, T>();
+
+	private final InMemoryQueryEngine<T> engine;
+
+	private final IdentifierResolver<T, K> resolver;
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param entityClass a {@link Class}. It cannot be <code>null</code>.
+	 * @param resolver an {@link IdentifierResolver}. It cannot be <code>null</code>.
+	 */
+	public InMemoryDAO(Class<T> entityClass, IdentifierResolver<T, K> resolver) {
+
+		if (resolver == null) {
+			throw new IllegalArgumentException("Parameter resolver cannot be null");
+		}
+
+		engine = new InMemoryQueryEngine<T>(entityClass);
+		this.resolver = resolver;
+
+	}
+
+	/**
+	 * Returns the {@link InMemoryQueryEngine} that answers the queries of this DAO, so indexes can
+	 * be added to it.
+	 *
+	 * @return an {@link InMemoryQueryEngine}.
+	 */
+	public InMemoryQueryEngine<T> getQueryEngine() {
+		return engine;
+	}
+
+	/**
+	 * Saves some objects.
+	 *
+	 * @param objects a {@link Collection} of <code>T</code>. It cannot be <code>null</code>.
+	 */
+	public void load(Collection<? extends T> objects) {
+
+		if (objects == null) {
+			throw new IllegalArgumentException("Parameter objects cannot be null");
+		}
+
+		for (T object : objects) {
+			save(object);
+		}
+
+	}
+
+	public long countAll() {
+		return engine.countAll();
+	}
+
+	public T findById(K id) {
+		return id != null ? objects.get(id) : null;
+	}
+
+	public List<T> findAll() {
+		return engine.findAll();
+	}
+
+	public List<T> findByIds(K... ids) {
+
+		final List<T> result = new ArrayList<T>(ids.length);
+
+		for (K id : ids) {
+
+			final T object = findById(id);
+
+			if (object != null) {
+				result.add(object);
+			}
+
+		}
+
+		return result;
+
+	}
+
+	public List<T> findByExample(T example) {
+		return engine.findByExample(example);
+	}
+
+	public List<T> findAll(int firstResult, int maxResults, SortCriterion... sortCriteria) {
+		return engine.findAll(firstResult, maxResults, sortCriteria);
+	}
+
+	public SortCriterion[] getDefaultSortCriteria() {
+		return NO_SORT_CRITERIA;
+	}
+
+	/**
+	 * Returns the object itself, as there is no persistence context.
+	 */
+	public T reattach(T object) {
+		return object;
+	}
+
+	/**
+	 * Returns the stored object with the same primary key value or the object itself if there is
+	 * none.
+	 */
+	public T refresh(T object) {
+
+		final T stored = findById(resolver.getId(object));
+
+		return stored != null ? stored : object;
+
+	}
+
+	public synchronized void save(T object) {
+
+		if (object == null) {
+			throw new IllegalArgumentException("Parameter object cannot be null");
+		}
+
+		final K id = resolver.getId(object);
+
+		if (id == null) {
+			throw new IllegalArgumentException("Objects must have a primary key value to be saved");
+		}
+
+		final T previous = objects.put(id, object);
+
+		if (previous != null) {
+			engine.remove(previous);
+		}
+
+		engine.add(object);
+
+	}
+
+	/**
+	 * Stores the object, replacing the one with the same primary key value, and returns it.
+	 */
+	public T update(T object) {
+		save(object);
+		return object;
+	}
+
+	public synchronized void delete(T object) {
+		delete(resolver.getId(object));
+	}
+
+	public synchronized void delete(K id) {
+
+		final T previous = id != null ? objects.remove(id) : null;
+
+		if (previous != null) {
+			engine.remove(previous);
+		}
+
+	}
+
+	/**
+	 * Does nothing, as there is no persistence context.
+	 */
+	public void evict(T object) {
+	}
+
+	public boolean isPersistent(T object) {
+
+		final K id = object != null ? resolver.getId(object) : null;
+
+		return id != null && objects.containsKey(id);
+
+	}
+
+}
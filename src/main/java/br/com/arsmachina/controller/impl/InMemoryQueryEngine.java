@@ -0,0 +1,746 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import br.com.arsmachina.controller.ReadableController;
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * Class that evaluates the queries of {@link ReadableController} (query by example, pagination
+ * and sorting) against objects that are already in memory, such as a snapshot or a cache of a
+ * table. Property values are read through {@link PropertyAccessors}, so no introspection happens
+ * per query.
+ * <p>
+ * Hash indexes ({@link #addHashIndex(String)}) are used to narrow down the candidates of
+ * {@link #findByExample(Object)} and {@link #findByProperty(String, Object)}. Sorted indexes
+ * ({@link #addSortedIndex(String)}) answer {@link #findAll(int, int, SortCriterion...)} calls
+ * sorted by a single property without sorting at all. Any other ordering is done by a top-K
+ * selection of <code>firstResult + maxResults</code> objects instead of a full sort.
+ * </p>
+ * <p>
+ * Instances of this class are thread-safe. Objects must be passed to {@link #update(Object)}
+ * after any change to an indexed property.
+ * </p>
+ *
+ * @param <T> the entity class.
+ */
+public class InMemoryQueryEngine<T> {
+
+	private static final Object NULL_KEY = new Object();
+
+	private final Class<T> entityClass;
+
+	private final List<PropertyAccessor<T>> exampleAccessors;
+
+	private final List<T> objects = new ArrayList<T>();
+
+	private final List<HashIndex> hashIndexes = new ArrayList<HashIndex>();
+
+	private final Map<String, SortedIndex> sortedIndexes = new LinkedHashMap<String, SortedIndex>();
+
+	/**
+	 * Hash index keys of each object, in the same order of <code>hashIndexes</code>, kept to
+	 * find the bucket of an object even after its properties were changed.
+	 */
+	private final Map<T, Object[]> indexedKeys = new IdentityHashMap<T, Object[]>();
+
+	private final Lock readLock;
+
+	private final Lock writeLock;
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param entityClass a {@link Class}. It cannot be <code>null</code>.
+	 */
+	public InMemoryQueryEngine(Class<T> entityClass) {
+
+		if (entityClass == null) {
+			throw new IllegalArgumentException("Parameter entityClass cannot be null");
+		}
+
+		this.entityClass = entityClass;
+
+		exampleAccessors = new ArrayList<PropertyAccessor<T>>();
+
+		for (PropertyAccessor<T> accessor : PropertyAccessors.get(entityClass).values()) {
+
+			final Class<?> type = accessor.getType();
+
+			if (type != null && !type.isArray() && !Collection.class.isAssignableFrom(type)
+					&& !Map.class.isAssignableFrom(type)) {
+				exampleAccessors.add(accessor);
+			}
+
+		}
+
+		ReadWriteLock lock = new ReentrantReadWriteLock();
+		readLock = lock.readLock();
+		writeLock = lock.writeLock();
+
+	}
+
+	/**
+	 * Returns the entity class.
+	 *
+	 * @return a {@link Class}.
+	 */
+	public Class<T> getEntityClass() {
+		return entityClass;
+	}
+
+	/**
+	 * Adds a hash index on a given property. Existing objects are indexed immediately.
+	 *
+	 * @param property a {@link String} with the property name.
+	 */
+	public void addHashIndex(String property) {
+
+		final PropertyAccessor<T> accessor = PropertyAccessors.get(entityClass, property);
+
+		writeLock.lock();
+
+		try {
+
+			if (findHashIndex(property) == null) {
+				hashIndexes.add(new HashIndex(accessor));
+				rebuild();
+			}
+
+		}
+		finally {
+			writeLock.unlock();
+		}
+
+	}
+
+	/**
+	 * Adds a sorted index on a given property. Existing objects are indexed immediately.
+	 *
+	 * @param property a {@link String} with the property name.
+	 */
+	public void addSortedIndex(String property) {
+
+		final PropertyAccessor<T> accessor = PropertyAccessors.get(entityClass, property);
+
+		writeLock.lock();
+
+		try {
+
+			if (!sortedIndexes.containsKey(property)) {
+				sortedIndexes.put(property, new SortedIndex(accessor));
+				rebuild();
+			}
+
+		}
+		finally {
+			writeLock.unlock();
+		}
+
+	}
+
+	/**
+	 * Replaces all objects in this engine by the ones in a given collection. Objects that appear
+	 * more than once in it, compared by identity, are added only once.
+	 *
+	 * @param objects a {@link Collection} of <code>T</code>. It cannot be <code>null</code>.
+	 */
+	public void load(Collection<? extends T> objects) {
+
+		if (objects == null) {
+			throw new IllegalArgumentException("Parameter objects cannot be null");
+		}
+
+		writeLock.lock();
+
+		try {
+			this.objects.clear();
+			indexedKeys.clear();
+
+			for (T object : objects) {
+
+				if (!indexedKeys.containsKey(object)) {
+					this.objects.add(object);
+					indexedKeys.put(object, null);
+				}
+
+			}
+
+			rebuild();
+		}
+		finally {
+			writeLock.unlock();
+		}
+
+	}
+
+	/**
+	 * Adds an object to this engine. Objects are compared by identity, so adding an object that
+	 * is already in this engine does nothing.
+	 *
+	 * @param object a <code>T</code>. It cannot be <code>null</code>.
+	 * @return <code>true</code> if the object was added, <code>false</code> otherwise.
+	 */
+	public boolean add(T object) {
+
+		if (object == null) {
+			throw new IllegalArgumentException("Parameter object cannot be null");
+		}
+
+		writeLock.lock();
+
+		try {
+
+			if (indexedKeys.containsKey(object)) {
+				return false;
+			}
+
+			objects.add(object);
+			index(object);
+
+			return true;
+
+		}
+		finally {
+			writeLock.unlock();
+		}
+
+	}
+
+	/**
+	 * Reindexes an object after one or more of its properties were changed.
+	 *
+	 * @param object a <code>T</code>. It cannot be <code>null</code>.
+	 * @return <code>true</code> if the object is in this engine, <code>false</code> otherwise.
+	 */
+	public boolean update(T object) {
+
+		if (object == null) {
+			throw new IllegalArgumentException("Parameter object cannot be null");
+		}
+
+		writeLock.lock();
+
+		try {
+
+			if (!indexedKeys.containsKey(object)) {
+				return false;
+			}
+
+			unindex(object);
+			index(object);
+
+			return true;
+
+		}
+		finally {
+			writeLock.unlock();
+		}
+
+	}
+
+	/**
+	 * Removes an object from this engine. Objects are compared by identity.
+	 *
+	 * @param object a <code>T</code>.
+	 * @return <code>true</code> if the object was removed, <code>false</code> otherwise.
+	 */
+	public boolean remove(T object) {
+
+		writeLock.lock();
+
+		try {
+
+			if (!indexedKeys.containsKey(object)) {
+				return false;
+			}
+
+			unindex(object);
+			removeByIdentity(objects, object);
+
+			return true;
+
+		}
+		finally {
+			writeLock.unlock();
+		}
+
+	}
+
+	/**
+	 * Returns the number of objects in this engine.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long countAll() {
+
+		readLock.lock();
+
+		try {
+			return objects.size();
+		}
+		finally {
+			readLock.unlock();
+		}
+
+	}
+
+	/**
+	 * Returns all objects in this engine, in insertion order.
+	 *
+	 * @return a {@link List} of <code>T</code>.
+	 */
+	public List<T> findAll() {
+
+		readLock.lock();
+
+		try {
+			return new ArrayList<T>(objects);
+		}
+		finally {
+			readLock.unlock();
+		}
+
+	}
+
+	/**
+	 * Returns the objects whose property with a given name has a given value.
+	 *
+	 * @param property a {@link String} with the property name.
+	 * @param value an {@link Object}. It may be <code>null</code>.
+	 * @return a {@link List} of <code>T</code>.
+	 */
+	public List<T> findByProperty(String property, Object value) {
+
+		final PropertyAccessor<T> accessor = PropertyAccessors.get(entityClass, property);
+
+		readLock.lock();
+
+		try {
+
+			final HashIndex index = findHashIndex(property);
+
+			if (index != null) {
+				return new ArrayList<T>(index.get(value));
+			}
+
+			final List<T> result = new ArrayList<T>();
+
+			for (T object : objects) {
+
+				if (equal(value, accessor.get(object))) {
+					result.add(object);
+				}
+
+			}
+
+			return result;
+
+		}
+		finally {
+			readLock.unlock();
+		}
+
+	}
+
+	/**
+	 * Executes a query by example. Every property of <code>example</code> with a
+	 * non-<code>null</code> value, except collections, maps and arrays, must be equal to the
+	 * corresponding property of a returned object.
+	 *
+	 * @param example a <code>T</code>. It cannot be <code>null</code>.
+	 * @return a {@link List} of <code>T</code>.
+	 */
+	public List<T> findByExample(T example) {
+
+		if (example == null) {
+			throw new IllegalArgumentException("Parameter example cannot be null");
+		}
+
+		final List<PropertyAccessor<T>> criteria = new ArrayList<PropertyAccessor<T>>();
+		final List<Object> values = new ArrayList<Object>();
+
+		for (PropertyAccessor<T> accessor : exampleAccessors) {
+
+			final Object value = accessor.get(example);
+
+			if (value != null) {
+				criteria.add(accessor);
+				values.add(value);
+			}
+
+		}
+
+		readLock.lock();
+
+		try {
+
+			Collection<T> candidates = objects;
+
+			for (int i = 0; i < criteria.size(); i++) {
+
+				final HashIndex index = findHashIndex(criteria.get(i).getName());
+
+				if (index != null) {
+
+					final List<T> bucket = index.get(values.get(i));
+
+					if (bucket.size() < candidates.size()) {
+						candidates = bucket;
+					}
+
+				}
+
+			}
+
+			final List<T> result = new ArrayList<T>();
+
+			for (T candidate : candidates) {
+
+				if (matches(candidate, criteria, values)) {
+					result.add(candidate);
+				}
+
+			}
+
+			return result;
+
+		}
+		finally {
+			readLock.unlock();
+		}
+
+	}
+
+	/**
+	 * Returns the objects in this engine in a paginated fashion.
+	 *
+	 * @param firstResult an <code>int</code> with the index of the first object to be returned.
+	 * The first object has index 0.
+	 * @param maxResults an <code>int</code> with the maximum number of objects to be returned.
+	 * @param sortCriteria a {@link SortCriterion} array used to define how the returned list
+	 * will be sorted. If it is empty, objects are returned in insertion order.
+	 * @return a {@link List} of <code>T</code>.
+	 */
+	public List<T> findAll(int firstResult, int maxResults, SortCriterion... sortCriteria) {
+
+		if (firstResult < 0) {
+			throw new IllegalArgumentException("Parameter firstResult cannot be negative");
+		}
+
+		if (maxResults < 0) {
+			throw new IllegalArgumentException("Parameter maxResults cannot be negative");
+		}
+
+		readLock.lock();
+
+		try {
+
+			final int size = objects.size();
+			final int last = (int) Math.min(size, (long) firstResult + maxResults);
+
+			if (firstResult >= last) {
+				return new ArrayList<T>();
+			}
+
+			if (sortCriteria == null || sortCriteria.length == 0) {
+				return new ArrayList<T>(objects.subList(firstResult, last));
+			}
+
+			if (sortCriteria.length == 1) {
+
+				final SortedIndex index = sortedIndexes.get(sortCriteria[0].getProperty());
+
+				if (index != null) {
+					return index.slice(firstResult, last, sortCriteria[0].isAscending());
+				}
+
+			}
+
+			final Comparator<T> comparator = new SortCriteriaComparator<T>(entityClass, sortCriteria);
+
+			return slice(top(last, comparator), firstResult, last);
+
+		}
+		finally {
+			readLock.unlock();
+		}
+
+	}
+
+	/**
+	 * Returns the <code>k</code> first objects according to a given comparator, sorted.
+	 */
+	private List<T> top(int k, final Comparator<T> comparator) {
+
+		final List<T> result;
+
+		if (k >= objects.size()) {
+			result = new ArrayList<T>(objects);
+		}
+		else {
+
+			// max-heap holding the best k objects seen so far, with the worst one at the head
+			final PriorityQueue<T> heap = new PriorityQueue<T>(k, new Comparator<T>() {
+
+				public int compare(T o1, T o2) {
+					return comparator.compare(o2, o1);
+				}
+
+			});
+
+			for (T object : objects) {
+
+				if (heap.size() < k) {
+					heap.add(object);
+				}
+				else if (comparator.compare(object, heap.peek()) < 0) {
+					heap.poll();
+					heap.add(object);
+				}
+
+			}
+
+			result = new ArrayList<T>(heap);
+
+		}
+
+		Collections.sort(result, comparator);
+
+		return result;
+
+	}
+
+	private List<T> slice(List<T> sorted, int firstResult, int last) {
+		return new ArrayList<T>(sorted.subList(firstResult, Math.min(last, sorted.size())));
+	}
+
+	private boolean matches(T object, List<PropertyAccessor<T>> criteria, List<Object> values) {
+
+		for (int i = 0; i < criteria.size(); i++) {
+
+			if (!equal(values.get(i), criteria.get(i).get(object))) {
+				return false;
+			}
+
+		}
+
+		return true;
+
+	}
+
+	private HashIndex findHashIndex(String property) {
+
+		for (HashIndex index : hashIndexes) {
+
+			if (index.accessor.getName().equals(property)) {
+				return index;
+			}
+
+		}
+
+		return null;
+
+	}
+
+	private void rebuild() {
+
+		indexedKeys.clear();
+
+		for (HashIndex index : hashIndexes) {
+			index.buckets.clear();
+		}
+
+		for (SortedIndex index : sortedIndexes.values()) {
+			index.sorted.clear();
+		}
+
+		for (T object : objects) {
+			index(object);
+		}
+
+	}
+
+	private void index(T object) {
+
+		final Object[] keys = new Object[hashIndexes.size()];
+
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = hashIndexes.get(i).add(object);
+		}
+
+		indexedKeys.put(object, keys);
+
+		for (SortedIndex index : sortedIndexes.values()) {
+			index.add(object);
+		}
+
+	}
+
+	private void unindex(T object) {
+
+		final Object[] keys = indexedKeys.remove(object);
+
+		for (int i = 0; i < keys.length; i++) {
+			hashIndexes.get(i).remove(keys[i], object);
+		}
+
+		for (SortedIndex index : sortedIndexes.values()) {
+			removeByIdentity(index.sorted, object);
+		}
+
+	}
+
+	private static <T> void removeByIdentity(List<T> list, T object) {
+
+		final Iterator<T> iterator = list.iterator();
+
+		while (iterator.hasNext()) {
+
+			if (iterator.next() == object) {
+				iterator.remove();
+				return;
+			}
+
+		}
+
+	}
+
+	private static boolean equal(Object o1, Object o2) {
+		return o1 == null ? o2 == null : o1.equals(o2);
+	}
+
+	private static Object toKey(Object value) {
+		return value == null ? NULL_KEY : value;
+	}
+
+	/**
+	 * Index that maps property values to the objects that have them.
+	 */
+	private final class HashIndex {
+
+		private final PropertyAccessor<T> accessor;
+
+		private final Map<Object, List<T>> buckets = new HashMap<Object, List<T>>();
+
+		public HashIndex(PropertyAccessor<T> accessor) {
+			this.accessor = accessor;
+		}
+
+		public Object add(T object) {
+
+			final Object key = toKey(accessor.get(object));
+			List<T> bucket = buckets.get(key);
+
+			if (bucket == null) {
+				bucket = new ArrayList<T>(2);
+				buckets.put(key, bucket);
+			}
+
+			bucket.add(object);
+
+			return key;
+
+		}
+
+		public void remove(Object key, T object) {
+
+			final List<T> bucket = buckets.get(key);
+
+			if (bucket != null) {
+
+				removeByIdentity(bucket, object);
+
+				if (bucket.isEmpty()) {
+					buckets.remove(key);
+				}
+
+			}
+
+		}
+
+		public List<T> get(Object value) {
+
+			final List<T> bucket = buckets.get(toKey(value));
+			return bucket != null ? bucket : Collections.<T> emptyList();
+
+		}
+
+	}
+
+	/**
+	 * Index that keeps all objects sorted by a property value, in ascending order.
+	 */
+	private final class SortedIndex {
+
+		private final Comparator<T> comparator;
+
+		private final List<T> sorted = new ArrayList<T>();
+
+		public SortedIndex(PropertyAccessor<T> accessor) {
+			comparator = new SortCriteriaComparator<T>(accessor, true);
+		}
+
+		public void add(T object) {
+
+			int position = Collections.binarySearch(sorted, object, comparator);
+
+			if (position < 0) {
+				position = -position - 1;
+			}
+
+			sorted.add(position, object);
+
+		}
+
+		public List<T> slice(int firstResult, int last, boolean ascending) {
+
+			final List<T> result = new ArrayList<T>(last - firstResult);
+
+			if (ascending) {
+				result.addAll(sorted.subList(firstResult, last));
+			}
+			else {
+
+				final int size = sorted.size();
+
+				for (int i = firstResult; i < last; i++) {
+					result.add(sorted.get(size - 1 - i));
+				}
+
+			}
+
+			return result;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,355 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.Collection;
+import java.util.List;
+
+import br.com.arsmachina.controller.IntKeyController;
+import br.com.arsmachina.dao.DAO;
+
+/**
+ * Abstract class that implements the {@link IntKeyController} interface by delegating all method
+ * calls to a {@link DAO} passed through its constructor.
+ * <p>
+ * Optionally, objects returned by {@link #findById(int)} and {@link #findByIds(int[])} can be
+ * kept in an identity map backed by a {@link LongObjectHashMap}, so repeated lookups of the same
+ * identifiers neither box them nor reach the DAO. The identity map requires an
+ * {@link IdentifierResolver}. Objects are removed from it by primary key value after they are
+ * saved, updated, deleted or evicted through this controller, one at a time or in batches
+ * (including the flush of a {@link UnitOfWork}), and it is cleared when it reaches its maximum
+ * size. Changes not made through this controller are not seen by the identity map.
+ * </p>
+ * <p>
+ * The very same instances are returned to every caller, in every thread, while they are in the
+ * identity map, so it should only be enabled for entities that callers do not modify in place
+ * or whose instances can be safely shared, such as reference data.
+ * </p>
+ *
+ * @param <T> the entity class related to this controller.
+ */
+public abstract class IntKeyControllerImpl<T> extends ControllerImpl<T, Integer> implements
+		IntKeyController<T> {
+
+	private final LongIdentityMap<T> identityMap = new LongIdentityMap<T>();
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param dao a {@link DAO<T, Integer>}. It cannot be <code>null</code>.
+	 */
+	public IntKeyControllerImpl(DAO<T, Integer> dao) {
+		super(dao);
+	}
+
+	/**
+	 * Tells whether the identity map is enabled or not. It is disabled by default.
+	 *
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isIdentityMapEnabled() {
+		return identityMap.isEnabled();
+	}
+
+	/**
+	 * Enables or disables the identity map, removing all objects in it.
+	 *
+	 * @param identityMapEnabled a <code>boolean</code>.
+	 * @throws IllegalStateException if the identity map is being enabled and no
+	 * {@link IdentifierResolver} is set.
+	 */
+	public void setIdentityMapEnabled(boolean identityMapEnabled) {
+
+		if (identityMapEnabled && getIdentifierResolver() == null) {
+			throw new IllegalStateException("The identity map requires an IdentifierResolver");
+		}
+
+		identityMap.setEnabled(identityMapEnabled);
+
+	}
+
+	/**
+	 * Returns the maximum number of objects kept in the identity map.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getIdentityMapMaximumSize() {
+		return identityMap.getMaximumSize();
+	}
+
+	/**
+	 * Sets the maximum number of objects kept in the identity map. When it is reached, the
+	 * identity map is cleared. The default value is 10000.
+	 *
+	 * @param maximumSize an <code>int</code>. It must be positive.
+	 */
+	public void setIdentityMapMaximumSize(int maximumSize) {
+		identityMap.setMaximumSize(maximumSize);
+	}
+
+	/**
+	 * Returns the number of objects in the identity map.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getIdentityMapSize() {
+		return identityMap.size();
+	}
+
+	/**
+	 * Returns the object with a given primary key value, looking it up in the identity map before
+	 * invoking <code>dao.findById()</code>.
+	 *
+	 * @param id an <code>int</code>.
+	 * @return a <code>T</code>.
+	 */
+	public T findById(int id) {
+
+		T object = identityMap.get(id);
+
+		if (object == null) {
+			final long generation = identityMap.getGeneration();
+			object = super.findById(Integer.valueOf(id));
+			identityMap.put(id, object, generation);
+		}
+
+		return object;
+
+	}
+
+	/**
+	 * Invokes {@link #findById(int)} if <code>id</code> is not <code>null</code>.
+	 *
+	 * @param id an {@link Integer}.
+	 * @return a <code>T</code>.
+	 */
+	@Override
+	public T findById(Integer id) {
+		return id != null ? findById(id.intValue()) : super.findById(id);
+	}
+
+	/**
+	 * Returns the objects with some given primary key values. If the identity map is enabled and
+	 * contains all of them, the DAO is not invoked. Otherwise, the loaded objects are put in it.
+	 *
+	 * @param ids an <code>int</code> array.
+	 * @return a {@link List} of <code>T</code>.
+	 */
+	public List<T> findByIds(int[] ids) {
+
+		if (identityMap.isEnabled()) {
+
+			final long[] keys = new long[ids.length];
+
+			for (int i = 0; i < ids.length; i++) {
+				keys[i] = ids[i];
+			}
+
+			final List<T> cached = identityMap.getAll(keys);
+
+			if (cached != null) {
+				return cached;
+			}
+
+		}
+
+		final long generation = identityMap.getGeneration();
+		final Integer[] boxed = new Integer[ids.length];
+
+		for (int i = 0; i < ids.length; i++) {
+			boxed[i] = Integer.valueOf(ids[i]);
+		}
+
+		final List<T> objects = super.findByIds(boxed);
+		final IdentifierResolver<T, Integer> resolver = getIdentifierResolver();
+
+		if (resolver != null && identityMap.isEnabled()) {
+
+			for (T object : objects) {
+
+				final Integer id = object != null ? resolver.getId(object) : null;
+
+				if (id != null) {
+					identityMap.put(id.intValue(), object, generation);
+				}
+
+			}
+
+		}
+
+		return objects;
+
+	}
+
+	/**
+	 * Invokes {@link #findByIds(int[])} if the identity map is enabled and no primary key value
+	 * is <code>null</code>.
+	 *
+	 * @param ids an {@link Integer} array.
+	 * @return a {@link List} of <code>T</code>.
+	 */
+	@Override
+	public List<T> findByIds(Integer... ids) {
+
+		if (!identityMap.isEnabled()) {
+			return super.findByIds(ids);
+		}
+
+		final int[] unboxed = new int[ids.length];
+
+		for (int i = 0; i < ids.length; i++) {
+
+			if (ids[i] == null) {
+				return super.findByIds(ids);
+			}
+
+			unboxed[i] = ids[i].intValue();
+
+		}
+
+		return findByIds(unboxed);
+
+	}
+
+	/**
+	 * Removes an object given its primary key.
+	 *
+	 * @param id an <code>int</code>.
+	 */
+	public void delete(int id) {
+
+		try {
+			super.delete(Integer.valueOf(id));
+		}
+		finally {
+			identityMap.remove(id);
+		}
+
+	}
+
+	/**
+	 * Invokes {@link #delete(int)} if <code>id</code> is not <code>null</code>.
+	 *
+	 * @param id an {@link Integer}.
+	 */
+	@Override
+	public void delete(Integer id) {
+
+		if (id != null) {
+			delete(id.intValue());
+		}
+		else {
+			super.delete(id);
+		}
+
+	}
+
+	@Override
+	public void delete(T object) {
+
+		try {
+			super.delete(object);
+		}
+		finally {
+			identityMap.forget(getIdentifierResolver(), object);
+		}
+
+	}
+
+	@Override
+	public void save(T object) {
+
+		try {
+			super.save(object);
+		}
+		finally {
+			identityMap.forget(getIdentifierResolver(), object);
+		}
+
+	}
+
+	@Override
+	public T update(T object) {
+
+		try {
+			return super.update(object);
+		}
+		finally {
+			identityMap.forget(getIdentifierResolver(), object);
+		}
+
+	}
+
+	@Override
+	public void evict(T object) {
+
+		try {
+			super.evict(object);
+		}
+		finally {
+			identityMap.forget(getIdentifierResolver(), object);
+		}
+
+	}
+
+	@Override
+	public void saveAll(Collection<T> objects) {
+
+		try {
+			super.saveAll(objects);
+		}
+		finally {
+			identityMap.forgetAll(getIdentifierResolver(), objects);
+		}
+
+	}
+
+	@Override
+	public void updateAll(Collection<T> objects) {
+
+		try {
+			super.updateAll(objects);
+		}
+		finally {
+			identityMap.forgetAll(getIdentifierResolver(), objects);
+		}
+
+	}
+
+	@Override
+	public void deleteAll(Collection<T> objects) {
+
+		try {
+			super.deleteAll(objects);
+		}
+		finally {
+			identityMap.forgetAll(getIdentifierResolver(), objects);
+		}
+
+	}
+
+	@Override
+	public void deleteByIds(Collection<Integer> ids) {
+
+		try {
+			super.deleteByIds(ids);
+		}
+		finally {
+			identityMap.removeAll(ids);
+		}
+
+	}
+
+}
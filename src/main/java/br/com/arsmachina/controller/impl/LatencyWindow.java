@@ -0,0 +1,129 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.Arrays;
+
+/**
+ * Class that keeps the most recent latency samples, in nanoseconds, in a ring buffer and answers
+ * percentile queries over them. Instances of this class are thread-safe.
+ */
+final class LatencyWindow {
+
+	/**
+	 * Number of samples recorded before a cached percentile is computed again.
+	 */
+	private static final int RECOMPUTE_INTERVAL = 64;
+
+	private final long[] samples;
+
+	private int count;
+
+	private int next;
+
+	private long recorded;
+
+	private double cachedPercentile = -1;
+
+	private long cachedValue;
+
+	private long cachedAt;
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param size an <code>int</code> with the maximum number of samples kept.
+	 */
+	LatencyWindow(int size) {
+
+		if (size <= 0) {
+			throw new IllegalArgumentException("Parameter size must be positive");
+		}
+
+		samples = new long[size];
+
+	}
+
+	/**
+	 * Records a sample.
+	 *
+	 * @param nanos a <code>long</code>.
+	 */
+	synchronized void record(long nanos) {
+
+		samples[next] = nanos;
+		next = (next + 1) % samples.length;
+		recorded++;
+
+		if (count < samples.length) {
+			count++;
+		}
+
+	}
+
+	/**
+	 * Returns the number of samples recorded so far, up to the window size.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * Returns a given percentile of the samples in this window. The value is cached and only
+	 * computed again after some new samples are recorded, so this method is cheap enough to be
+	 * called on every request.
+	 *
+	 * @param percentile a <code>double</code> between 0 and 1.
+	 * @return a <code>long</code>, or <code>-1</code> if there are no samples.
+	 */
+	long percentile(double percentile) {
+
+		final long[] copy;
+		final long recordedAtCopy;
+
+		synchronized (this) {
+
+			if (count == 0) {
+				return -1;
+			}
+
+			if (percentile == cachedPercentile && recorded - cachedAt < RECOMPUTE_INTERVAL) {
+				return cachedValue;
+			}
+
+			copy = new long[count];
+			System.arraycopy(samples, 0, copy, 0, count);
+			recordedAtCopy = recorded;
+
+		}
+
+		Arrays.sort(copy);
+
+		final int index = (int) Math.ceil(percentile * copy.length) - 1;
+		final long value = copy[Math.max(0, Math.min(index, copy.length - 1))];
+
+		synchronized (this) {
+			cachedPercentile = percentile;
+			cachedValue = value;
+			cachedAt = recordedAtCopy;
+		}
+
+		return value;
+
+	}
+
+}
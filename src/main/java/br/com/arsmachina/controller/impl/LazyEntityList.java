@@ -0,0 +1,207 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import br.com.arsmachina.dao.ReadableDAO;
+
+/**
+ * Read-only {@link List} that knows the primary key values of its objects up front and loads the
+ * objects in chunks, through <code>dao.findByIds()</code>, only when they are accessed. Only the
+ * most recently accessed chunks are retained, so iterating over a large list does not keep all of
+ * its objects in memory. Accessing an element of an evicted chunk loads it again, possibly
+ * returning different instances.
+ * <p>
+ * Objects that no longer exist when their chunk is loaded are returned as <code>null</code>.
+ * Chunks are loaded through the DAO whenever they are accessed, so the list must only be
+ * accessed while the DAO can be used, for example, in the session or transaction in which it
+ * was created. Instances of this class are not thread-safe.
+ * </p>
+ *
+ * @param <T> the entity class.
+ * @param <K> the type of the field that represents the entity class' primary key.
+ */
+public class LazyEntityList<T, K extends Serializable> extends AbstractList<T> implements
+		RandomAccess {
+
+	/**
+	 * Default maximum number of chunks kept in memory.
+	 */
+	public static final int DEFAULT_RETAINED_CHUNKS = 2;
+
+	private final ReadableDAO<T, K> dao;
+
+	private final IdentifierResolver<T, K> resolver;
+
+	private final List<K> ids;
+
+	private final int chunkSize;
+
+	private final Map<Integer, Object[]> chunks;
+
+	private int loadCount;
+
+	/**
+	 * Constructor that retains at most {@link #DEFAULT_RETAINED_CHUNKS} chunks.
+	 *
+	 * @param dao a {@link ReadableDAO}. It cannot be <code>null</code>.
+	 * @param resolver an {@link IdentifierResolver}. It cannot be <code>null</code>.
+	 * @param ids a {@link List} of <code>K</code>. It cannot be <code>null</code>.
+	 * @param chunkSize an <code>int</code> with the maximum number of objects loaded at once. It
+	 * must be positive.
+	 */
+	public LazyEntityList(ReadableDAO<T, K> dao, IdentifierResolver<T, K> resolver, List<K> ids,
+			int chunkSize) {
+		this(dao, resolver, ids, chunkSize, DEFAULT_RETAINED_CHUNKS);
+	}
+
+	/**
+	 * Constructor that defines the number of retained chunks.
+	 *
+	 * @param dao a {@link ReadableDAO}. It cannot be <code>null</code>.
+	 * @param resolver an {@link IdentifierResolver}. It cannot be <code>null</code>.
+	 * @param ids a {@link List} of <code>K</code>. It cannot be <code>null</code>.
+	 * @param chunkSize an <code>int</code> with the maximum number of objects loaded at once. It
+	 * must be positive.
+	 * @param retainedChunks an <code>int</code> with the maximum number of chunks kept in memory.
+	 * It must be positive.
+	 */
+	public LazyEntityList(ReadableDAO<T, K> dao, IdentifierResolver<T, K> resolver, List<K> ids,
+			int chunkSize, final int retainedChunks) {
+
+		if (dao == null) {
+			throw new IllegalArgumentException("Parameter dao cannot be null");
+		}
+
+		if (resolver == null) {
+			throw new IllegalArgumentException("Parameter resolver cannot be null");
+		}
+
+		if (ids == null) {
+			throw new IllegalArgumentException("Parameter ids cannot be null");
+		}
+
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Parameter chunkSize must be positive");
+		}
+
+		if (retainedChunks <= 0) {
+			throw new IllegalArgumentException("Parameter retainedChunks must be positive");
+		}
+
+		this.dao = dao;
+		this.resolver = resolver;
+		this.ids = new ArrayList<K>(ids);
+		this.chunkSize = chunkSize;
+
+		chunks = new LinkedHashMap<Integer, Object[]>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> eldest) {
+				return size() > retainedChunks;
+			}
+
+		};
+
+	}
+
+	/**
+	 * Returns the object in a given position, loading its chunk if needed.
+	 *
+	 * @param index an <code>int</code>.
+	 * @return a <code>T</code> or <code>null</code> if the object no longer exists.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+
+		if (index < 0 || index >= ids.size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + ids.size());
+		}
+
+		return (T) getChunk(index / chunkSize)[index % chunkSize];
+
+	}
+
+	/**
+	 * Returns the number of objects in this list without loading any of them.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	@Override
+	public int size() {
+		return ids.size();
+	}
+
+	/**
+	 * Returns the primary key values of the objects in this list.
+	 *
+	 * @return an unmodifiable {@link List} of <code>K</code>.
+	 */
+	public List<K> getIds() {
+		return Collections.unmodifiableList(ids);
+	}
+
+	/**
+	 * Returns the number of chunks loaded so far, including the ones loaded again after being
+	 * evicted.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getLoadCount() {
+		return loadCount;
+	}
+
+	private Object[] getChunk(int number) {
+
+		Object[] chunk = chunks.get(number);
+
+		if (chunk == null) {
+
+			final int start = number * chunkSize;
+			final List<K> chunkIds = ids.subList(start, Math.min(start + chunkSize, ids.size()));
+			final Map<K, T> loaded = new HashMap<K, T>();
+
+			for (T object : dao.findByIds(Identifiers.toArray(chunkIds))) {
+				loaded.put(resolver.getId(object), object);
+			}
+
+			chunk = new Object[chunkIds.size()];
+
+			for (int i = 0; i < chunk.length; i++) {
+				chunk[i] = loaded.get(chunkIds.get(i));
+			}
+
+			chunks.put(number, chunk);
+			loadCount++;
+
+		}
+
+		return chunk;
+
+	}
+
+}
@@ -0,0 +1,310 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Identity map shared by {@link LongKeyControllerImpl} and {@link IntKeyControllerImpl}. It keeps
+ * objects by primitive primary key value in a {@link LongObjectHashMap} guarded by a read-write
+ * lock.
+ * <p>
+ * Every removal increments a generation counter. Callers read it before loading an object and
+ * pass it to {@link #put(long, Object, long)}, which ignores objects loaded before a concurrent
+ * removal, so a stale object is never put back after an update. When the map reaches its maximum
+ * size, it is cleared before the next object is put, which keeps the cost of each put constant
+ * on average. Instances of this class are thread-safe.
+ * </p>
+ *
+ * @param <T> the entity class.
+ */
+final class LongIdentityMap<T> {
+
+	/**
+	 * Default maximum number of objects kept.
+	 */
+	static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+	private final LongObjectHashMap<T> map = new LongObjectHashMap<T>();
+
+	private final Lock readLock;
+
+	private final Lock writeLock;
+
+	private volatile boolean enabled;
+
+	private volatile int maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+	private volatile long generation;
+
+	LongIdentityMap() {
+		final ReadWriteLock lock = new ReentrantReadWriteLock();
+		readLock = lock.readLock();
+		writeLock = lock.writeLock();
+	}
+
+	boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables this map, removing all objects in it.
+	 */
+	void setEnabled(boolean enabled) {
+
+		writeLock.lock();
+
+		try {
+			this.enabled = enabled;
+			clearLocked();
+		}
+		finally {
+			writeLock.unlock();
+		}
+
+	}
+
+	int getMaximumSize() {
+		return maximumSize;
+	}
+
+	void setMaximumSize(int maximumSize) {
+
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("Parameter maximumSize must be positive");
+		}
+
+		this.maximumSize = maximumSize;
+
+	}
+
+	/**
+	 * Returns the generation to be passed to {@link #put(long, Object, long)} for an object that
+	 * is about to be loaded.
+	 */
+	long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Returns the object with a given key, or <code>null</code> if it is not in this map or this
+	 * map is disabled.
+	 */
+	T get(long key) {
+
+		if (!enabled) {
+			return null;
+		}
+
+		readLock.lock();
+
+		try {
+			return map.get(key);
+		}
+		finally {
+			readLock.unlock();
+		}
+
+	}
+
+	/**
+	 * Returns the objects with some given keys, in the same order, or <code>null</code> unless all
+	 * of them are in this map.
+	 */
+	List<T> getAll(long[] keys) {
+
+		if (!enabled) {
+			return null;
+		}
+
+		final List<T> objects = new ArrayList<T>(keys.length);
+
+		readLock.lock();
+
+		try {
+
+			for (long key : keys) {
+
+				final T object = map.get(key);
+
+				if (object == null) {
+					return null;
+				}
+
+				objects.add(object);
+
+			}
+
+		}
+		finally {
+			readLock.unlock();
+		}
+
+		return objects;
+
+	}
+
+	/**
+	 * Puts an object loaded after {@link #getGeneration()} returned <code>generation</code>,
+	 * unless this map is disabled or an object was removed since then.
+	 */
+	void put(long key, T object, long generation) {
+
+		if (!enabled || object == null) {
+			return;
+		}
+
+		writeLock.lock();
+
+		try {
+
+			if (enabled && generation == this.generation) {
+
+				if (map.size() >= maximumSize && map.get(key) == null) {
+					map.clear();
+				}
+
+				map.put(key, object);
+
+			}
+
+		}
+		finally {
+			writeLock.unlock();
+		}
+
+	}
+
+	/**
+	 * Removes the object with a given key.
+	 */
+	void remove(long key) {
+
+		if (!enabled) {
+			return;
+		}
+
+		writeLock.lock();
+
+		try {
+			generation++;
+			map.remove(key);
+		}
+		finally {
+			writeLock.unlock();
+		}
+
+	}
+
+	/**
+	 * Removes an object given its primary key value, obtained through an
+	 * {@link IdentifierResolver}. If there is no resolver, all objects are removed.
+	 */
+	void forget(IdentifierResolver<T, ? extends Number> resolver, T object) {
+
+		if (!enabled || object == null) {
+			return;
+		}
+
+		if (resolver == null) {
+			clear();
+			return;
+		}
+
+		final Number id = resolver.getId(object);
+
+		// objects without primary key value are never in the map
+		if (id != null) {
+			remove(id.longValue());
+		}
+
+	}
+
+	/**
+	 * Removes some objects given their primary key values, obtained through an
+	 * {@link IdentifierResolver}. A <code>null</code> collection is ignored.
+	 */
+	void forgetAll(IdentifierResolver<T, ? extends Number> resolver, Collection<T> objects) {
+
+		if (!enabled || objects == null) {
+			return;
+		}
+
+		for (T object : objects) {
+			forget(resolver, object);
+		}
+
+	}
+
+	/**
+	 * Removes the objects with some given keys. A <code>null</code> collection and
+	 * <code>null</code> keys are ignored.
+	 */
+	void removeAll(Collection<? extends Number> keys) {
+
+		if (!enabled || keys == null) {
+			return;
+		}
+
+		for (Number key : keys) {
+
+			if (key != null) {
+				remove(key.longValue());
+			}
+
+		}
+
+	}
+
+	/**
+	 * Removes all objects.
+	 */
+	void clear() {
+
+		writeLock.lock();
+
+		try {
+			clearLocked();
+		}
+		finally {
+			writeLock.unlock();
+		}
+
+	}
+
+	int size() {
+
+		readLock.lock();
+
+		try {
+			return map.size();
+		}
+		finally {
+			readLock.unlock();
+		}
+
+	}
+
+	private void clearLocked() {
+		generation++;
+		map.clear();
+	}
+
+}
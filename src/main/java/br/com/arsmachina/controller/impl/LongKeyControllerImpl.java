@@ -0,0 +1,345 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.Collection;
+import java.util.List;
+
+import br.com.arsmachina.controller.LongKeyController;
+import br.com.arsmachina.dao.DAO;
+
+/**
+ * Abstract class that implements the {@link LongKeyController} interface by delegating all method
+ * calls to a {@link DAO} passed through its constructor.
+ * <p>
+ * Optionally, objects returned by {@link #findById(long)} and {@link #findByIds(long[])} can be
+ * kept in an identity map backed by a {@link LongObjectHashMap}, so repeated lookups of the same
+ * identifiers neither box them nor reach the DAO. The identity map requires an
+ * {@link IdentifierResolver}. Objects are removed from it by primary key value after they are
+ * saved, updated, deleted or evicted through this controller, one at a time or in batches
+ * (including the flush of a {@link UnitOfWork}), and it is cleared when it reaches its maximum
+ * size. Changes not made through this controller are not seen by the identity map.
+ * </p>
+ * <p>
+ * The very same instances are returned to every caller, in every thread, while they are in the
+ * identity map, so it should only be enabled for entities that callers do not modify in place
+ * or whose instances can be safely shared, such as reference data.
+ * </p>
+ *
+ * @param <T> the entity class related to this controller.
+ */
+public abstract class LongKeyControllerImpl<T> extends ControllerImpl<T, Long> implements
+		LongKeyController<T> {
+
+	private final LongIdentityMap<T> identityMap = new LongIdentityMap<T>();
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param dao a {@link DAO<T, Long>}. It cannot be <code>null</code>.
+	 */
+	public LongKeyControllerImpl(DAO<T, Long> dao) {
+		super(dao);
+	}
+
+	/**
+	 * Tells whether the identity map is enabled or not. It is disabled by default.
+	 *
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isIdentityMapEnabled() {
+		return identityMap.isEnabled();
+	}
+
+	/**
+	 * Enables or disables the identity map, removing all objects in it.
+	 *
+	 * @param identityMapEnabled a <code>boolean</code>.
+	 * @throws IllegalStateException if the identity map is being enabled and no
+	 * {@link IdentifierResolver} is set.
+	 */
+	public void setIdentityMapEnabled(boolean identityMapEnabled) {
+
+		if (identityMapEnabled && getIdentifierResolver() == null) {
+			throw new IllegalStateException("The identity map requires an IdentifierResolver");
+		}
+
+		identityMap.setEnabled(identityMapEnabled);
+
+	}
+
+	/**
+	 * Returns the maximum number of objects kept in the identity map.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getIdentityMapMaximumSize() {
+		return identityMap.getMaximumSize();
+	}
+
+	/**
+	 * Sets the maximum number of objects kept in the identity map. When it is reached, the
+	 * identity map is cleared. The default value is 10000.
+	 *
+	 * @param maximumSize an <code>int</code>. It must be positive.
+	 */
+	public void setIdentityMapMaximumSize(int maximumSize) {
+		identityMap.setMaximumSize(maximumSize);
+	}
+
+	/**
+	 * Returns the number of objects in the identity map.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getIdentityMapSize() {
+		return identityMap.size();
+	}
+
+	/**
+	 * Returns the object with a given primary key value, looking it up in the identity map before
+	 * invoking <code>dao.findById()</code>.
+	 *
+	 * @param id a <code>long</code>.
+	 * @return a <code>T</code>.
+	 */
+	public T findById(long id) {
+
+		T object = identityMap.get(id);
+
+		if (object == null) {
+			final long generation = identityMap.getGeneration();
+			object = super.findById(Long.valueOf(id));
+			identityMap.put(id, object, generation);
+		}
+
+		return object;
+
+	}
+
+	/**
+	 * Invokes {@link #findById(long)} if <code>id</code> is not <code>null</code>.
+	 *
+	 * @param id a {@link Long}.
+	 * @return a <code>T</code>.
+	 */
+	@Override
+	public T findById(Long id) {
+		return id != null ? findById(id.longValue()) : super.findById(id);
+	}
+
+	/**
+	 * Returns the objects with some given primary key values. If the identity map is enabled and
+	 * contains all of them, the DAO is not invoked. Otherwise, the loaded objects are put in it.
+	 *
+	 * @param ids a <code>long</code> array.
+	 * @return a {@link List} of <code>T</code>.
+	 */
+	public List<T> findByIds(long[] ids) {
+
+		final List<T> cached = identityMap.getAll(ids);
+
+		if (cached != null) {
+			return cached;
+		}
+
+		final long generation = identityMap.getGeneration();
+		final Long[] boxed = new Long[ids.length];
+
+		for (int i = 0; i < ids.length; i++) {
+			boxed[i] = Long.valueOf(ids[i]);
+		}
+
+		final List<T> objects = super.findByIds(boxed);
+		final IdentifierResolver<T, Long> resolver = getIdentifierResolver();
+
+		if (resolver != null && identityMap.isEnabled()) {
+
+			for (T object : objects) {
+
+				final Long id = object != null ? resolver.getId(object) : null;
+
+				if (id != null) {
+					identityMap.put(id.longValue(), object, generation);
+				}
+
+			}
+
+		}
+
+		return objects;
+
+	}
+
+	/**
+	 * Invokes {@link #findByIds(long[])} if the identity map is enabled and no primary key value
+	 * is <code>null</code>.
+	 *
+	 * @param ids a {@link Long} array.
+	 * @return a {@link List} of <code>T</code>.
+	 */
+	@Override
+	public List<T> findByIds(Long... ids) {
+
+		if (!identityMap.isEnabled()) {
+			return super.findByIds(ids);
+		}
+
+		final long[] unboxed = new long[ids.length];
+
+		for (int i = 0; i < ids.length; i++) {
+
+			if (ids[i] == null) {
+				return super.findByIds(ids);
+			}
+
+			unboxed[i] = ids[i].longValue();
+
+		}
+
+		return findByIds(unboxed);
+
+	}
+
+	/**
+	 * Removes an object given its primary key.
+	 *
+	 * @param id a <code>long</code>.
+	 */
+	public void delete(long id) {
+
+		try {
+			super.delete(Long.valueOf(id));
+		}
+		finally {
+			identityMap.remove(id);
+		}
+
+	}
+
+	/**
+	 * Invokes {@link #delete(long)} if <code>id</code> is not <code>null</code>.
+	 *
+	 * @param id a {@link Long}.
+	 */
+	@Override
+	public void delete(Long id) {
+
+		if (id != null) {
+			delete(id.longValue());
+		}
+		else {
+			super.delete(id);
+		}
+
+	}
+
+	@Override
+	public void delete(T object) {
+
+		try {
+			super.delete(object);
+		}
+		finally {
+			identityMap.forget(getIdentifierResolver(), object);
+		}
+
+	}
+
+	@Override
+	public void save(T object) {
+
+		try {
+			super.save(object);
+		}
+		finally {
+			identityMap.forget(getIdentifierResolver(), object);
+		}
+
+	}
+
+	@Override
+	public T update(T object) {
+
+		try {
+			return super.update(object);
+		}
+		finally {
+			identityMap.forget(getIdentifierResolver(), object);
+		}
+
+	}
+
+	@Override
+	public void evict(T object) {
+
+		try {
+			super.evict(object);
+		}
+		finally {
+			identityMap.forget(getIdentifierResolver(), object);
+		}
+
+	}
+
+	@Override
+	public void saveAll(Collection<T> objects) {
+
+		try {
+			super.saveAll(objects);
+		}
+		finally {
+			identityMap.forgetAll(getIdentifierResolver(), objects);
+		}
+
+	}
+
+	@Override
+	public void updateAll(Collection<T> objects) {
+
+		try {
+			super.updateAll(objects);
+		}
+		finally {
+			identityMap.forgetAll(getIdentifierResolver(), objects);
+		}
+
+	}
+
+	@Override
+	public void deleteAll(Collection<T> objects) {
+
+		try {
+			super.deleteAll(objects);
+		}
+		finally {
+			identityMap.forgetAll(getIdentifierResolver(), objects);
+		}
+
+	}
+
+	@Override
+	public void deleteByIds(Collection<Long> ids) {
+
+		try {
+			super.deleteByIds(ids);
+		}
+		finally {
+			identityMap.removeAll(ids);
+		}
+
+	}
+
+}
@@ -0,0 +1,248 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+/**
+ * Hash map from <code>long</code> keys to non-<code>null</code> objects that uses open addressing
+ * with linear probing over parallel arrays, so neither keys nor entries are allocated on
+ * insertion or lookup. Instances of this class are not thread-safe.
+ *
+ * @param <V> the type of the values.
+ */
+public class LongObjectHashMap<V> {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private long[] keys;
+
+	private Object[] values;
+
+	private int size;
+
+	private int mask;
+
+	private int resizeThreshold;
+
+	/**
+	 * Creates an empty map with the default initial capacity.
+	 */
+	public LongObjectHashMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty map that can hold a given number of entries without being resized.
+	 *
+	 * @param expectedSize an <code>int</code>.
+	 */
+	public LongObjectHashMap(int expectedSize) {
+
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("Parameter expectedSize cannot be negative");
+		}
+
+		int capacity = DEFAULT_CAPACITY;
+
+		while (capacity * 3 / 4 < expectedSize) {
+			capacity <<= 1;
+		}
+
+		allocate(capacity);
+
+	}
+
+	/**
+	 * Returns the value associated with a given key.
+	 *
+	 * @param key a <code>long</code>.
+	 * @return a <code>V</code> or <code>null</code> if there is no such key.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+
+		int index = hash(key) & mask;
+		Object value;
+
+		while ((value = values[index]) != null) {
+
+			if (keys[index] == key) {
+				return (V) value;
+			}
+
+			index = (index + 1) & mask;
+
+		}
+
+		return null;
+
+	}
+
+	/**
+	 * Associates a value with a given key.
+	 *
+	 * @param key a <code>long</code>.
+	 * @param value a <code>V</code>. It cannot be <code>null</code>.
+	 * @return the previous value or <code>null</code> if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+
+		if (value == null) {
+			throw new IllegalArgumentException("Parameter value cannot be null");
+		}
+
+		int index = hash(key) & mask;
+		Object current;
+
+		while ((current = values[index]) != null) {
+
+			if (keys[index] == key) {
+				values[index] = value;
+				return (V) current;
+			}
+
+			index = (index + 1) & mask;
+
+		}
+
+		keys[index] = key;
+		values[index] = value;
+
+		if (++size > resizeThreshold) {
+			resize(keys.length << 1);
+		}
+
+		return null;
+
+	}
+
+	/**
+	 * Removes the entry with a given key.
+	 *
+	 * @param key a <code>long</code>.
+	 * @return the removed value or <code>null</code> if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+
+		int index = hash(key) & mask;
+		Object value;
+
+		while ((value = values[index]) != null) {
+
+			if (keys[index] == key) {
+				removeAt(index);
+				return (V) value;
+			}
+
+			index = (index + 1) & mask;
+
+		}
+
+		return null;
+
+	}
+
+	/**
+	 * Returns the number of entries in this map.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all entries of this map.
+	 */
+	public void clear() {
+
+		for (int i = 0; i < values.length; i++) {
+			values[i] = null;
+		}
+
+		size = 0;
+
+	}
+
+	/**
+	 * Removes the entry at a given slot, shifting back the following entries of the same probe
+	 * sequence so no tombstones are needed.
+	 */
+	private void removeAt(int index) {
+
+		values[index] = null;
+		size--;
+
+		int gap = index;
+		int next = (index + 1) & mask;
+
+		while (values[next] != null) {
+
+			final int home = hash(keys[next]) & mask;
+
+			// moves the entry to the gap if the gap lies between its home slot and its slot
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				values[next] = null;
+				gap = next;
+			}
+
+			next = (next + 1) & mask;
+
+		}
+
+	}
+
+	private void resize(int capacity) {
+
+		final long[] oldKeys = keys;
+		final Object[] oldValues = values;
+
+		allocate(capacity);
+
+		for (int i = 0; i < oldValues.length; i++) {
+
+			if (oldValues[i] != null) {
+
+				int index = hash(oldKeys[i]) & mask;
+
+				while (values[index] != null) {
+					index = (index + 1) & mask;
+				}
+
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+
+			}
+
+		}
+
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		resizeThreshold = capacity * 3 / 4;
+	}
+
+	private static int hash(long key) {
+		final long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
@@ -0,0 +1,123 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import br.com.arsmachina.controller.Page;
+import br.com.arsmachina.dao.ReadableDAO;
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * Class that implements the <code>findPage()</code> methods shared by
+ * {@link ReadableControllerImpl} and {@link ControllerImpl}.
+ */
+final class PageFinder {
+
+	private PageFinder() {
+	}
+
+	/**
+	 * Returns a page of objects. If the DAO implements {@link PageQuerySupport}, it does the work.
+	 * Otherwise, when <code>countTotal</code> is <code>false</code>, <code>maxResults + 1</code>
+	 * objects are loaded to tell whether there is a next page and nothing is counted. When it is
+	 * <code>true</code>, <code>dao.countAll()</code> is invoked through <code>executor</code>,
+	 * concurrently with <code>dao.findAll()</code>, or after it if <code>executor</code> is
+	 * <code>null</code>.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T, K extends Serializable> Page<T> findPage(final ReadableDAO<T, K> dao,
+			ExecutorService executor, int firstResult, int maxResults, boolean countTotal,
+			SortCriterion... sortCriteria) {
+
+		if (firstResult < 0) {
+			throw new IllegalArgumentException("Parameter firstResult cannot be negative");
+		}
+
+		if (maxResults < 0) {
+			throw new IllegalArgumentException("Parameter maxResults cannot be negative");
+		}
+
+		if (dao instanceof PageQuerySupport) {
+			return ((PageQuerySupport<T>) dao).findPage(firstResult, maxResults, countTotal,
+					sortCriteria);
+		}
+
+		if (!countTotal) {
+
+			final int fetchSize = maxResults < Integer.MAX_VALUE ? maxResults + 1 : maxResults;
+			List<T> rows = dao.findAll(firstResult, fetchSize, sortCriteria);
+			final boolean hasNext = rows.size() > maxResults;
+
+			if (hasNext) {
+				rows = new ArrayList<T>(rows.subList(0, maxResults));
+			}
+
+			return new Page<T>(rows, firstResult, maxResults, Page.UNKNOWN_TOTAL_COUNT, hasNext);
+
+		}
+
+		final List<T> rows;
+		final long totalCount;
+
+		if (executor != null) {
+
+			final Future<Long> count = executor.submit(new Callable<Long>() {
+
+				public Long call() {
+					return dao.countAll();
+				}
+
+			});
+
+			try {
+				rows = dao.findAll(firstResult, maxResults, sortCriteria);
+			}
+			catch (RuntimeException e) {
+				count.cancel(true);
+				throw e;
+			}
+
+			try {
+				totalCount = count.get();
+			}
+			catch (InterruptedException e) {
+				count.cancel(true);
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while counting objects", e);
+			}
+			catch (ExecutionException e) {
+				throw Callables.unwrap(e);
+			}
+
+		}
+		else {
+			rows = dao.findAll(firstResult, maxResults, sortCriteria);
+			totalCount = dao.countAll();
+		}
+
+		final boolean hasNext = firstResult + (long) rows.size() < totalCount;
+
+		return new Page<T>(rows, firstResult, maxResults, totalCount, hasNext);
+
+	}
+
+}
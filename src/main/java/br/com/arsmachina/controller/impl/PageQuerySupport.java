@@ -0,0 +1,45 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import br.com.arsmachina.controller.Page;
+import br.com.arsmachina.dao.ReadableDAO;
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * Interface that can be implemented by {@link ReadableDAO}s that are able to return a page of
+ * objects and their total count in a single query, for example with a window function. When a
+ * controller DAO implements it, the controller <code>findPage()</code> methods delegate to it.
+ *
+ * @param <T> the entity class.
+ */
+public interface PageQuerySupport<T> {
+
+	/**
+	 * Returns a page of objects.
+	 *
+	 * @param firstResult an <code>int</code> with the index of the first object to be returned.
+	 * The first object has index 0.
+	 * @param maxResults an <code>int</code> with the maximum number of objects to be returned.
+	 * @param countTotal a <code>boolean</code> telling whether the total number of objects must
+	 * be counted.
+	 * @param sortCriteria a {@link SortCriterion} array used to define how the returned list will
+	 * be sorted.
+	 * @return a {@link Page} of <code>T</code>.
+	 */
+	Page<T> findPage(int firstResult, int maxResults, boolean countTotal,
+			SortCriterion... sortCriteria);
+
+}
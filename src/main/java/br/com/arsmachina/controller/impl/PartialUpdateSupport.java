@@ -0,0 +1,39 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.Set;
+
+import br.com.arsmachina.dao.WriteableDAO;
+
+/**
+ * Interface that can be implemented by {@link WriteableDAO}s that are able to update only some
+ * properties of an object. It is used by {@link ChangeTracker#update(Object, WriteableDAO)}.
+ *
+ * @param <T> the entity class.
+ */
+public interface PartialUpdateSupport<T> {
+
+	/**
+	 * Updates some properties of an object. Its semantics are the same of
+	 * {@link WriteableDAO#update(Object)}.
+	 *
+	 * @param object a <code>T</code>.
+	 * @param properties a {@link Set} with the names of the changed properties. It is never empty.
+	 * @return a <code>T</code>.
+	 */
+	T update(T object, Set<String> properties);
+
+}
@@ -0,0 +1,38 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import br.com.arsmachina.dao.ReadableDAO;
+
+/**
+ * Interface that can be implemented by {@link ReadableDAO}s backed by a persistence context,
+ * such as ORM-backed DAOs, to tell which instances it manages. Controllers refresh managed
+ * objects directly instead of loading their current state through <code>findByIds()</code>, as
+ * such queries would return the managed instances themselves.
+ *
+ * @param <T> the entity class.
+ */
+public interface PersistenceContextSupport<T> {
+
+	/**
+	 * Tells whether an object is managed by the persistence context, that is, whether queries
+	 * return this very instance for its primary key value.
+	 *
+	 * @param object a <code>T</code>.
+	 * @return a <code>boolean</code>.
+	 */
+	boolean isManaged(T object);
+
+}
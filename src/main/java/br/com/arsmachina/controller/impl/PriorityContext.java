@@ -0,0 +1,96 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Class that holds the {@link CallPriority} of the calls made by the current thread. Calls are
+ * {@link CallPriority#INTERACTIVE} unless another priority is set. Priorities are meant to be set
+ * for a scope, either through {@link #call(CallPriority, Callable)} or with
+ * {@link #setPriority(CallPriority)} and a <code>finally</code> block that restores the previous
+ * one.
+ */
+public final class PriorityContext {
+
+	private static final ThreadLocal<CallPriority> PRIORITY = new ThreadLocal<CallPriority>();
+
+	private PriorityContext() {
+	}
+
+	/**
+	 * Returns the priority of the calls made by the current thread.
+	 *
+	 * @return a {@link CallPriority}.
+	 */
+	public static CallPriority getPriority() {
+
+		final CallPriority priority = PRIORITY.get();
+
+		return priority != null ? priority : CallPriority.INTERACTIVE;
+
+	}
+
+	/**
+	 * Sets the priority of the calls made by the current thread.
+	 *
+	 * @param priority a {@link CallPriority} or <code>null</code> to restore the default one.
+	 * @return the previous {@link CallPriority}.
+	 */
+	public static CallPriority setPriority(CallPriority priority) {
+
+		final CallPriority previous = getPriority();
+
+		if (priority != null) {
+			PRIORITY.set(priority);
+		}
+		else {
+			PRIORITY.remove();
+		}
+
+		return previous;
+
+	}
+
+	/**
+	 * Runs a {@link Callable} in the current thread with a given priority, restoring the previous
+	 * one afterwards.
+	 *
+	 * @param priority a {@link CallPriority}. It cannot be <code>null</code>.
+	 * @param callable a {@link Callable}. It cannot be <code>null</code>.
+	 * @return the value returned by the {@link Callable}.
+	 */
+	public static <V> V call(CallPriority priority, Callable<V> callable) {
+
+		if (priority == null) {
+			throw new IllegalArgumentException("Parameter priority cannot be null");
+		}
+
+		if (callable == null) {
+			throw new IllegalArgumentException("Parameter callable cannot be null");
+		}
+
+		final CallPriority previous = setPriority(priority);
+
+		try {
+			return Callables.call(callable);
+		}
+		finally {
+			setPriority(previous);
+		}
+
+	}
+
+}
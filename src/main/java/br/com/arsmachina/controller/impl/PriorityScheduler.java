@@ -0,0 +1,485 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class that runs controller calls in a bounded pool of worker threads, taking them from one queue
+ * per {@link CallPriority}. It is meant to be shared by all {@link PrioritySchedulingController}s
+ * that use the same DAO resources, such as a connection pool, so that batch calls cannot delay
+ * interactive ones for long.
+ * <p>
+ * With {@link Policy#STRICT}, a call is only taken from a queue when all higher priority queues
+ * are empty. With {@link Policy#WEIGHTED_FAIR}, queues are served in turns, each taking up to its
+ * weight in calls, so lower priorities are never starved. Queues are bounded and calls that do
+ * not fit are rejected with a {@link RejectedExecutionException}. The time each call waits in its
+ * queue is recorded per priority.
+ * </p>
+ * <p>
+ * Calls made from the worker threads themselves, for example by a decorated controller that uses
+ * another scheduled controller, run directly to avoid deadlocks.
+ * </p>
+ */
+public class PriorityScheduler {
+
+	/**
+	 * Policies used to choose the queue the next call is taken from.
+	 */
+	public enum Policy {
+
+		/**
+		 * Always take the call from the highest priority queue that is not empty.
+		 */
+		STRICT,
+
+		/**
+		 * Take calls from each queue in turns, up to the queue weight per turn.
+		 */
+		WEIGHTED_FAIR
+
+	}
+
+	/**
+	 * Number of wait time samples kept per priority.
+	 */
+	private static final int WINDOW_SIZE = 1024;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notEmpty = lock.newCondition();
+
+	private final Lane[] lanes;
+
+	private final Set<Thread> workers;
+
+	private final Policy policy;
+
+	private final int queueCapacity;
+
+	private int currentLane;
+
+	private int credits;
+
+	private boolean shutdown;
+
+	/**
+	 * Single constructor of this class. The worker threads are started immediately. The default
+	 * weights are 4 for {@link CallPriority#INTERACTIVE} and 1 for {@link CallPriority#BATCH}.
+	 *
+	 * @param threads an <code>int</code> with the number of worker threads. It must be positive.
+	 * @param queueCapacity an <code>int</code> with the maximum number of queued calls per
+	 * priority. It must be positive.
+	 * @param policy a {@link Policy}. It cannot be <code>null</code>.
+	 */
+	public PriorityScheduler(int threads, int queueCapacity, Policy policy) {
+
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Parameter threads must be positive");
+		}
+
+		if (queueCapacity <= 0) {
+			throw new IllegalArgumentException("Parameter queueCapacity must be positive");
+		}
+
+		if (policy == null) {
+			throw new IllegalArgumentException("Parameter policy cannot be null");
+		}
+
+		this.queueCapacity = queueCapacity;
+		this.policy = policy;
+
+		final CallPriority[] priorities = CallPriority.values();
+		lanes = new Lane[priorities.length];
+
+		for (CallPriority priority : priorities) {
+			lanes[priority.ordinal()] = new Lane(priority == CallPriority.INTERACTIVE ? 4 : 1);
+		}
+
+		credits = lanes[0].weight;
+
+		final Set<Thread> workers = new HashSet<Thread>();
+
+		for (int i = 0; i < threads; i++) {
+
+			final Thread worker = new Thread(new Runnable() {
+
+				public void run() {
+					work();
+				}
+
+			}, "PriorityScheduler-" + i);
+
+			worker.setDaemon(true);
+			workers.add(worker);
+
+		}
+
+		this.workers = Collections.unmodifiableSet(workers);
+
+		for (Thread worker : workers) {
+			worker.start();
+		}
+
+	}
+
+	/**
+	 * Sets the number of calls taken from the queue of a given priority per turn when the policy
+	 * is {@link Policy#WEIGHTED_FAIR}.
+	 *
+	 * @param priority a {@link CallPriority}. It cannot be <code>null</code>.
+	 * @param weight an <code>int</code>. It must be positive.
+	 */
+	public void setWeight(CallPriority priority, int weight) {
+
+		if (priority == null) {
+			throw new IllegalArgumentException("Parameter priority cannot be null");
+		}
+
+		if (weight <= 0) {
+			throw new IllegalArgumentException("Parameter weight must be positive");
+		}
+
+		lock.lock();
+
+		try {
+			lanes[priority.ordinal()].weight = weight;
+		}
+		finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * Runs a {@link Callable} in a worker thread and waits for its result. The priority of the
+	 * calling thread is propagated to the worker thread.
+	 *
+	 * @param priority a {@link CallPriority}. It cannot be <code>null</code>.
+	 * @param callable a {@link Callable}. It cannot be <code>null</code>.
+	 * @return the value returned by the {@link Callable}.
+	 * @throws RejectedExecutionException if the queue is full or this scheduler was shut down.
+	 */
+	public <V> V execute(CallPriority priority, Callable<V> callable) {
+
+		if (priority == null) {
+			throw new IllegalArgumentException("Parameter priority cannot be null");
+		}
+
+		if (callable == null) {
+			throw new IllegalArgumentException("Parameter callable cannot be null");
+		}
+
+		if (workers.contains(Thread.currentThread())) {
+			return Callables.call(callable);
+		}
+
+		final Task<V> task = new Task<V>(callable, priority);
+		final Lane lane = lanes[priority.ordinal()];
+
+		lock.lock();
+
+		try {
+
+			if (shutdown) {
+				throw new RejectedExecutionException("Scheduler was shut down");
+			}
+
+			if (lane.queue.size() >= queueCapacity) {
+				lane.rejectedCount.incrementAndGet();
+				throw new RejectedExecutionException("Queue of " + priority + " calls is full");
+			}
+
+			lane.queue.add(task);
+			notEmpty.signal();
+
+		}
+		finally {
+			lock.unlock();
+		}
+
+		try {
+			return task.get();
+		}
+		catch (InterruptedException e) {
+			task.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a scheduled call", e);
+		}
+		catch (ExecutionException e) {
+			throw Callables.unwrap(e);
+		}
+
+	}
+
+	/**
+	 * Stops accepting calls. The worker threads finish after running the queued ones.
+	 */
+	public void shutdown() {
+
+		lock.lock();
+
+		try {
+			shutdown = true;
+			notEmpty.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * Returns the number of calls waiting in the queue of a given priority.
+	 *
+	 * @param priority a {@link CallPriority}. It cannot be <code>null</code>.
+	 * @return an <code>int</code>.
+	 */
+	public int getQueueLength(CallPriority priority) {
+
+		lock.lock();
+
+		try {
+			return lanes[priority.ordinal()].queue.size();
+		}
+		finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * Returns the number of calls of a given priority taken from its queue so far.
+	 *
+	 * @param priority a {@link CallPriority}. It cannot be <code>null</code>.
+	 * @return a <code>long</code>.
+	 */
+	public long getWaitCount(CallPriority priority) {
+		return lanes[priority.ordinal()].waitCount.get();
+	}
+
+	/**
+	 * Returns the number of calls of a given priority rejected because the queue was full.
+	 *
+	 * @param priority a {@link CallPriority}. It cannot be <code>null</code>.
+	 * @return a <code>long</code>.
+	 */
+	public long getRejectedCount(CallPriority priority) {
+		return lanes[priority.ordinal()].rejectedCount.get();
+	}
+
+	/**
+	 * Returns the average time the calls of a given priority waited in their queue.
+	 *
+	 * @param priority a {@link CallPriority}. It cannot be <code>null</code>.
+	 * @param unit a {@link TimeUnit}. It cannot be <code>null</code>.
+	 * @return a <code>long</code>.
+	 */
+	public long getAverageWaitTime(CallPriority priority, TimeUnit unit) {
+
+		final Lane lane = lanes[priority.ordinal()];
+		final long count = lane.waitCount.get();
+
+		return count > 0 ? unit.convert(lane.totalWait.get() / count, TimeUnit.NANOSECONDS) : 0;
+
+	}
+
+	/**
+	 * Returns the longest time a call of a given priority waited in its queue.
+	 *
+	 * @param priority a {@link CallPriority}. It cannot be <code>null</code>.
+	 * @param unit a {@link TimeUnit}. It cannot be <code>null</code>.
+	 * @return a <code>long</code>.
+	 */
+	public long getMaximumWaitTime(CallPriority priority, TimeUnit unit) {
+		return unit.convert(lanes[priority.ordinal()].maximumWait.get(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns a percentile of the times the most recent calls of a given priority waited in their
+	 * queue.
+	 *
+	 * @param priority a {@link CallPriority}. It cannot be <code>null</code>.
+	 * @param percentile a <code>double</code> between 0 and 1.
+	 * @param unit a {@link TimeUnit}. It cannot be <code>null</code>.
+	 * @return a <code>long</code>, or <code>-1</code> if no call was taken from the queue yet.
+	 */
+	public long getWaitTimePercentile(CallPriority priority, double percentile, TimeUnit unit) {
+
+		final long nanos = lanes[priority.ordinal()].waits.percentile(percentile);
+
+		return nanos >= 0 ? unit.convert(nanos, TimeUnit.NANOSECONDS) : -1;
+
+	}
+
+	private void work() {
+
+		Task<?> task;
+
+		while ((task = take()) != null) {
+
+			final CallPriority previous = PriorityContext.setPriority(task.priority);
+
+			try {
+				task.run();
+			}
+			finally {
+				PriorityContext.setPriority(previous);
+			}
+
+		}
+
+	}
+
+	/**
+	 * Takes the next call according to the policy, waiting for one if all queues are empty.
+	 *
+	 * @return a {@link Task} or <code>null</code> if this scheduler was shut down and all queues
+	 * are empty.
+	 */
+	private Task<?> take() {
+
+		lock.lock();
+
+		try {
+
+			while (isEmpty()) {
+
+				if (shutdown) {
+					return null;
+				}
+
+				notEmpty.awaitUninterruptibly();
+
+			}
+
+			final Task<?> task;
+
+			if (policy == Policy.STRICT) {
+
+				int i = 0;
+
+				while (lanes[i].queue.isEmpty()) {
+					i++;
+				}
+
+				task = lanes[i].queue.poll();
+
+			}
+			else {
+
+				while (credits == 0 || lanes[currentLane].queue.isEmpty()) {
+					currentLane = (currentLane + 1) % lanes.length;
+					credits = lanes[currentLane].weight;
+				}
+
+				credits--;
+				task = lanes[currentLane].queue.poll();
+
+			}
+
+			lanes[task.priority.ordinal()].recordWait(System.nanoTime() - task.enqueuedAt);
+
+			return task;
+
+		}
+		finally {
+			lock.unlock();
+		}
+
+	}
+
+	private boolean isEmpty() {
+
+		for (Lane lane : lanes) {
+
+			if (!lane.queue.isEmpty()) {
+				return false;
+			}
+
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Queue and wait time statistics of a priority.
+	 */
+	private static final class Lane {
+
+		final Queue<Task<?>> queue = new LinkedList<Task<?>>();
+
+		final LatencyWindow waits = new LatencyWindow(WINDOW_SIZE);
+
+		final AtomicLong waitCount = new AtomicLong();
+
+		final AtomicLong totalWait = new AtomicLong();
+
+		final AtomicLong maximumWait = new AtomicLong();
+
+		final AtomicLong rejectedCount = new AtomicLong();
+
+		int weight;
+
+		Lane(int weight) {
+			this.weight = weight;
+		}
+
+		void recordWait(long nanos) {
+
+			waits.record(nanos);
+			waitCount.incrementAndGet();
+			totalWait.addAndGet(nanos);
+
+			long maximum = maximumWait.get();
+
+			while (nanos > maximum && !maximumWait.compareAndSet(maximum, nanos)) {
+				maximum = maximumWait.get();
+			}
+
+		}
+
+	}
+
+	/**
+	 * A scheduled call.
+	 */
+	private static final class Task<V> extends FutureTask<V> {
+
+		final CallPriority priority;
+
+		final long enqueuedAt = System.nanoTime();
+
+		Task(Callable<V> callable, CallPriority priority) {
+			super(callable);
+			this.priority = priority;
+		}
+
+	}
+
+}
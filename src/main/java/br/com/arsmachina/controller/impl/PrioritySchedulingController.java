@@ -0,0 +1,410 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import br.com.arsmachina.controller.ConditionalResult;
+import br.com.arsmachina.controller.Controller;
+import br.com.arsmachina.controller.Page;
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * {@link Controller} decorator that runs the calls that reach the object store in a
+ * {@link PriorityScheduler}, with the priority returned by {@link PriorityContext#getPriority()}
+ * in the calling thread. The calls that do not reach the object store, <code>reattach()</code>,
+ * <code>reattachAll()</code>, <code>evict()</code> and <code>isPersistent()</code>, run directly.
+ * <p>
+ * As scheduled calls run in worker threads, the decorated controller must not rely on state
+ * bound to the calling thread, such as a thread-bound persistence context.
+ * </p>
+ *
+ * @param <T> the entity class related to this controller.
+ * @param <K> the type of the field that represents the entity class' primary key.
+ */
+public class PrioritySchedulingController<T, K extends Serializable> extends
+		DelegatingController<T, K> {
+
+	private final PriorityScheduler scheduler;
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param delegate a {@link Controller}. It cannot be <code>null</code>.
+	 * @param scheduler a {@link PriorityScheduler}. It cannot be <code>null</code>.
+	 */
+	public PrioritySchedulingController(Controller<T, K> delegate, PriorityScheduler scheduler) {
+
+		super(delegate);
+
+		if (scheduler == null) {
+			throw new IllegalArgumentException("Parameter scheduler cannot be null");
+		}
+
+		this.scheduler = scheduler;
+
+	}
+
+	/**
+	 * Returns the scheduler used by this controller.
+	 *
+	 * @return a {@link PriorityScheduler}.
+	 */
+	public PriorityScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * Invokes <code>delegate.countAll()</code> in the scheduler.
+	 * @return a <code>long</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#countAll()
+	 */
+	@Override
+	public long countAll() {
+
+		return schedule(new Callable<Long>() {
+
+			public Long call() {
+				return getDelegate().countAll();
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findAll()</code> in the scheduler.
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findAll()
+	 */
+	@Override
+	public List<T> findAll() {
+
+		return schedule(new Callable<List<T>>() {
+
+			public List<T> call() {
+				return getDelegate().findAll();
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findAll()</code> in the scheduler.
+	 * @param firstResult
+	 * @param maxResults
+	 * @param sortCriteria
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findAll(int, int, br.com.arsmachina.dao.SortCriterion[])
+	 */
+	@Override
+	public List<T> findAll(final int firstResult, final int maxResults,
+			final SortCriterion... sortCriteria) {
+
+		return schedule(new Callable<List<T>>() {
+
+			public List<T> call() {
+				return getDelegate().findAll(firstResult, maxResults, sortCriteria);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findByExample()</code> in the scheduler.
+	 * @param example
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findByExample(java.lang.Object)
+	 */
+	@Override
+	public List<T> findByExample(final T example) {
+
+		return schedule(new Callable<List<T>>() {
+
+			public List<T> call() {
+				return getDelegate().findByExample(example);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findById()</code> in the scheduler.
+	 * @param id
+	 * @return a <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findById(java.io.Serializable)
+	 */
+	@Override
+	public T findById(final K id) {
+
+		return schedule(new Callable<T>() {
+
+			public T call() {
+				return getDelegate().findById(id);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findByIds()</code> in the scheduler.
+	 * @param ids
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findByIds(K[])
+	 */
+	@Override
+	public List<T> findByIds(final K... ids) {
+
+		return schedule(new Callable<List<T>>() {
+
+			public List<T> call() {
+				return getDelegate().findByIds(ids);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.refresh()</code> in the scheduler.
+	 * @param object
+	 * @return a <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#refresh(java.lang.Object)
+	 */
+	@Override
+	public T refresh(final T object) {
+
+		return schedule(new Callable<T>() {
+
+			public T call() {
+				return getDelegate().refresh(object);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.refreshAll()</code> in the scheduler.
+	 * @param objects
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#refreshAll(java.util.Collection)
+	 */
+	@Override
+	public List<T> refreshAll(final Collection<T> objects) {
+
+		return schedule(new Callable<List<T>>() {
+
+			public List<T> call() {
+				return getDelegate().refreshAll(objects);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findPage()</code> in the scheduler.
+	 * @param firstResult
+	 * @param maxResults
+	 * @param sortCriteria
+	 * @return a {@link Page} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findPage(int, int, br.com.arsmachina.dao.SortCriterion[])
+	 */
+	@Override
+	public Page<T> findPage(final int firstResult, final int maxResults,
+			final SortCriterion... sortCriteria) {
+
+		return schedule(new Callable<Page<T>>() {
+
+			public Page<T> call() {
+				return getDelegate().findPage(firstResult, maxResults, sortCriteria);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findPage()</code> in the scheduler.
+	 * @param firstResult
+	 * @param maxResults
+	 * @param countTotal
+	 * @param sortCriteria
+	 * @return a {@link Page} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findPage(int, int, boolean, br.com.arsmachina.dao.SortCriterion[])
+	 */
+	@Override
+	public Page<T> findPage(final int firstResult, final int maxResults,
+			final boolean countTotal, final SortCriterion... sortCriteria) {
+
+		return schedule(new Callable<Page<T>>() {
+
+			public Page<T> call() {
+				return getDelegate().findPage(firstResult, maxResults, countTotal, sortCriteria);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findByIdIfChanged()</code> in the scheduler.
+	 * @param id
+	 * @param version
+	 * @return a {@link ConditionalResult} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findByIdIfChanged(java.io.Serializable, java.io.Serializable)
+	 */
+	@Override
+	public ConditionalResult<T> findByIdIfChanged(final K id, final Serializable version) {
+
+		return schedule(new Callable<ConditionalResult<T>>() {
+
+			public ConditionalResult<T> call() {
+				return getDelegate().findByIdIfChanged(id, version);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findByIdsIfChanged()</code> in the scheduler.
+	 * @param versions
+	 * @return a {@link Map} from primary key value to {@link ConditionalResult}.
+	 * @see br.com.arsmachina.controller.ReadableController#findByIdsIfChanged(java.util.Map)
+	 */
+	@Override
+	public Map<K, ConditionalResult<T>> findByIdsIfChanged(
+			final Map<K, ? extends Serializable> versions) {
+
+		return schedule(new Callable<Map<K, ConditionalResult<T>>>() {
+
+			public Map<K, ConditionalResult<T>> call() {
+				return getDelegate().findByIdsIfChanged(versions);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.delete()</code> in the scheduler.
+	 * @param object
+	 * @see br.com.arsmachina.controller.WriteableController#delete(java.lang.Object)
+	 */
+	@Override
+	public void delete(final T object) {
+
+		schedule(new Callable<Void>() {
+
+			public Void call() {
+				getDelegate().delete(object);
+				return null;
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.delete()</code> in the scheduler.
+	 * @param id
+	 * @see br.com.arsmachina.controller.WriteableController#delete(java.io.Serializable)
+	 */
+	@Override
+	public void delete(final K id) {
+
+		schedule(new Callable<Void>() {
+
+			public Void call() {
+				getDelegate().delete(id);
+				return null;
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.save()</code> in the scheduler.
+	 * @param object
+	 * @see br.com.arsmachina.controller.WriteableController#save(java.lang.Object)
+	 */
+	@Override
+	public void save(final T object) {
+
+		schedule(new Callable<Void>() {
+
+			public Void call() {
+				getDelegate().save(object);
+				return null;
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.update()</code> in the scheduler.
+	 * @param object
+	 * @return a <code>T</code>.
+	 * @see br.com.arsmachina.controller.WriteableController#update(java.lang.Object)
+	 */
+	@Override
+	public T update(final T object) {
+
+		return schedule(new Callable<T>() {
+
+			public T call() {
+				return getDelegate().update(object);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.saveOrUpdate()</code> in the scheduler.
+	 * @param object
+	 * @return a <code>T</code>.
+	 * @see br.com.arsmachina.controller.WriteableController#saveOrUpdate(java.lang.Object)
+	 */
+	@Override
+	public T saveOrUpdate(final T object) {
+
+		return schedule(new Callable<T>() {
+
+			public T call() {
+				return getDelegate().saveOrUpdate(object);
+			}
+
+		});
+
+	}
+
+	private <V> V schedule(Callable<V> callable) {
+		return scheduler.execute(PriorityContext.getPriority(), callable);
+	}
+
+}
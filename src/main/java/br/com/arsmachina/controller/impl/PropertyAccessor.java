@@ -0,0 +1,64 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+/**
+ * Interface that defines how the value of a given property is read from and written to an object.
+ * Instances are resolved once per class by {@link PropertyAccessors} and then reused in every
+ * call, so implementations must be thread-safe.
+ *
+ * @param <T> the class that owns the property.
+ */
+public interface PropertyAccessor<T> {
+
+	/**
+	 * Returns the name of the property.
+	 *
+	 * @return a {@link String}.
+	 */
+	String getName();
+
+	/**
+	 * Returns the type of the property.
+	 *
+	 * @return a {@link Class}.
+	 */
+	Class<?> getType();
+
+	/**
+	 * Returns the value of this property in a given object.
+	 *
+	 * @param object a <code>T</code>. It cannot be <code>null</code>.
+	 * @return an {@link Object}.
+	 */
+	Object get(T object);
+
+	/**
+	 * Tells whether this property can be written or not.
+	 *
+	 * @return a <code>boolean</code>.
+	 */
+	boolean isWriteable();
+
+	/**
+	 * Sets the value of this property in a given object.
+	 *
+	 * @param object a <code>T</code>. It cannot be <code>null</code>.
+	 * @param value an {@link Object}.
+	 * @throws UnsupportedOperationException if this property is read-only.
+	 */
+	void set(T object, Object value);
+
+}
@@ -0,0 +1,261 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class that resolves and caches the {@link PropertyAccessor}s of a given class. Introspection
+ * is done only once per class. Hand-written accessors can be registered through
+ * {@link #register(Class, PropertyAccessor...)} for classes in which even the cached
+ * {@link Method} invocation is too expensive.
+ */
+public final class PropertyAccessors {
+
+	private static final Set<Class<?>> VALUE_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>> asList(
+			String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class,
+			Long.class, Float.class, Double.class, BigDecimal.class, BigInteger.class, Class.class));
+
+	private static final Map<Class<?>, Map<String, PropertyAccessor<?>>> CACHE =
+		new ConcurrentHashMap<Class<?>, Map<String, PropertyAccessor<?>>>();
+
+	private PropertyAccessors() {
+	}
+
+	/**
+	 * Returns the accessors of all readable properties of a given class, keyed by property name.
+	 *
+	 * @param <T> the class.
+	 * @param clasz a {@link Class}. It cannot be <code>null</code>.
+	 * @return an unmodifiable {@link Map}.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Map<String, PropertyAccessor<T>> get(Class<T> clasz) {
+
+		if (clasz == null) {
+			throw new IllegalArgumentException("Parameter clasz cannot be null");
+		}
+
+		Map<String, PropertyAccessor<?>> accessors = CACHE.get(clasz);
+
+		if (accessors == null) {
+			accessors = introspect(clasz);
+			CACHE.put(clasz, accessors);
+		}
+
+		return (Map) accessors;
+
+	}
+
+	/**
+	 * Returns the accessor of a given property.
+	 *
+	 * @param <T> the class.
+	 * @param clasz a {@link Class}. It cannot be <code>null</code>.
+	 * @param property a {@link String} with the property name.
+	 * @return a {@link PropertyAccessor}.
+	 * @throws IllegalArgumentException if the class has no readable property with that name.
+	 */
+	public static <T> PropertyAccessor<T> get(Class<T> clasz, String property) {
+
+		final PropertyAccessor<T> accessor = get(clasz).get(property);
+
+		if (accessor == null) {
+			throw new IllegalArgumentException("Class " + clasz.getName()
+					+ " has no readable property named " + property);
+		}
+
+		return accessor;
+
+	}
+
+	/**
+	 * Registers the accessors of a given class, replacing the ones found by introspection.
+	 *
+	 * @param <T> the class.
+	 * @param clasz a {@link Class}. It cannot be <code>null</code>.
+	 * @param accessors a {@link PropertyAccessor} array.
+	 */
+	public static <T> void register(Class<T> clasz, PropertyAccessor<T>... accessors) {
+
+		if (clasz == null) {
+			throw new IllegalArgumentException("Parameter clasz cannot be null");
+		}
+
+		final Map<String, PropertyAccessor<?>> map =
+			new LinkedHashMap<String, PropertyAccessor<?>>();
+
+		for (PropertyAccessor<T> accessor : accessors) {
+			map.put(accessor.getName(), accessor);
+		}
+
+		CACHE.put(clasz, Collections.unmodifiableMap(map));
+
+	}
+
+	/**
+	 * Tells whether a given type holds plain values that can be compared through
+	 * <code>equals()</code>: primitives, their wrappers, {@link String}, {@link BigDecimal},
+	 * {@link BigInteger}, enums, {@link Class} and {@link Date}. All of them are immutable except
+	 * {@link Date}, which must be copied before being kept.
+	 *
+	 * @param type a {@link Class}.
+	 * @return a <code>boolean</code>.
+	 */
+	static boolean isValueType(Class<?> type) {
+		return type != null
+				&& (type.isPrimitive() || VALUE_TYPES.contains(type) || Enum.class.isAssignableFrom(type)
+						|| Date.class.isAssignableFrom(type));
+	}
+
+	/**
+	 * Tells whether a given type is a {@link Collection}, a {@link Map} or an array of objects.
+	 * Properties of these types usually map associations, which may be lazily loaded, so they are
+	 * not read when objects are compared or copied property by property.
+	 *
+	 * @param type a {@link Class}.
+	 * @return a <code>boolean</code>.
+	 */
+	static boolean isMultiValued(Class<?> type) {
+		return type != null
+				&& (Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type) || (type
+						.isArray() && !type.getComponentType().isPrimitive()));
+	}
+
+	private static Map<String, PropertyAccessor<?>> introspect(Class<?> clasz) {
+
+		final BeanInfo beanInfo;
+
+		try {
+			beanInfo = Introspector.getBeanInfo(clasz, Object.class);
+		}
+		catch (IntrospectionException e) {
+			throw new IllegalArgumentException("Cannot introspect class " + clasz.getName(), e);
+		}
+
+		final Map<String, PropertyAccessor<?>> map =
+			new LinkedHashMap<String, PropertyAccessor<?>>();
+
+		for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+
+			final Method getter = descriptor.getReadMethod();
+
+			if (getter != null) {
+				map.put(descriptor.getName(), new MethodPropertyAccessor<Object>(descriptor));
+			}
+
+		}
+
+		return Collections.unmodifiableMap(map);
+
+	}
+
+	/**
+	 * {@link PropertyAccessor} implementation that invokes the property getter and setter. The
+	 * {@link Method}s are looked up once and made accessible, so the JVM can replace the
+	 * reflective invocation by a generated accessor after a few calls.
+	 */
+	private static final class MethodPropertyAccessor<T> implements PropertyAccessor<T> {
+
+		private final String name;
+
+		private final Class<?> type;
+
+		private final Method getter;
+
+		private final Method setter;
+
+		public MethodPropertyAccessor(PropertyDescriptor descriptor) {
+
+			name = descriptor.getName();
+			type = descriptor.getPropertyType();
+			getter = descriptor.getReadMethod();
+			setter = descriptor.getWriteMethod();
+
+			getter.setAccessible(true);
+
+			if (setter != null) {
+				setter.setAccessible(true);
+			}
+
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Class<?> getType() {
+			return type;
+		}
+
+		public Object get(T object) {
+			return invoke(getter, object);
+		}
+
+		public boolean isWriteable() {
+			return setter != null;
+		}
+
+		public void set(T object, Object value) {
+
+			if (setter == null) {
+				throw new UnsupportedOperationException("Property " + name + " is read-only");
+			}
+
+			invoke(setter, object, value);
+
+		}
+
+		private Object invoke(Method method, T object, Object... parameters) {
+
+			try {
+				return method.invoke(object, parameters);
+			}
+			catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+			catch (InvocationTargetException e) {
+
+				final Throwable cause = e.getCause();
+
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+
+				throw new IllegalStateException(cause);
+
+			}
+
+		}
+
+	}
+
+}
@@ -15,8 +15,15 @@
 package br.com.arsmachina.controller.impl;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
+import br.com.arsmachina.controller.ConditionalResult;
+import br.com.arsmachina.controller.Page;
 import br.com.arsmachina.controller.ReadableController;
 import br.com.arsmachina.dao.ReadableDAO;
 import br.com.arsmachina.dao.SortCriterion;
@@ -33,6 +40,18 @@ public abstract class ReadableControllerImpl<T, K extends Serializable> implemen
 
 	private ReadableDAO<T, K> dao;
 
+	private volatile ChangeTracker<T> changeTracker;
+
+	private volatile VersionTracker<T, K> versionTracker;
+
+	private volatile IdentifierResolver<T, K> identifierResolver;
+
+	private volatile int refreshChunkSize = BulkRefresher.DEFAULT_CHUNK_SIZE;
+
+	private volatile ExecutorService countExecutor;
+
+	private volatile int lazyChunkSize;
+
 	/**
 	 * Single constructor of this class.
 	 * 
@@ -48,6 +67,139 @@ public abstract class ReadableControllerImpl<T, K extends Serializable> implemen
 
 	}
 
+	/**
+	 * Returns the {@link ChangeTracker} that receives the objects returned by this controller.
+	 * 
+	 * @return a {@link ChangeTracker} or <code>null</code> if change tracking is disabled.
+	 */
+	public ChangeTracker<T> getChangeTracker() {
+		return changeTracker;
+	}
+
+	/**
+	 * Sets the {@link ChangeTracker} that receives the objects returned by this controller. It is
+	 * usually shared with a {@link WriteableControllerImpl}, which skips the updates of unchanged
+	 * objects.
+	 * 
+	 * @param changeTracker a {@link ChangeTracker} or <code>null</code> to disable change tracking.
+	 */
+	public void setChangeTracker(ChangeTracker<T> changeTracker) {
+		this.changeTracker = changeTracker;
+	}
+
+	/**
+	 * Returns the {@link VersionTracker} used by the conditional read methods.
+	 * 
+	 * @return a {@link VersionTracker} or <code>null</code>.
+	 */
+	public VersionTracker<T, K> getVersionTracker() {
+		return versionTracker;
+	}
+
+	/**
+	 * Sets the {@link VersionTracker} used by the conditional read methods. The versions of the
+	 * objects returned by this controller are recorded in it. It is usually shared with a
+	 * {@link WriteableControllerImpl}, which forgets the versions of the objects it writes.
+	 * 
+	 * @param versionTracker a {@link VersionTracker} or <code>null</code>.
+	 */
+	public void setVersionTracker(VersionTracker<T, K> versionTracker) {
+		this.versionTracker = versionTracker;
+	}
+
+	/**
+	 * Returns the {@link IdentifierResolver} used to match objects loaded in bulk.
+	 * 
+	 * @return an {@link IdentifierResolver} or <code>null</code>.
+	 */
+	public IdentifierResolver<T, K> getIdentifierResolver() {
+		return identifierResolver;
+	}
+
+	/**
+	 * Sets the {@link IdentifierResolver} used to match objects loaded in bulk. Without it,
+	 * {@link #refreshAll(Collection)} refreshes objects one by one.
+	 * 
+	 * @param identifierResolver an {@link IdentifierResolver} or <code>null</code>.
+	 */
+	public void setIdentifierResolver(IdentifierResolver<T, K> identifierResolver) {
+		this.identifierResolver = identifierResolver;
+	}
+
+	/**
+	 * Sets the maximum number of identifiers passed to a single <code>dao.findByIds()</code> call
+	 * by {@link #refreshAll(Collection)}. The default value is 500.
+	 * 
+	 * @param refreshChunkSize an <code>int</code>. It must be positive.
+	 */
+	public void setRefreshChunkSize(int refreshChunkSize) {
+
+		if (refreshChunkSize <= 0) {
+			throw new IllegalArgumentException("Parameter refreshChunkSize must be positive");
+		}
+
+		this.refreshChunkSize = refreshChunkSize;
+
+	}
+
+	/**
+	 * Returns the {@link ExecutorService} used by the <code>findPage()</code> methods to count
+	 * objects concurrently with the loading of the page.
+	 * 
+	 * @return an {@link ExecutorService} or <code>null</code>.
+	 */
+	public ExecutorService getCountExecutor() {
+		return countExecutor;
+	}
+
+	/**
+	 * Sets the {@link ExecutorService} used by the <code>findPage()</code> methods to count
+	 * objects concurrently with the loading of the page. The DAO must support being invoked from
+	 * its threads. Without it, objects are counted after the page is loaded.
+	 * 
+	 * @param countExecutor an {@link ExecutorService} or <code>null</code>.
+	 */
+	public void setCountExecutor(ExecutorService countExecutor) {
+		this.countExecutor = countExecutor;
+	}
+
+	/**
+	 * Returns the number of objects loaded at once by the lists returned in lazy mode.
+	 * 
+	 * @return an <code>int</code>, 0 if lazy mode is disabled.
+	 */
+	public int getLazyChunkSize() {
+		return lazyChunkSize;
+	}
+
+	/**
+	 * Enables or disables lazy mode. In lazy mode, if an {@link IdentifierResolver} is set,
+	 * {@link #findByIds(Serializable...)} calls with more than <code>lazyChunkSize</code>
+	 * primary key values return a {@link LazyEntityList} and, if the DAO also implements
+	 * {@link IdLookupSupport}, so do the <code>findAll()</code> methods. Objects loaded by these
+	 * lists are not tracked. Lazy mode is disabled by default.
+	 * <p>
+	 * In lazy mode, the objects returned by {@link #findByIds(Serializable...)} are always in the
+	 * order of the primary key values, with <code>null</code> in the place of the ones not found,
+	 * however many values are passed. The lists keep a reference to the DAO and load their
+	 * objects when they are accessed, after the method returned, so they must be accessed while
+	 * the DAO is still usable, for example, before the session or transaction in which they were
+	 * obtained is closed.
+	 * </p>
+	 * 
+	 * @param lazyChunkSize an <code>int</code> with the number of objects loaded at once or 0 to
+	 * disable lazy mode. It cannot be negative.
+	 */
+	public void setLazyChunkSize(int lazyChunkSize) {
+
+		if (lazyChunkSize < 0) {
+			throw new IllegalArgumentException("Parameter lazyChunkSize cannot be negative");
+		}
+
+		this.lazyChunkSize = lazyChunkSize;
+
+	}
+
 	/**
 	 * Invokes <code>dao.countAll()<code>.
 	 * @return
@@ -62,8 +214,21 @@ public abstract class ReadableControllerImpl<T, K extends Serializable> implemen
 	 * @return
 	 * @see br.com.arsmachina.dao.ReadableDAO#findAll()
 	 */
+	@SuppressWarnings("unchecked")
 	public List<T> findAll() {
-		return dao.findAll();
+
+		final IdentifierResolver<T, K> resolver = identifierResolver;
+		final int lazyChunkSize = this.lazyChunkSize;
+
+		if (lazyChunkSize > 0 && resolver != null && dao instanceof IdLookupSupport) {
+			return new LazyEntityList<T, K>(dao, resolver, ((IdLookupSupport<K>) dao).findAllIds(),
+					lazyChunkSize);
+		}
+
+		final long generation = getGeneration();
+
+		return track(dao.findAll(), generation);
+
 	}
 
 	/**
@@ -74,8 +239,21 @@ public abstract class ReadableControllerImpl<T, K extends Serializable> implemen
 	 * @return
 	 * @see br.com.arsmachina.dao.ReadableDAO#findAll(int, int, br.com.arsmachina.dao.SortConstraint[])
 	 */
+	@SuppressWarnings("unchecked")
 	public List<T> findAll(int firstResult, int maxResults, SortCriterion... sortCriteria) {
-		return dao.findAll(firstResult, maxResults, sortCriteria);
+
+		final IdentifierResolver<T, K> resolver = identifierResolver;
+		final int lazyChunkSize = this.lazyChunkSize;
+
+		if (lazyChunkSize > 0 && resolver != null && dao instanceof IdLookupSupport) {
+			return new LazyEntityList<T, K>(dao, resolver, ((IdLookupSupport<K>) dao).findAllIds(
+					firstResult, maxResults, sortCriteria), lazyChunkSize);
+		}
+
+		final long generation = getGeneration();
+
+		return track(dao.findAll(firstResult, maxResults, sortCriteria), generation);
+
 	}
 
 	/**
@@ -85,7 +263,77 @@ public abstract class ReadableControllerImpl<T, K extends Serializable> implemen
 	 * @see br.com.arsmachina.dao.ReadableDAO#findById(K[])
 	 */
 	public List<T> findByIds(K... ids) {
-		return dao.findByIds(ids);
+
+		final IdentifierResolver<T, K> resolver = identifierResolver;
+		final int lazyChunkSize = this.lazyChunkSize;
+
+		if (ids != null && lazyChunkSize > 0 && resolver != null) {
+
+			final long generation = getGeneration();
+			final List<T> list = new LazyEntityList<T, K>(dao, resolver, Arrays.asList(ids),
+					lazyChunkSize);
+
+			// small lists are loaded right away, keeping the same order and missing objects
+			return ids.length > lazyChunkSize ? list : track(new ArrayList<T>(list), generation);
+
+		}
+
+		final long generation = getGeneration();
+
+		return track(dao.findByIds(ids), generation);
+
+	}
+
+	/**
+	 * Returns the object with a given primary key value unless its current version, obtained
+	 * through the DAO, if it implements {@link VersionLookupSupport}, or from the
+	 * {@link VersionTracker} otherwise, is equal to <code>version</code>.
+	 * @param id
+	 * @param version
+	 * @return a {@link ConditionalResult} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findByIdIfChanged(java.io.Serializable, java.io.Serializable)
+	 */
+	public ConditionalResult<T> findByIdIfChanged(K id, Serializable version) {
+
+		final long generation = getGeneration();
+		final ConditionalResult<T> result = ConditionalFinder.findByIdIfChanged(dao,
+				versionTracker, id, version);
+
+		if (result.isModified()) {
+			track(result.getObject(), generation);
+		}
+
+		return result;
+
+	}
+
+	/**
+	 * Bulk version of {@link #findByIdIfChanged(Serializable, Serializable)}. Modified objects are
+	 * loaded through a single <code>dao.findByIds()</code> call if an {@link IdentifierResolver}
+	 * is available, from the {@link VersionTracker} or set in this controller.
+	 * @param versions
+	 * @return a {@link Map} from primary key value to {@link ConditionalResult}.
+	 * @see br.com.arsmachina.controller.ReadableController#findByIdsIfChanged(java.util.Map)
+	 */
+	public Map<K, ConditionalResult<T>> findByIdsIfChanged(Map<K, ? extends Serializable> versions) {
+
+		final VersionTracker<T, K> versionTracker = this.versionTracker;
+		final IdentifierResolver<T, K> resolver = versionTracker != null
+				? versionTracker.getIdentifierResolver() : identifierResolver;
+		final long generation = getGeneration();
+		final Map<K, ConditionalResult<T>> results = ConditionalFinder.findByIdsIfChanged(dao,
+				versionTracker, resolver, versions);
+
+		for (ConditionalResult<T> result : results.values()) {
+
+			if (result.isModified()) {
+				track(result.getObject(), generation);
+			}
+
+		}
+
+		return results;
+
 	}
 
 	/**
@@ -95,7 +343,11 @@ public abstract class ReadableControllerImpl<T, K extends Serializable> implemen
 	 * @see br.com.arsmachina.dao.ReadableDAO#findByExample(java.lang.Object)
 	 */
 	public List<T> findByExample(T example) {
-		return dao.findByExample(example);
+
+		final long generation = getGeneration();
+
+		return track(dao.findByExample(example), generation);
+
 	}
 
 	/**
@@ -105,7 +357,11 @@ public abstract class ReadableControllerImpl<T, K extends Serializable> implemen
 	 * @see br.com.arsmachina.dao.ReadableDAO#findById(java.io.Serializable)
 	 */
 	public T findById(K id) {
-		return dao.findById(id);
+
+		final long generation = getGeneration();
+
+		return track(dao.findById(id), generation);
+
 	}
 
 	/**
@@ -114,7 +370,11 @@ public abstract class ReadableControllerImpl<T, K extends Serializable> implemen
 	 * @see br.com.arsmachina.dao.ReadableDAO#refresh(java.lang.Object)
 	 */
 	public T refresh(T object) {
-		return dao.refresh(object);
+
+		final long generation = getGeneration();
+
+		return track(dao.refresh(object), generation);
+
 	}
 
 	/**
@@ -127,4 +387,113 @@ public abstract class ReadableControllerImpl<T, K extends Serializable> implemen
 		return dao.reattach(object);
 	}
 
+	/**
+	 * Refreshes some objects through <code>dao.findByIds()</code> calls, copying the loaded state
+	 * to them, if an {@link IdentifierResolver} is set, or through <code>dao.refresh()</code>
+	 * otherwise. DAOs implementing {@link BulkRefreshSupport} refresh the objects themselves, and
+	 * objects managed by DAOs implementing {@link PersistenceContextSupport} are refreshed directly.
+	 * @param objects
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#refreshAll(java.util.Collection)
+	 */
+	public List<T> refreshAll(Collection<T> objects) {
+
+		final long generation = getGeneration();
+
+		return track(BulkRefresher.refreshAll(dao, identifierResolver, objects, refreshChunkSize),
+				generation);
+
+	}
+
+	/**
+	 * Invokes <code>dao.reattach()</code> for each object.
+	 * @param objects
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#reattachAll(java.util.Collection)
+	 */
+	public List<T> reattachAll(Collection<T> objects) {
+		return BulkRefresher.reattachAll(dao, objects);
+	}
+
+	/**
+	 * Invokes <code>dao.findAll()</code> and <code>dao.countAll()</code>, concurrently if a count
+	 * executor is set. DAOs implementing {@link PageQuerySupport} return the page themselves.
+	 * @param firstResult
+	 * @param maxResults
+	 * @param sortCriteria
+	 * @return a {@link Page} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findPage(int, int, br.com.arsmachina.dao.SortCriterion[])
+	 */
+	public Page<T> findPage(int firstResult, int maxResults, SortCriterion... sortCriteria) {
+		return findPage(firstResult, maxResults, true, sortCriteria);
+	}
+
+	/**
+	 * Invokes <code>dao.findAll()</code> and, if <code>countTotal</code> is <code>true</code>,
+	 * <code>dao.countAll()</code>. Otherwise, <code>maxResults + 1</code> objects are loaded to
+	 * tell whether there is a next page.
+	 * @param firstResult
+	 * @param maxResults
+	 * @param countTotal
+	 * @param sortCriteria
+	 * @return a {@link Page} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findPage(int, int, boolean, br.com.arsmachina.dao.SortCriterion[])
+	 */
+	public Page<T> findPage(int firstResult, int maxResults, boolean countTotal,
+			SortCriterion... sortCriteria) {
+
+		final long generation = getGeneration();
+		final Page<T> page = PageFinder.findPage(dao, countExecutor, firstResult, maxResults,
+				countTotal, sortCriteria);
+		track(page.getRows(), generation);
+
+		return page;
+
+	}
+
+	/**
+	 * Returns the generation of the {@link VersionTracker}, to be taken before loading objects.
+	 */
+	private long getGeneration() {
+
+		final VersionTracker<T, K> versionTracker = this.versionTracker;
+
+		return versionTracker != null ? versionTracker.getGeneration() : 0;
+
+	}
+
+	private T track(T object, long generation) {
+
+		final ChangeTracker<T> changeTracker = this.changeTracker;
+		final VersionTracker<T, K> versionTracker = this.versionTracker;
+
+		if (changeTracker != null) {
+			changeTracker.track(object);
+		}
+
+		if (versionTracker != null) {
+			versionTracker.record(object, generation);
+		}
+
+		return object;
+
+	}
+
+	private List<T> track(List<T> objects, long generation) {
+
+		final ChangeTracker<T> changeTracker = this.changeTracker;
+		final VersionTracker<T, K> versionTracker = this.versionTracker;
+
+		if (changeTracker != null) {
+			changeTracker.trackAll(objects);
+		}
+
+		if (versionTracker != null) {
+			versionTracker.recordAll(objects, generation);
+		}
+
+		return objects;
+
+	}
+
 }
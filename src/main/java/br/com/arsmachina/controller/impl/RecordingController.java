@@ -0,0 +1,490 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import br.com.arsmachina.controller.ConditionalResult;
+import br.com.arsmachina.controller.Controller;
+import br.com.arsmachina.controller.Page;
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * {@link Controller} decorator that records the calls that reach the object store, with their
+ * primary key values, page bounds, sort criteria and durations, through a {@link TraceWriter}.
+ * The recorded traces can be replayed by {@link WorkloadReplayer}. The calls that do not reach
+ * the object store, <code>reattach()</code>, <code>reattachAll()</code>, <code>evict()</code> and
+ * <code>isPersistent()</code>, are not recorded.
+ * <p>
+ * For calls that receive objects, such as <code>update()</code>, the primary key values are
+ * only recorded if an {@link IdentifierResolver} is set. Examples passed to
+ * <code>findByExample()</code> and object state are never recorded.
+ * </p>
+ *
+ * @param <T> the entity class related to this controller.
+ * @param <K> the type of the field that represents the entity class' primary key.
+ */
+public class RecordingController<T, K extends Serializable> extends DelegatingController<T, K> {
+
+	private final Class<T> entityClass;
+
+	private final TraceWriter writer;
+
+	private volatile IdentifierResolver<T, K> identifierResolver;
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param delegate a {@link Controller}. It cannot be <code>null</code>.
+	 * @param entityClass a {@link Class} with the entity class. It cannot be <code>null</code>.
+	 * @param writer a {@link TraceWriter}. It cannot be <code>null</code>.
+	 */
+	public RecordingController(Controller<T, K> delegate, Class<T> entityClass, TraceWriter writer) {
+
+		super(delegate);
+
+		if (entityClass == null) {
+			throw new IllegalArgumentException("Parameter entityClass cannot be null");
+		}
+
+		if (writer == null) {
+			throw new IllegalArgumentException("Parameter writer cannot be null");
+		}
+
+		this.entityClass = entityClass;
+		this.writer = writer;
+
+	}
+
+	/**
+	 * Sets the {@link IdentifierResolver} used to record the primary key values of the objects
+	 * passed to this controller.
+	 *
+	 * @param identifierResolver an {@link IdentifierResolver} or <code>null</code>.
+	 */
+	public void setIdentifierResolver(IdentifierResolver<T, K> identifierResolver) {
+		this.identifierResolver = identifierResolver;
+	}
+
+	/**
+	 * Invokes <code>delegate.countAll()</code> and records the call.
+	 * @return a <code>long</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#countAll()
+	 */
+	@Override
+	public long countAll() {
+
+		return record(TraceMethod.COUNT_ALL, null, new Callable<Long>() {
+
+			public Long call() {
+				return getDelegate().countAll();
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findAll()</code> and records the call.
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findAll()
+	 */
+	@Override
+	public List<T> findAll() {
+
+		return record(TraceMethod.FIND_ALL, null, new Callable<List<T>>() {
+
+			public List<T> call() {
+				return getDelegate().findAll();
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findAll()</code> and records the call.
+	 * @param firstResult
+	 * @param maxResults
+	 * @param sortCriteria
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findAll(int, int, br.com.arsmachina.dao.SortCriterion[])
+	 */
+	@Override
+	public List<T> findAll(final int firstResult, final int maxResults,
+			final SortCriterion... sortCriteria) {
+
+		return record(TraceMethod.FIND_ALL_PAGED, null, firstResult, maxResults, sortCriteria,
+				new Callable<List<T>>() {
+
+			public List<T> call() {
+				return getDelegate().findAll(firstResult, maxResults, sortCriteria);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findByExample()</code> and records the call.
+	 * @param example
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findByExample(java.lang.Object)
+	 */
+	@Override
+	public List<T> findByExample(final T example) {
+
+		return record(TraceMethod.FIND_BY_EXAMPLE, null, new Callable<List<T>>() {
+
+			public List<T> call() {
+				return getDelegate().findByExample(example);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findById()</code> and records the call.
+	 * @param id
+	 * @return a <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findById(java.io.Serializable)
+	 */
+	@Override
+	public T findById(final K id) {
+
+		return record(TraceMethod.FIND_BY_ID, Collections.singletonList(id), new Callable<T>() {
+
+			public T call() {
+				return getDelegate().findById(id);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findByIds()</code> and records the call.
+	 * @param ids
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findByIds(K[])
+	 */
+	@Override
+	public List<T> findByIds(final K... ids) {
+
+		final List<K> recorded = ids != null ? Arrays.asList(ids) : null;
+
+		return record(TraceMethod.FIND_BY_IDS, recorded, new Callable<List<T>>() {
+
+			public List<T> call() {
+				return getDelegate().findByIds(ids);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.refresh()</code> and records the call.
+	 * @param object
+	 * @return a <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#refresh(java.lang.Object)
+	 */
+	@Override
+	public T refresh(final T object) {
+
+		return record(TraceMethod.REFRESH, idsOf(object), new Callable<T>() {
+
+			public T call() {
+				return getDelegate().refresh(object);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.refreshAll()</code> and records the call.
+	 * @param objects
+	 * @return a {@link List} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#refreshAll(java.util.Collection)
+	 */
+	@Override
+	public List<T> refreshAll(final Collection<T> objects) {
+
+		return record(TraceMethod.REFRESH_ALL, idsOf(objects), new Callable<List<T>>() {
+
+			public List<T> call() {
+				return getDelegate().refreshAll(objects);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findPage()</code> and records the call.
+	 * @param firstResult
+	 * @param maxResults
+	 * @param sortCriteria
+	 * @return a {@link Page} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findPage(int, int, br.com.arsmachina.dao.SortCriterion[])
+	 */
+	@Override
+	public Page<T> findPage(final int firstResult, final int maxResults,
+			final SortCriterion... sortCriteria) {
+
+		return record(TraceMethod.FIND_PAGE, null, firstResult, maxResults, sortCriteria,
+				new Callable<Page<T>>() {
+
+			public Page<T> call() {
+				return getDelegate().findPage(firstResult, maxResults, sortCriteria);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findPage()</code> and records the call.
+	 * @param firstResult
+	 * @param maxResults
+	 * @param countTotal
+	 * @param sortCriteria
+	 * @return a {@link Page} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findPage(int, int, boolean, br.com.arsmachina.dao.SortCriterion[])
+	 */
+	@Override
+	public Page<T> findPage(final int firstResult, final int maxResults, final boolean countTotal,
+			final SortCriterion... sortCriteria) {
+
+		final TraceMethod method = countTotal ? TraceMethod.FIND_PAGE
+				: TraceMethod.FIND_PAGE_WITHOUT_COUNT;
+
+		return record(method, null, firstResult, maxResults, sortCriteria, new Callable<Page<T>>() {
+
+			public Page<T> call() {
+				return getDelegate().findPage(firstResult, maxResults, countTotal, sortCriteria);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findByIdIfChanged()</code> and records the call.
+	 * @param id
+	 * @param version
+	 * @return a {@link ConditionalResult} of <code>T</code>.
+	 * @see br.com.arsmachina.controller.ReadableController#findByIdIfChanged(java.io.Serializable, java.io.Serializable)
+	 */
+	@Override
+	public ConditionalResult<T> findByIdIfChanged(final K id, final Serializable version) {
+
+		return record(TraceMethod.FIND_BY_ID_IF_CHANGED, Collections.singletonList(id),
+				new Callable<ConditionalResult<T>>() {
+
+			public ConditionalResult<T> call() {
+				return getDelegate().findByIdIfChanged(id, version);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.findByIdsIfChanged()</code> and records the call.
+	 * @param versions
+	 * @return a {@link Map} from primary key value to {@link ConditionalResult}.
+	 * @see br.com.arsmachina.controller.ReadableController#findByIdsIfChanged(java.util.Map)
+	 */
+	@Override
+	public Map<K, ConditionalResult<T>> findByIdsIfChanged(
+			final Map<K, ? extends Serializable> versions) {
+
+		return record(TraceMethod.FIND_BY_IDS_IF_CHANGED, versions != null ? versions.keySet() : null,
+				new Callable<Map<K, ConditionalResult<T>>>() {
+
+			public Map<K, ConditionalResult<T>> call() {
+				return getDelegate().findByIdsIfChanged(versions);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.delete()</code> and records the call.
+	 * @param object
+	 * @see br.com.arsmachina.controller.WriteableController#delete(java.lang.Object)
+	 */
+	@Override
+	public void delete(final T object) {
+
+		record(TraceMethod.DELETE, idsOf(object), new Callable<Void>() {
+
+			public Void call() {
+				getDelegate().delete(object);
+				return null;
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.delete()</code> and records the call.
+	 * @param id
+	 * @see br.com.arsmachina.controller.WriteableController#delete(java.io.Serializable)
+	 */
+	@Override
+	public void delete(final K id) {
+
+		record(TraceMethod.DELETE_BY_ID, Collections.singletonList(id), new Callable<Void>() {
+
+			public Void call() {
+				getDelegate().delete(id);
+				return null;
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.save()</code> and records the call.
+	 * @param object
+	 * @see br.com.arsmachina.controller.WriteableController#save(java.lang.Object)
+	 */
+	@Override
+	public void save(final T object) {
+
+		record(TraceMethod.SAVE, idsOf(object), new Callable<Void>() {
+
+			public Void call() {
+				getDelegate().save(object);
+				return null;
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.update()</code> and records the call.
+	 * @param object
+	 * @return a <code>T</code>.
+	 * @see br.com.arsmachina.controller.WriteableController#update(java.lang.Object)
+	 */
+	@Override
+	public T update(final T object) {
+
+		return record(TraceMethod.UPDATE, idsOf(object), new Callable<T>() {
+
+			public T call() {
+				return getDelegate().update(object);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Invokes <code>delegate.saveOrUpdate()</code> and records the call.
+	 * @param object
+	 * @return a <code>T</code>.
+	 * @see br.com.arsmachina.controller.WriteableController#saveOrUpdate(java.lang.Object)
+	 */
+	@Override
+	public T saveOrUpdate(final T object) {
+
+		return record(TraceMethod.SAVE_OR_UPDATE, idsOf(object), new Callable<T>() {
+
+			public T call() {
+				return getDelegate().saveOrUpdate(object);
+			}
+
+		});
+
+	}
+
+	private <V> V record(TraceMethod method, Collection<? extends Serializable> ids,
+			Callable<V> callable) {
+		return record(method, ids, 0, 0, null, callable);
+	}
+
+	private <V> V record(TraceMethod method, Collection<? extends Serializable> ids,
+			int firstResult, int maxResults, SortCriterion[] sortCriteria, Callable<V> callable) {
+
+		final long start = System.nanoTime();
+		boolean failed = true;
+
+		try {
+
+			final V result = Callables.call(callable);
+			failed = false;
+
+			return result;
+
+		}
+		finally {
+			writer.write(method, entityClass, start, System.nanoTime() - start, failed, ids,
+					firstResult, maxResults, sortCriteria);
+		}
+
+	}
+
+	private List<K> idsOf(T object) {
+
+		final IdentifierResolver<T, K> identifierResolver = this.identifierResolver;
+		final K id = identifierResolver != null && object != null ? identifierResolver.getId(object)
+				: null;
+
+		return id != null ? Collections.singletonList(id) : null;
+
+	}
+
+	private List<K> idsOf(Collection<T> objects) {
+
+		final IdentifierResolver<T, K> identifierResolver = this.identifierResolver;
+
+		if (identifierResolver == null || objects == null) {
+			return null;
+		}
+
+		final List<K> ids = new ArrayList<K>(objects.size());
+
+		for (T object : objects) {
+
+			final K id = object != null ? identifierResolver.getId(object) : null;
+
+			if (id != null) {
+				ids.add(id);
+			}
+
+		}
+
+		return ids;
+
+	}
+
+}
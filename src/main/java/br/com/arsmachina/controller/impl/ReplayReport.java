@@ -0,0 +1,239 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that holds the throughput and latency measured by {@link WorkloadReplayer}.
+ */
+public class ReplayReport {
+
+	private final long elapsedTime;
+
+	private final long skippedCount;
+
+	private final Map<TraceMethod, MethodStatistics> methods;
+
+	private final long replayedCount;
+
+	private final long failedCount;
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param elapsedTime a <code>long</code> with the duration of the replay, in nanoseconds.
+	 * @param skippedCount a <code>long</code> with the number of calls that could not be replayed.
+	 * @param methods a {@link Map} with the statistics of each replayed method.
+	 */
+	public ReplayReport(long elapsedTime, long skippedCount,
+			Map<TraceMethod, MethodStatistics> methods) {
+
+		this.elapsedTime = elapsedTime;
+		this.skippedCount = skippedCount;
+		this.methods = Collections.unmodifiableMap(methods);
+
+		long replayedCount = 0;
+		long failedCount = 0;
+
+		for (MethodStatistics statistics : methods.values()) {
+			replayedCount += statistics.getCount();
+			failedCount += statistics.getFailedCount();
+		}
+
+		this.replayedCount = replayedCount;
+		this.failedCount = failedCount;
+
+	}
+
+	/**
+	 * Returns the duration of the replay.
+	 *
+	 * @param unit a {@link TimeUnit}. It cannot be <code>null</code>.
+	 * @return a <code>long</code>.
+	 */
+	public long getElapsedTime(TimeUnit unit) {
+		return unit.convert(elapsedTime, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the number of replayed calls.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getReplayedCount() {
+		return replayedCount;
+	}
+
+	/**
+	 * Returns the number of replayed calls that threw an exception.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getFailedCount() {
+		return failedCount;
+	}
+
+	/**
+	 * Returns the number of recorded calls that could not be replayed, because there was no
+	 * controller for their entity class or not enough information was recorded.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getSkippedCount() {
+		return skippedCount;
+	}
+
+	/**
+	 * Returns the number of replayed calls per second.
+	 *
+	 * @return a <code>double</code>.
+	 */
+	public double getThroughput() {
+		return elapsedTime > 0 ? replayedCount * 1e9 / elapsedTime : 0;
+	}
+
+	/**
+	 * Returns the statistics of each replayed method.
+	 *
+	 * @return an unmodifiable {@link Map}.
+	 */
+	public Map<TraceMethod, MethodStatistics> getMethods() {
+		return methods;
+	}
+
+	/**
+	 * Returns a table with the throughput and the latencies of each method, in microseconds.
+	 *
+	 * @return a {@link String}.
+	 */
+	@Override
+	public String toString() {
+
+		final StringBuilder builder = new StringBuilder();
+		builder.append(String.format("%d calls in %d ms (%.1f calls/s), %d failed, %d skipped%n",
+				replayedCount, getElapsedTime(TimeUnit.MILLISECONDS), getThroughput(), failedCount,
+				skippedCount));
+		builder.append(String.format("%-24s %10s %10s %10s %10s %10s%n", "method", "count",
+				"p50 (us)", "p90 (us)", "p99 (us)", "max (us)"));
+
+		for (Map.Entry<TraceMethod, MethodStatistics> entry : methods.entrySet()) {
+
+			final MethodStatistics statistics = entry.getValue();
+			final TimeUnit unit = TimeUnit.MICROSECONDS;
+
+			builder.append(String.format("%-24s %10d %10d %10d %10d %10d%n", entry.getKey(),
+					statistics.getCount(), statistics.getPercentile(0.5, unit),
+					statistics.getPercentile(0.9, unit), statistics.getPercentile(0.99, unit),
+					statistics.getMaximum(unit)));
+
+		}
+
+		return builder.toString();
+
+	}
+
+	/**
+	 * Latency statistics of a replayed method.
+	 */
+	public static class MethodStatistics {
+
+		private final long count;
+
+		private final long failedCount;
+
+		private final long[] percentiles;
+
+		private final long maximum;
+
+		/**
+		 * Single constructor of this class.
+		 *
+		 * @param count a <code>long</code> with the number of calls.
+		 * @param failedCount a <code>long</code> with the number of calls that threw an exception.
+		 * @param p50 a <code>long</code> with the median latency, in nanoseconds.
+		 * @param p90 a <code>long</code> with the 90th percentile latency, in nanoseconds.
+		 * @param p99 a <code>long</code> with the 99th percentile latency, in nanoseconds.
+		 * @param maximum a <code>long</code> with the maximum latency, in nanoseconds.
+		 */
+		public MethodStatistics(long count, long failedCount, long p50, long p90, long p99,
+				long maximum) {
+			this.count = count;
+			this.failedCount = failedCount;
+			this.percentiles = new long[] { p50, p90, p99 };
+			this.maximum = maximum;
+		}
+
+		/**
+		 * Returns the number of calls.
+		 *
+		 * @return a <code>long</code>.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the number of calls that threw an exception.
+		 *
+		 * @return a <code>long</code>.
+		 */
+		public long getFailedCount() {
+			return failedCount;
+		}
+
+		/**
+		 * Returns a latency percentile.
+		 *
+		 * @param percentile a <code>double</code>: 0.5, 0.9 or 0.99.
+		 * @param unit a {@link TimeUnit}. It cannot be <code>null</code>.
+		 * @return a <code>long</code>.
+		 */
+		public long getPercentile(double percentile, TimeUnit unit) {
+
+			final int index;
+
+			if (percentile == 0.5) {
+				index = 0;
+			}
+			else if (percentile == 0.9) {
+				index = 1;
+			}
+			else if (percentile == 0.99) {
+				index = 2;
+			}
+			else {
+				throw new IllegalArgumentException("Only the 0.5, 0.9 and 0.99 percentiles are kept");
+			}
+
+			return unit.convert(percentiles[index], TimeUnit.NANOSECONDS);
+
+		}
+
+		/**
+		 * Returns the maximum latency.
+		 *
+		 * @param unit a {@link TimeUnit}. It cannot be <code>null</code>.
+		 * @return a <code>long</code>.
+		 */
+		public long getMaximum(TimeUnit unit) {
+			return unit.convert(maximum, TimeUnit.NANOSECONDS);
+		}
+
+	}
+
+}
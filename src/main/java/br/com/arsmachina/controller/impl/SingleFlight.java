@@ -0,0 +1,178 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that makes concurrent calls with the same key share a single execution: the first caller
+ * runs the call and the others wait for its result (or exception), which is handed to all of them.
+ * A key is in flight only while its call is running, so nothing is cached.
+ * <p>
+ * In-flight calls are kept in a fixed number of independently locked stripes, chosen by the key
+ * hash code, so unrelated keys rarely contend. Locks are held only to look up and remove entries,
+ * never while a call runs. Instances of this class are thread-safe.
+ * </p>
+ */
+public class SingleFlight {
+
+	private final Map<Object, FutureTask<?>>[] stripes;
+
+	private final int mask;
+
+	private final AtomicLong executionCount = new AtomicLong();
+
+	private final AtomicLong sharedCount = new AtomicLong();
+
+	/**
+	 * Creates an instance with a number of stripes proportional to the number of processors.
+	 */
+	public SingleFlight() {
+		this(Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	/**
+	 * Creates an instance with a given minimum number of stripes.
+	 *
+	 * @param concurrency an <code>int</code>. It must be positive.
+	 */
+	@SuppressWarnings("unchecked")
+	public SingleFlight(int concurrency) {
+
+		if (concurrency <= 0) {
+			throw new IllegalArgumentException("Parameter concurrency must be positive");
+		}
+
+		int size = 1;
+
+		while (size < concurrency) {
+			size <<= 1;
+		}
+
+		stripes = (Map<Object, FutureTask<?>>[]) new Map<?, ?>[size];
+		mask = size - 1;
+
+		for (int i = 0; i < size; i++) {
+			stripes[i] = new HashMap<Object, FutureTask<?>>();
+		}
+
+	}
+
+	/**
+	 * Runs a call, unless another call with an equal key is already running, in which case its
+	 * result is returned instead.
+	 *
+	 * @param <V> the type of the result.
+	 * @param key an {@link Object} that identifies the call. It cannot be <code>null</code>.
+	 * @param callable a {@link Callable}. It cannot be <code>null</code>.
+	 * @return a <code>V</code>.
+	 */
+	@SuppressWarnings("unchecked")
+	public <V> V execute(Object key, Callable<V> callable) {
+
+		if (key == null) {
+			throw new IllegalArgumentException("Parameter key cannot be null");
+		}
+
+		if (callable == null) {
+			throw new IllegalArgumentException("Parameter callable cannot be null");
+		}
+
+		final Map<Object, FutureTask<?>> stripe = stripes[spread(key.hashCode()) & mask];
+		final FutureTask<V> task;
+		final boolean leader;
+
+		synchronized (stripe) {
+
+			final FutureTask<V> running = (FutureTask<V>) stripe.get(key);
+
+			if (running != null) {
+				task = running;
+				leader = false;
+			}
+			else {
+				task = new FutureTask<V>(callable);
+				stripe.put(key, task);
+				leader = true;
+			}
+
+		}
+
+		if (leader) {
+
+			executionCount.incrementAndGet();
+
+			try {
+				task.run();
+			}
+			finally {
+
+				synchronized (stripe) {
+					stripe.remove(key);
+				}
+
+			}
+
+		}
+		else {
+			sharedCount.incrementAndGet();
+		}
+
+		try {
+			return task.get();
+		}
+		catch (ExecutionException e) {
+			throw Callables.unwrap(e);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for an in-flight call", e);
+		}
+
+	}
+
+	/**
+	 * Returns the number of calls actually executed.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getExecutionCount() {
+		return executionCount.get();
+	}
+
+	/**
+	 * Returns the number of calls that received the result of another call instead of being
+	 * executed.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getSharedCount() {
+		return sharedCount.get();
+	}
+
+	/**
+	 * Spreads the higher bits of a hash code to the lower ones, which select the stripe.
+	 */
+	private static int spread(int hash) {
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		return hash ^ (hash >>> 7) ^ (hash >>> 4);
+	}
+
+}
@@ -0,0 +1,285 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import br.com.arsmachina.controller.ReadableController;
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * {@link ReadableController} decorator that deduplicates identical concurrent reads: while a
+ * {@link #findById(Serializable)}, {@link #findByIds(Serializable...)},
+ * {@link #findByExample(Object)}, {@link #findAll()}, {@link #findAll(int, int, SortCriterion...)}
+ * or {@link #countAll()} call is running, other calls to the same method with equal arguments wait
+ * for it and receive the same result instead of reaching the decorated controller. This avoids
+ * stampedes on popular entities after cache misses.
+ * <p>
+ * Waiting callers receive the very same object, including returned lists, so results must not be
+ * modified by callers. Examples are compared by class and property values, not through their
+ * <code>equals()</code> method, and examples with properties holding other objects, such as
+ * associated entities, are never deduplicated. {@link #refresh(Object)} and
+ * {@link #reattach(Object)} are never deduplicated either.
+ * </p>
+ *
+ * @param <T> the entity class related to this controller.
+ * @param <K> the type of the field that represents the entity class' primary key.
+ */
+public class SingleFlightReadableController<T, K extends Serializable> extends
+		DelegatingReadableController<T, K> {
+
+	private final SingleFlight singleFlight;
+
+	/**
+	 * Creates an instance with its own {@link SingleFlight}.
+	 *
+	 * @param delegate a {@link ReadableController}. It cannot be <code>null</code>.
+	 */
+	public SingleFlightReadableController(ReadableController<T, K> delegate) {
+		this(delegate, new SingleFlight());
+	}
+
+	/**
+	 * Creates an instance with a given {@link SingleFlight}, which may be shared by many
+	 * controllers.
+	 *
+	 * @param delegate a {@link ReadableController}. It cannot be <code>null</code>.
+	 * @param singleFlight a {@link SingleFlight}. It cannot be <code>null</code>.
+	 */
+	public SingleFlightReadableController(ReadableController<T, K> delegate,
+			SingleFlight singleFlight) {
+
+		super(delegate);
+
+		if (singleFlight == null) {
+			throw new IllegalArgumentException("Parameter singleFlight cannot be null");
+		}
+
+		this.singleFlight = singleFlight;
+
+	}
+
+	/**
+	 * Returns the {@link SingleFlight} used by this controller, which has its statistics.
+	 *
+	 * @return a {@link SingleFlight}.
+	 */
+	public SingleFlight getSingleFlight() {
+		return singleFlight;
+	}
+
+	@Override
+	public long countAll() {
+
+		return singleFlight.execute(new CallKey(this, "countAll"), new Callable<Long>() {
+
+			public Long call() {
+				return getDelegate().countAll();
+			}
+
+		});
+
+	}
+
+	@Override
+	public List<T> findAll() {
+
+		return singleFlight.execute(new CallKey(this, "findAll"), new Callable<List<T>>() {
+
+			public List<T> call() {
+				return getDelegate().findAll();
+			}
+
+		});
+
+	}
+
+	@Override
+	public List<T> findAll(final int firstResult, final int maxResults,
+			final SortCriterion... sortCriteria) {
+
+		final CallKey key = new CallKey(this, "findAll", firstResult, maxResults,
+				toKey(sortCriteria));
+
+		return singleFlight.execute(key, new Callable<List<T>>() {
+
+			public List<T> call() {
+				return getDelegate().findAll(firstResult, maxResults, sortCriteria);
+			}
+
+		});
+
+	}
+
+	@Override
+	public List<T> findByExample(final T example) {
+
+		final Object[] key = toKey(example);
+
+		if (key == null) {
+			return getDelegate().findByExample(example);
+		}
+
+		return singleFlight.execute(new CallKey(this, "findByExample", (Object) key),
+				new Callable<List<T>>() {
+
+					public List<T> call() {
+						return getDelegate().findByExample(example);
+					}
+
+				});
+
+	}
+
+	@Override
+	public T findById(final K id) {
+
+		return singleFlight.execute(new CallKey(this, "findById", id), new Callable<T>() {
+
+			public T call() {
+				return getDelegate().findById(id);
+			}
+
+		});
+
+	}
+
+	@Override
+	public List<T> findByIds(final K... ids) {
+
+		return singleFlight.execute(new CallKey(this, "findByIds", (Object) ids),
+				new Callable<List<T>>() {
+
+					public List<T> call() {
+						return getDelegate().findByIds(ids);
+					}
+
+				});
+
+	}
+
+	/**
+	 * Returns a representation of an example that can be compared by value: its class followed
+	 * by the name and value of each readable property. Examples are not compared through their
+	 * <code>equals()</code> method, which usually compares identity or only the primary key.
+	 * Returns <code>null</code>, so the call is not deduplicated, if a property value is neither
+	 * a plain value, a primitive array nor an empty collection or map.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Object[] toKey(Object example) {
+
+		if (example == null) {
+			return null;
+		}
+
+		final Class<Object> clasz = (Class<Object>) example.getClass();
+		final Collection<PropertyAccessor<Object>> accessors = PropertyAccessors.get(clasz).values();
+		final Object[] key = new Object[2 * accessors.size() + 1];
+		int i = 0;
+
+		key[i++] = clasz;
+
+		for (PropertyAccessor<Object> accessor : accessors) {
+
+			final Object value = accessor.get(example);
+
+			if (value != null && !PropertyAccessors.isValueType(value.getClass())
+					&& !(value.getClass().isArray() && value.getClass().getComponentType().isPrimitive())
+					&& !(value instanceof Collection && ((Collection<?>) value).isEmpty())
+					&& !(value instanceof Map && ((Map<?, ?>) value).isEmpty())) {
+				return null;
+			}
+
+			key[i++] = accessor.getName();
+			key[i++] = value;
+
+		}
+
+		return key;
+
+	}
+
+	/**
+	 * Returns a representation of a {@link SortCriterion} array that can be compared by value.
+	 */
+	private static Object toKey(SortCriterion[] sortCriteria) {
+
+		if (sortCriteria == null) {
+			return null;
+		}
+
+		final String[] key = new String[sortCriteria.length];
+
+		for (int i = 0; i < sortCriteria.length; i++) {
+			key[i] = sortCriteria[i].getProperty() + (sortCriteria[i].isAscending() ? " asc" : " desc");
+		}
+
+		return key;
+
+	}
+
+	/**
+	 * Identifies a call by its controller, method name and arguments. Arrays are compared by
+	 * their contents.
+	 */
+	private static final class CallKey {
+
+		private final Object controller;
+
+		private final String method;
+
+		private final Object[] arguments;
+
+		private final int hashCode;
+
+		public CallKey(Object controller, String method, Object... arguments) {
+			this.controller = controller;
+			this.method = method;
+			this.arguments = arguments;
+			hashCode = 31 * (31 * System.identityHashCode(controller) + method.hashCode())
+					+ Arrays.deepHashCode(arguments);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+
+			if (this == object) {
+				return true;
+			}
+
+			if (!(object instanceof CallKey)) {
+				return false;
+			}
+
+			final CallKey other = (CallKey) object;
+
+			return controller == other.controller && hashCode == other.hashCode
+					&& method.equals(other.method) && Arrays.deepEquals(arguments, other.arguments);
+
+		}
+
+	}
+
+}
@@ -0,0 +1,116 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.Comparator;
+
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * {@link Comparator} that orders objects following a {@link SortCriterion} array, the same way
+ * a DAO would. <code>null</code> property values come before any other value in ascending order.
+ * Property values must implement {@link Comparable}.
+ *
+ * @param <T> the class of the compared objects.
+ */
+public class SortCriteriaComparator<T> implements Comparator<T> {
+
+	private final PropertyAccessor<T>[] accessors;
+
+	private final boolean[] ascending;
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param clasz a {@link Class}. It cannot be <code>null</code>.
+	 * @param sortCriteria a {@link SortCriterion} array.
+	 */
+	public SortCriteriaComparator(Class<T> clasz, SortCriterion... sortCriteria) {
+
+		accessors = newAccessorArray(sortCriteria.length);
+		ascending = new boolean[sortCriteria.length];
+
+		for (int i = 0; i < sortCriteria.length; i++) {
+			accessors[i] = PropertyAccessors.get(clasz, sortCriteria[i].getProperty());
+			ascending[i] = sortCriteria[i].isAscending();
+		}
+
+	}
+
+	/**
+	 * Constructor used to order objects by a single property.
+	 *
+	 * @param accessor a {@link PropertyAccessor}. It cannot be <code>null</code>.
+	 * @param ascending a <code>boolean</code>.
+	 */
+	public SortCriteriaComparator(PropertyAccessor<T> accessor, boolean ascending) {
+
+		if (accessor == null) {
+			throw new IllegalArgumentException("Parameter accessor cannot be null");
+		}
+
+		this.accessors = newAccessorArray(1);
+		this.accessors[0] = accessor;
+		this.ascending = new boolean[] { ascending };
+
+	}
+
+	public int compare(T o1, T o2) {
+
+		for (int i = 0; i < accessors.length; i++) {
+
+			int result = compareValues(accessors[i].get(o1), accessors[i].get(o2));
+
+			if (result != 0) {
+				return ascending[i] ? result : -result;
+			}
+
+		}
+
+		return 0;
+
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> PropertyAccessor<T>[] newAccessorArray(int length) {
+		return (PropertyAccessor<T>[]) new PropertyAccessor<?>[length];
+	}
+
+	/**
+	 * Compares two property values, considering <code>null</code> smaller than anything else.
+	 *
+	 * @param v1 an {@link Object}.
+	 * @param v2 an {@link Object}.
+	 * @return an <code>int</code>.
+	 */
+	@SuppressWarnings("unchecked")
+	static int compareValues(Object v1, Object v2) {
+
+		if (v1 == v2) {
+			return 0;
+		}
+		else if (v1 == null) {
+			return -1;
+		}
+		else if (v2 == null) {
+			return 1;
+		}
+		else {
+			return ((Comparable<Object>) v1).compareTo(v2);
+		}
+
+	}
+
+}
@@ -0,0 +1,161 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * Class that represents a controller call read from a trace file by {@link TraceReader}.
+ */
+public class TraceEvent {
+
+	private static final SortCriterion[] NO_SORT_CRITERIA = new SortCriterion[0];
+
+	private final TraceMethod method;
+
+	private final String entityName;
+
+	private final long startTime;
+
+	private final long duration;
+
+	private final boolean failed;
+
+	private final List<Serializable> ids;
+
+	private final int firstResult;
+
+	private final int maxResults;
+
+	private final SortCriterion[] sortCriteria;
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param method a {@link TraceMethod}.
+	 * @param entityName a {@link String} with the name of the entity class.
+	 * @param startTime a <code>long</code> with the time the call started, in nanoseconds since
+	 * the trace started.
+	 * @param duration a <code>long</code> with the duration of the call, in nanoseconds.
+	 * @param failed a <code>boolean</code> telling whether the call threw an exception.
+	 * @param ids a {@link List} with the primary key values passed to or written by the call.
+	 * @param firstResult an <code>int</code> with the index of the first object of paginated
+	 * calls.
+	 * @param maxResults an <code>int</code> with the maximum number of objects of paginated calls.
+	 * @param sortCriteria a {@link SortCriterion} array with the sort criteria of paginated calls.
+	 */
+	public TraceEvent(TraceMethod method, String entityName, long startTime, long duration,
+			boolean failed, List<Serializable> ids, int firstResult, int maxResults,
+			SortCriterion[] sortCriteria) {
+
+		this.method = method;
+		this.entityName = entityName;
+		this.startTime = startTime;
+		this.duration = duration;
+		this.failed = failed;
+		this.ids = ids != null ? ids : Collections.<Serializable> emptyList();
+		this.firstResult = firstResult;
+		this.maxResults = maxResults;
+		this.sortCriteria = sortCriteria != null ? sortCriteria : NO_SORT_CRITERIA;
+
+	}
+
+	/**
+	 * Returns the called method.
+	 *
+	 * @return a {@link TraceMethod}.
+	 */
+	public TraceMethod getMethod() {
+		return method;
+	}
+
+	/**
+	 * Returns the fully qualified name of the entity class of the called controller.
+	 *
+	 * @return a {@link String}.
+	 */
+	public String getEntityName() {
+		return entityName;
+	}
+
+	/**
+	 * Returns the time the call started, in nanoseconds since the trace started.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Returns the duration of the call, in nanoseconds.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Tells whether the call threw an exception.
+	 *
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+
+	/**
+	 * Returns the primary key values passed to the call or, for calls that receive objects, the
+	 * primary key values of these objects, if they were known.
+	 *
+	 * @return a {@link List} of {@link Serializable}s.
+	 */
+	public List<Serializable> getIds() {
+		return ids;
+	}
+
+	/**
+	 * Returns the index of the first object requested by paginated calls.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getFirstResult() {
+		return firstResult;
+	}
+
+	/**
+	 * Returns the maximum number of objects requested by paginated calls.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getMaxResults() {
+		return maxResults;
+	}
+
+	/**
+	 * Returns the sort criteria of paginated calls.
+	 *
+	 * @return a {@link SortCriterion} array.
+	 */
+	public SortCriterion[] getSortCriteria() {
+		return sortCriteria;
+	}
+
+}
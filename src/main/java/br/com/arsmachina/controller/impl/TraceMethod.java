@@ -0,0 +1,131 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+/**
+ * Controller methods recorded by {@link RecordingController}. The order of the constants defines
+ * their code in trace files, so new constants must be added at the end.
+ */
+public enum TraceMethod {
+
+	/**
+	 * Calls to <code>countAll()</code>.
+	 */
+	COUNT_ALL,
+
+	/**
+	 * Calls to <code>findAll()</code>.
+	 */
+	FIND_ALL,
+
+	/**
+	 * Calls to <code>findAll(int, int, SortCriterion...)</code>.
+	 */
+	FIND_ALL_PAGED,
+
+	/**
+	 * Calls to <code>findByExample()</code>. The example itself is not recorded.
+	 */
+	FIND_BY_EXAMPLE,
+
+	/**
+	 * Calls to <code>findById()</code>.
+	 */
+	FIND_BY_ID,
+
+	/**
+	 * Calls to <code>findByIds()</code>.
+	 */
+	FIND_BY_IDS,
+
+	/**
+	 * Calls to <code>refresh()</code>.
+	 */
+	REFRESH,
+
+	/**
+	 * Calls to <code>refreshAll()</code>.
+	 */
+	REFRESH_ALL,
+
+	/**
+	 * Calls to <code>findPage()</code> counting the total number of objects.
+	 */
+	FIND_PAGE,
+
+	/**
+	 * Calls to <code>findPage()</code> not counting the total number of objects.
+	 */
+	FIND_PAGE_WITHOUT_COUNT,
+
+	/**
+	 * Calls to <code>findByIdIfChanged()</code>.
+	 */
+	FIND_BY_ID_IF_CHANGED,
+
+	/**
+	 * Calls to <code>findByIdsIfChanged()</code>.
+	 */
+	FIND_BY_IDS_IF_CHANGED,
+
+	/**
+	 * Calls to <code>save()</code>.
+	 */
+	SAVE,
+
+	/**
+	 * Calls to <code>update()</code>.
+	 */
+	UPDATE,
+
+	/**
+	 * Calls to <code>saveOrUpdate()</code>.
+	 */
+	SAVE_OR_UPDATE,
+
+	/**
+	 * Calls to <code>delete()</code> receiving an object.
+	 */
+	DELETE,
+
+	/**
+	 * Calls to <code>delete()</code> receiving a primary key value.
+	 */
+	DELETE_BY_ID;
+
+	/**
+	 * Returns the code of this method in trace files.
+	 *
+	 * @return a <code>byte</code>, never 0.
+	 */
+	byte getCode() {
+		return (byte) (ordinal() + 1);
+	}
+
+	/**
+	 * Returns the method with a given code.
+	 *
+	 * @param code a <code>byte</code>.
+	 * @return a {@link TraceMethod} or <code>null</code> if the code is unknown.
+	 */
+	static TraceMethod fromCode(byte code) {
+
+		final TraceMethod[] methods = values();
+
+		return code > 0 && code <= methods.length ? methods[code - 1] : null;
+
+	}
+
+}
@@ -0,0 +1,259 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * Class that reads the controller calls written by {@link TraceWriter}. {@link #next()} returns
+ * them in the order they were written, which is the order they finished, while
+ * {@link #readAll()} returns them in the order they started. Instances of this class are not
+ * thread-safe.
+ */
+public class TraceReader {
+
+	private static final Comparator<TraceEvent> START_TIME_ORDER = new Comparator<TraceEvent>() {
+
+		public int compare(TraceEvent event1, TraceEvent event2) {
+
+			final long start1 = event1.getStartTime();
+			final long start2 = event2.getStartTime();
+
+			return start1 < start2 ? -1 : (start1 == start2 ? 0 : 1);
+
+		}
+
+	};
+
+	private final RandomAccessFile file;
+
+	private final ByteBuffer buffer;
+
+	private final Map<Short, String> entities = new HashMap<Short, String>();
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param file a {@link File}. It cannot be <code>null</code>.
+	 * @throws IOException if the file cannot be read or is not a trace file.
+	 */
+	public TraceReader(File file) throws IOException {
+
+		if (file == null) {
+			throw new IllegalArgumentException("Parameter file cannot be null");
+		}
+
+		this.file = new RandomAccessFile(file, "r");
+
+		try {
+
+			buffer = this.file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+					this.file.length());
+
+			if (buffer.remaining() < 6 || buffer.getInt() != TraceWriter.MAGIC) {
+				throw new IOException("Not a trace file: " + file);
+			}
+
+			final short version = buffer.getShort();
+
+			if (version != TraceWriter.VERSION) {
+				throw new IOException("Unsupported trace file version: " + version);
+			}
+
+		}
+		catch (IOException e) {
+			this.file.close();
+			throw e;
+		}
+
+	}
+
+	/**
+	 * Returns the next call in the order calls were written, which is not necessarily the order
+	 * of their start times. Reading stops at the end mark written by {@link TraceWriter#close()}
+	 * or at the first space reserved but never written, left by a writer that did not finish.
+	 *
+	 * @return a {@link TraceEvent} or <code>null</code> if there are no more calls.
+	 */
+	public TraceEvent next() {
+
+		try {
+
+			while (buffer.hasRemaining()) {
+
+				final byte tag = buffer.get();
+
+				if (tag == TraceWriter.END) {
+					return null;
+				}
+				else if (tag == TraceWriter.ENTITY) {
+					final short index = buffer.getShort();
+					entities.put(index, getString());
+				}
+				else {
+					return readEvent(tag);
+				}
+
+			}
+
+			return null;
+
+		}
+		catch (BufferUnderflowException e) {
+			throw new IllegalStateException("Truncated trace file", e);
+		}
+
+	}
+
+	/**
+	 * Reads all remaining calls and sorts them by start time.
+	 *
+	 * @return a {@link List} of {@link TraceEvent}s.
+	 */
+	public List<TraceEvent> readAll() {
+
+		final List<TraceEvent> events = new ArrayList<TraceEvent>();
+		TraceEvent event;
+
+		while ((event = next()) != null) {
+			events.add(event);
+		}
+
+		Collections.sort(events, START_TIME_ORDER);
+
+		return events;
+
+	}
+
+	/**
+	 * Closes the file.
+	 *
+	 * @throws IOException if the file cannot be closed.
+	 */
+	public void close() throws IOException {
+		file.close();
+	}
+
+	private TraceEvent readEvent(byte tag) {
+
+		final TraceMethod method = TraceMethod.fromCode(tag);
+
+		if (method == null) {
+			throw new IllegalStateException("Unknown method code: " + tag);
+		}
+
+		final String entityName = entities.get(buffer.getShort());
+		final long startTime = buffer.getLong();
+		final long duration = buffer.getLong();
+		final boolean failed = buffer.get() != 0;
+		final int idCount = buffer.getInt();
+		final List<Serializable> ids = new ArrayList<Serializable>(idCount);
+
+		for (int i = 0; i < idCount; i++) {
+			ids.add(getId());
+		}
+
+		int firstResult = 0;
+		int maxResults = 0;
+		SortCriterion[] sortCriteria = null;
+
+		if (TraceWriter.isPaginated(method)) {
+
+			firstResult = buffer.getInt();
+			maxResults = buffer.getInt();
+			sortCriteria = new SortCriterion[buffer.get()];
+
+			for (int i = 0; i < sortCriteria.length; i++) {
+				final String property = getString();
+				sortCriteria[i] = new SortCriterion(property, buffer.get() != 0);
+			}
+
+		}
+
+		return new TraceEvent(method, entityName, startTime, duration, failed, ids, firstResult,
+				maxResults, sortCriteria);
+
+	}
+
+	private Serializable getId() {
+
+		final byte type = buffer.get();
+
+		switch (type) {
+
+			case TraceWriter.LONG_ID:
+				return buffer.getLong();
+
+			case TraceWriter.INTEGER_ID:
+				return buffer.getInt();
+
+			case TraceWriter.STRING_ID:
+				return getString();
+
+			case TraceWriter.SERIALIZED_ID:
+
+				final byte[] bytes = new byte[buffer.getInt()];
+				buffer.get(bytes);
+
+				try {
+					return (Serializable) new ObjectInputStream(new ByteArrayInputStream(bytes))
+							.readObject();
+				}
+				catch (IOException e) {
+					throw new IllegalStateException("Cannot deserialize primary key value", e);
+				}
+				catch (ClassNotFoundException e) {
+					throw new IllegalStateException("Cannot deserialize primary key value", e);
+				}
+
+			default:
+				throw new IllegalStateException("Unknown primary key value type: " + type);
+
+		}
+
+	}
+
+	private String getString() {
+
+		final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+
+		try {
+			return new String(bytes, "UTF-8");
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+
+	}
+
+}
@@ -0,0 +1,441 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * Class that writes controller calls to a trace file, which is memory-mapped with a fixed
+ * capacity, so recording a call costs a few memory writes and no system call. When the file is
+ * full, further calls are dropped and counted. Trace files are read by {@link TraceReader}.
+ * Instances of this class are thread-safe.
+ * <p>
+ * Each call is written as its method code, the index of its entity class name, its start time
+ * and duration in nanoseconds, whether it failed, the primary key values involved and, for
+ * paginated calls, the page bounds and sort criteria. <code>Long</code>, <code>Integer</code>
+ * and <code>String</code> primary key values take 9, 5 and 3 bytes plus their length,
+ * respectively. Other values are written with Java serialization.
+ * </p>
+ * <p>
+ * Recording threads do not block each other: each one encodes its calls in a buffer of its own
+ * and then reserves space in the file by atomically advancing the write position. Calls are
+ * written when they finish, so they are not ordered by start time in the file. If the process
+ * dies between the reservation and the copy of a call, its space is left filled with zeros,
+ * which {@link TraceReader} takes as the end of the file, so the calls written after it are not
+ * read. Files closed through {@link #close()} have no such gaps.
+ * </p>
+ */
+public class TraceWriter {
+
+	static final int MAGIC = 0x47435452;
+
+	static final short VERSION = 1;
+
+	static final byte END = 0;
+
+	static final byte ENTITY = 0x7F;
+
+	static final byte LONG_ID = 1;
+
+	static final byte INTEGER_ID = 2;
+
+	static final byte STRING_ID = 3;
+
+	static final byte SERIALIZED_ID = 4;
+
+	/**
+	 * Maximum size of a single record.
+	 */
+	private static final int MAXIMUM_RECORD_SIZE = 64 * 1024;
+
+	private final RandomAccessFile file;
+
+	private final MappedByteBuffer buffer;
+
+	/**
+	 * Position where the next record is written.
+	 */
+	private final AtomicInteger position = new AtomicInteger();
+
+	/**
+	 * Number of {@link #write(TraceMethod, Class, long, long, boolean, Collection, int, int,
+	 * SortCriterion[])} calls in progress, which {@link #close()} waits for.
+	 */
+	private final AtomicInteger activeWriters = new AtomicInteger();
+
+	private final ThreadLocal<Encoder> encoders = new ThreadLocal<Encoder>() {
+
+		@Override
+		protected Encoder initialValue() {
+			return new Encoder(buffer.duplicate());
+		}
+
+	};
+
+	/**
+	 * Entity class name indexes. Indexes are assigned and their definitions written while
+	 * holding the lock of this map, so a definition is always written before any call using it.
+	 */
+	private final ConcurrentMap<String, Short> entities = new ConcurrentHashMap<String, Short>();
+
+	private final long origin = System.nanoTime();
+
+	private final AtomicLong recordedCount = new AtomicLong();
+
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private volatile boolean closed;
+
+	/**
+	 * Single constructor of this class. The file is created or overwritten.
+	 *
+	 * @param file a {@link File}. It cannot be <code>null</code>.
+	 * @param capacity an <code>int</code> with the size of the file, in bytes. It must be at
+	 * least 1024.
+	 * @throws IOException if the file cannot be created or mapped.
+	 */
+	public TraceWriter(File file, int capacity) throws IOException {
+
+		if (file == null) {
+			throw new IllegalArgumentException("Parameter file cannot be null");
+		}
+
+		if (capacity < 1024) {
+			throw new IllegalArgumentException("Parameter capacity must be at least 1024");
+		}
+
+		this.file = new RandomAccessFile(file, "rw");
+
+		try {
+			this.file.setLength(0);
+			this.file.setLength(capacity);
+			buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		}
+		catch (IOException e) {
+			this.file.close();
+			throw e;
+		}
+
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+		position.set(buffer.position());
+
+	}
+
+	/**
+	 * Returns the number of calls written so far.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getRecordedCount() {
+		return recordedCount.get();
+	}
+
+	/**
+	 * Returns the number of calls dropped because the file was full or closed.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Returns the number of bytes written so far.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getSize() {
+		return position.get();
+	}
+
+	/**
+	 * Waits for the calls being written, writes the end marker, flushes the file and closes it.
+	 * Further calls are dropped.
+	 *
+	 * @throws IOException if the file cannot be closed.
+	 */
+	public synchronized void close() throws IOException {
+
+		if (!closed) {
+
+			closed = true;
+
+			while (activeWriters.get() > 0) {
+				Thread.yield();
+			}
+
+			final int end = position.get();
+
+			if (end < buffer.capacity()) {
+				buffer.put(end, END);
+			}
+
+			buffer.force();
+			file.close();
+
+		}
+
+	}
+
+	/**
+	 * Writes a call.
+	 *
+	 * @param method a {@link TraceMethod}.
+	 * @param entityClass a {@link Class} with the entity class of the called controller.
+	 * @param start a <code>long</code> with the <code>System.nanoTime()</code> value when the
+	 * call started.
+	 * @param duration a <code>long</code> with the duration of the call, in nanoseconds.
+	 * @param failed a <code>boolean</code> telling whether the call threw an exception.
+	 * @param ids a {@link Collection} of primary key values. It may be <code>null</code>.
+	 * @param firstResult an <code>int</code>, only written for paginated calls.
+	 * @param maxResults an <code>int</code>, only written for paginated calls.
+	 * @param sortCriteria a {@link SortCriterion} array, only written for paginated calls.
+	 */
+	void write(TraceMethod method, Class<?> entityClass, long start, long duration,
+			boolean failed, Collection<? extends Serializable> ids, int firstResult,
+			int maxResults, SortCriterion[] sortCriteria) {
+
+		activeWriters.incrementAndGet();
+
+		try {
+
+			if (closed) {
+				droppedCount.incrementAndGet();
+				return;
+			}
+
+			final Encoder encoder = encoders.get();
+			final ByteBuffer record = encoder.record;
+			final Short entity = getEntity(entityClass.getName(), encoder);
+
+			if (entity == null) {
+				droppedCount.incrementAndGet();
+				return;
+			}
+
+			record.clear();
+			record.put(method.getCode());
+			record.putShort(entity);
+			record.putLong(start - origin);
+			record.putLong(duration);
+			record.put((byte) (failed ? 1 : 0));
+			record.putInt(ids != null ? ids.size() : 0);
+
+			if (ids != null) {
+
+				for (Serializable id : ids) {
+					putId(record, id);
+				}
+
+			}
+
+			if (isPaginated(method)) {
+
+				record.putInt(firstResult);
+				record.putInt(maxResults);
+				record.put((byte) (sortCriteria != null ? sortCriteria.length : 0));
+
+				if (sortCriteria != null) {
+
+					for (SortCriterion criterion : sortCriteria) {
+						putString(record, criterion.getProperty());
+						record.put((byte) (criterion.isAscending() ? 1 : 0));
+					}
+
+				}
+
+			}
+
+			if (append(encoder)) {
+				recordedCount.incrementAndGet();
+			}
+			else {
+				droppedCount.incrementAndGet();
+			}
+
+		}
+		catch (RuntimeException e) {
+			// records larger than MAXIMUM_RECORD_SIZE or with primary key values that cannot be
+			// serialized are dropped, as recording must never make the recorded call fail
+			droppedCount.incrementAndGet();
+		}
+		finally {
+			activeWriters.decrementAndGet();
+		}
+
+	}
+
+	/**
+	 * Returns the index of an entity class name, writing its definition if it is new.
+	 *
+	 * @return a {@link Short} or <code>null</code> if the definition did not fit in the file.
+	 */
+	private Short getEntity(String entityName, Encoder encoder) {
+
+		Short entity = entities.get(entityName);
+
+		if (entity == null) {
+
+			synchronized (entities) {
+
+				entity = entities.get(entityName);
+
+				if (entity == null) {
+
+					final ByteBuffer record = encoder.record;
+					final short index = (short) entities.size();
+
+					record.clear();
+					record.put(ENTITY);
+					record.putShort(index);
+					putString(record, entityName);
+
+					if (append(encoder)) {
+						entity = index;
+						entities.put(entityName, entity);
+					}
+
+				}
+
+			}
+
+		}
+
+		return entity;
+
+	}
+
+	/**
+	 * Reserves space for the record in the encoder and copies it to the file. One byte is always
+	 * left for the end marker.
+	 *
+	 * @return <code>false</code> if the file is full.
+	 */
+	private boolean append(Encoder encoder) {
+
+		final ByteBuffer record = encoder.record;
+		final int length = record.position();
+		int start;
+
+		do {
+
+			start = position.get();
+
+			if (start + length >= buffer.capacity()) {
+				return false;
+			}
+
+		}
+		while (!position.compareAndSet(start, start + length));
+
+		record.flip();
+		encoder.file.position(start);
+		encoder.file.put(record);
+
+		return true;
+
+	}
+
+	static boolean isPaginated(TraceMethod method) {
+		return method == TraceMethod.FIND_ALL_PAGED || method == TraceMethod.FIND_PAGE
+				|| method == TraceMethod.FIND_PAGE_WITHOUT_COUNT;
+	}
+
+	private static void putId(ByteBuffer buffer, Serializable id) {
+
+		if (id instanceof Long) {
+			buffer.put(LONG_ID);
+			buffer.putLong((Long) id);
+		}
+		else if (id instanceof Integer) {
+			buffer.put(INTEGER_ID);
+			buffer.putInt((Integer) id);
+		}
+		else if (id instanceof String) {
+			buffer.put(STRING_ID);
+			putString(buffer, (String) id);
+		}
+		else {
+
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+			try {
+				final ObjectOutputStream output = new ObjectOutputStream(bytes);
+				output.writeObject(id);
+				output.close();
+			}
+			catch (IOException e) {
+				throw new IllegalStateException("Cannot serialize primary key value " + id, e);
+			}
+
+			buffer.put(SERIALIZED_ID);
+			buffer.putInt(bytes.size());
+			buffer.put(bytes.toByteArray());
+
+		}
+
+	}
+
+	private static void putString(ByteBuffer buffer, String string) {
+
+		try {
+			final byte[] bytes = string.getBytes("UTF-8");
+
+			if (bytes.length > 0xFFFF) {
+				throw new IllegalArgumentException("String too long to be recorded");
+			}
+
+			buffer.putShort((short) bytes.length);
+			buffer.put(bytes);
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+
+	}
+
+	/**
+	 * Per-thread record buffer and view of the mapped file.
+	 */
+	private static final class Encoder {
+
+		final ByteBuffer record = ByteBuffer.allocate(MAXIMUM_RECORD_SIZE);
+
+		final ByteBuffer file;
+
+		Encoder(ByteBuffer file) {
+			this.file = file;
+		}
+
+	}
+
+}
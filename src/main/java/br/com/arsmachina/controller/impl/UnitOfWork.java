@@ -0,0 +1,417 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.com.arsmachina.controller.BatchWriteableController;
+import br.com.arsmachina.controller.WriteableController;
+
+/**
+ * Class that records write operations on many {@link WriteableController}s and executes them
+ * together when {@link #commit()} is invoked.
+ * <p>
+ * The operations recorded for each controller are always executed in the order they were
+ * recorded, so an object can be deleted and inserted again with the same primary key. At commit
+ * time, consecutive operations of the same kind on the same controller are grouped into batches.
+ * The batches of saves and updates at the head of each controller queue are executed first,
+ * following the dependencies declared through
+ * {@link #addDependency(WriteableController, WriteableController)} (a controller is flushed after
+ * the ones it depends on), and then the batches of deletes at the head of each queue, in the
+ * opposite order. This is repeated until all queues are empty. Controllers are otherwise flushed
+ * in the order they were first used. Each batch sent to a {@link BatchWriteableController} which
+ * supports batch writes costs a single call; other controllers receive one call per operation.
+ * </p>
+ * <p>
+ * If an operation fails, its exception is propagated and the operations already executed are
+ * discarded, while the failed one and the ones not executed yet are kept, so {@link #commit()}
+ * can be invoked again or {@link #clear()} can discard them. When a batch fails, all its
+ * operations are kept, as there is no way to know which ones were applied.
+ * </p>
+ * <p>
+ * Instances of this class are meant to be used by a single thread for a single business
+ * operation and are not thread-safe.
+ * </p>
+ */
+public class UnitOfWork {
+
+	private final Map<WriteableController<?, ?>, PendingWrites<?, ?>> pending =
+		new IdentityHashMap<WriteableController<?, ?>, PendingWrites<?, ?>>();
+
+	private final List<PendingWrites<?, ?>> order = new ArrayList<PendingWrites<?, ?>>();
+
+	private final Map<WriteableController<?, ?>, List<WriteableController<?, ?>>> dependencies =
+		new IdentityHashMap<WriteableController<?, ?>, List<WriteableController<?, ?>>>();
+
+	/**
+	 * Declares that the objects of a controller depend on the objects of another one, so the
+	 * latter must be saved and updated first and deleted last.
+	 *
+	 * @param dependent a {@link WriteableController}. It cannot be <code>null</code>.
+	 * @param dependency a {@link WriteableController}. It cannot be <code>null</code>.
+	 */
+	public void addDependency(WriteableController<?, ?> dependent,
+			WriteableController<?, ?> dependency) {
+
+		if (dependent == null) {
+			throw new IllegalArgumentException("Parameter dependent cannot be null");
+		}
+
+		if (dependency == null) {
+			throw new IllegalArgumentException("Parameter dependency cannot be null");
+		}
+
+		List<WriteableController<?, ?>> list = dependencies.get(dependent);
+
+		if (list == null) {
+			list = new ArrayList<WriteableController<?, ?>>();
+			dependencies.put(dependent, list);
+		}
+
+		list.add(dependency);
+
+	}
+
+	/**
+	 * Records the saving (insertion) of an object.
+	 *
+	 * @param controller a {@link WriteableController}. It cannot be <code>null</code>.
+	 * @param object a <code>T</code>.
+	 */
+	public <T, K extends Serializable> void save(WriteableController<T, K> controller, T object) {
+		getPendingWrites(controller).add(Kind.SAVE, object);
+	}
+
+	/**
+	 * Records the update of an object.
+	 *
+	 * @param controller a {@link WriteableController}. It cannot be <code>null</code>.
+	 * @param object a <code>T</code>.
+	 */
+	public <T, K extends Serializable> void update(WriteableController<T, K> controller, T object) {
+		getPendingWrites(controller).add(Kind.UPDATE, object);
+	}
+
+	/**
+	 * Records the removal of an object.
+	 *
+	 * @param controller a {@link WriteableController}. It cannot be <code>null</code>.
+	 * @param object a <code>T</code>.
+	 */
+	public <T, K extends Serializable> void delete(WriteableController<T, K> controller, T object) {
+		getPendingWrites(controller).add(Kind.DELETE, object);
+	}
+
+	/**
+	 * Records the removal of an object given its primary key.
+	 *
+	 * @param controller a {@link WriteableController}. It cannot be <code>null</code>.
+	 * @param id a <code>K</code>.
+	 */
+	public <T, K extends Serializable> void deleteById(WriteableController<T, K> controller, K id) {
+		getPendingWrites(controller).add(Kind.DELETE_BY_ID, id);
+	}
+
+	/**
+	 * Returns the number of operations recorded and not executed yet.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getPendingOperations() {
+
+		int operations = 0;
+
+		for (PendingWrites<?, ?> writes : order) {
+			operations += writes.size();
+		}
+
+		return operations;
+
+	}
+
+	/**
+	 * Discards all recorded operations. Declared dependencies are kept.
+	 */
+	public void clear() {
+		pending.clear();
+		order.clear();
+	}
+
+	/**
+	 * Executes all recorded operations and discards them. If one of them fails, the failed
+	 * operation and the ones not executed yet are kept.
+	 *
+	 * @return an {@link UnitOfWorkStatistics}.
+	 * @throws IllegalStateException if the declared dependencies have a cycle.
+	 */
+	public UnitOfWorkStatistics commit() {
+
+		final long start = System.nanoTime();
+		final List<PendingWrites<?, ?>> sorted = sort();
+		final int[] counters = new int[2];
+		final int operations = getPendingOperations();
+		boolean done = false;
+
+		while (!done) {
+
+			done = true;
+
+			for (PendingWrites<?, ?> writes : sorted) {
+				writes.flush(false, counters);
+			}
+
+			for (int i = sorted.size() - 1; i >= 0; i--) {
+
+				final PendingWrites<?, ?> writes = sorted.get(i);
+				writes.flush(true, counters);
+				done &= writes.size() == 0;
+
+			}
+
+		}
+
+		clear();
+
+		return new UnitOfWorkStatistics(operations, counters[0], counters[1], System.nanoTime()
+				- start);
+
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T, K extends Serializable> PendingWrites<T, K> getPendingWrites(
+			WriteableController<T, K> controller) {
+
+		if (controller == null) {
+			throw new IllegalArgumentException("Parameter controller cannot be null");
+		}
+
+		PendingWrites<T, K> writes = (PendingWrites<T, K>) pending.get(controller);
+
+		if (writes == null) {
+			writes = new PendingWrites<T, K>(controller);
+			pending.put(controller, writes);
+			order.add(writes);
+		}
+
+		return writes;
+
+	}
+
+	/**
+	 * Sorts the pending writes topologically by their controller dependencies, keeping the first
+	 * use order among independent controllers.
+	 */
+	private List<PendingWrites<?, ?>> sort() {
+
+		final List<PendingWrites<?, ?>> sorted = new ArrayList<PendingWrites<?, ?>>(order.size());
+		final Map<WriteableController<?, ?>, Boolean> visited =
+			new IdentityHashMap<WriteableController<?, ?>, Boolean>();
+
+		for (PendingWrites<?, ?> writes : order) {
+			visit(writes.controller, visited, sorted);
+		}
+
+		return sorted;
+
+	}
+
+	/**
+	 * Depth-first visit that adds a controller after all its dependencies. A controller is mapped
+	 * to <code>false</code> while it is being visited and to <code>true</code> afterwards.
+	 */
+	private void visit(WriteableController<?, ?> controller,
+			Map<WriteableController<?, ?>, Boolean> visited, List<PendingWrites<?, ?>> sorted) {
+
+		final Boolean state = visited.get(controller);
+
+		if (Boolean.TRUE.equals(state)) {
+			return;
+		}
+		else if (state != null) {
+			throw new IllegalStateException("Cyclic dependency involving controller " + controller);
+		}
+
+		visited.put(controller, Boolean.FALSE);
+
+		final List<WriteableController<?, ?>> list = dependencies.get(controller);
+
+		if (list != null) {
+
+			for (WriteableController<?, ?> dependency : list) {
+				visit(dependency, visited, sorted);
+			}
+
+		}
+
+		visited.put(controller, Boolean.TRUE);
+
+		final PendingWrites<?, ?> writes = pending.get(controller);
+
+		if (writes != null) {
+			sorted.add(writes);
+		}
+
+	}
+
+	/**
+	 * Kinds of recorded operations.
+	 */
+	private static enum Kind {
+
+		SAVE, UPDATE, DELETE, DELETE_BY_ID;
+
+		public boolean isDelete() {
+			return this == DELETE || this == DELETE_BY_ID;
+		}
+
+	}
+
+	/**
+	 * Operations recorded for a single controller, in recording order. Executed operations are
+	 * skipped by advancing <code>next</code>. Counters are incremented in the
+	 * <code>{batches, roundTrips}</code> array passed to {@link #flush(boolean, int[])}.
+	 */
+	private static final class PendingWrites<T, K extends Serializable> {
+
+		private final WriteableController<T, K> controller;
+
+		private final List<Kind> kinds = new ArrayList<Kind>();
+
+		private final List<Object> values = new ArrayList<Object>();
+
+		private int next;
+
+		public PendingWrites(WriteableController<T, K> controller) {
+			this.controller = controller;
+		}
+
+		public void add(Kind kind, Object value) {
+			kinds.add(kind);
+			values.add(value);
+		}
+
+		public int size() {
+			return kinds.size() - next;
+		}
+
+		/**
+		 * Executes the batches at the head of the queue while they are deletes or while they are
+		 * not, depending on the <code>deletes</code> parameter.
+		 */
+		public void flush(boolean deletes, int[] counters) {
+
+			final BatchWriteableController<T, K> batch = getBatchController();
+
+			while (next < kinds.size() && kinds.get(next).isDelete() == deletes) {
+
+				final Kind kind = kinds.get(next);
+				int end = next + 1;
+
+				while (end < kinds.size() && kinds.get(end) == kind) {
+					end++;
+				}
+
+				counters[0]++;
+
+				if (batch != null) {
+					executeAll(batch, kind, new ArrayList<Object>(values.subList(next, end)));
+					counters[1]++;
+					next = end;
+				}
+				else {
+
+					while (next < end) {
+						execute(kind, values.get(next));
+						counters[1]++;
+						next++;
+					}
+
+				}
+
+			}
+
+		}
+
+		@SuppressWarnings("unchecked")
+		private void execute(Kind kind, Object value) {
+
+			switch (kind) {
+
+				case SAVE:
+					controller.save((T) value);
+					break;
+
+				case UPDATE:
+					controller.update((T) value);
+					break;
+
+				case DELETE:
+					controller.delete((T) value);
+					break;
+
+				default:
+					controller.delete((K) value);
+
+			}
+
+		}
+
+		@SuppressWarnings("unchecked")
+		private void executeAll(BatchWriteableController<T, K> batch, Kind kind, List<?> run) {
+
+			switch (kind) {
+
+				case SAVE:
+					batch.saveAll((List<T>) run);
+					break;
+
+				case UPDATE:
+					batch.updateAll((List<T>) run);
+					break;
+
+				case DELETE:
+					batch.deleteAll((List<T>) run);
+					break;
+
+				default:
+					batch.deleteByIds((List<K>) run);
+
+			}
+
+		}
+
+		/**
+		 * Returns the controller as a {@link BatchWriteableController} if it supports batch writes
+		 * and <code>null</code> otherwise.
+		 */
+		@SuppressWarnings("unchecked")
+		private BatchWriteableController<T, K> getBatchController() {
+
+			if (controller instanceof BatchWriteableController
+					&& ((BatchWriteableController<T, K>) controller).isBatchWriteSupported()) {
+				return (BatchWriteableController<T, K>) controller;
+			}
+
+			return null;
+
+		}
+
+	}
+
+}
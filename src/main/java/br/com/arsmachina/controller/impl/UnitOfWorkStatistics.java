@@ -0,0 +1,89 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+/**
+ * Class that holds the statistics of a {@link UnitOfWork} commit.
+ */
+public final class UnitOfWorkStatistics {
+
+	private final int operations;
+
+	private final int batches;
+
+	private final int roundTrips;
+
+	private final long elapsedNanos;
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param operations an <code>int</code> with the number of recorded operations.
+	 * @param batches an <code>int</code> with the number of groups of operations of the same kind
+	 * on the same controller.
+	 * @param roundTrips an <code>int</code> with the number of controller calls made.
+	 * @param elapsedNanos a <code>long</code> with the commit duration in nanoseconds.
+	 */
+	public UnitOfWorkStatistics(int operations, int batches, int roundTrips, long elapsedNanos) {
+		this.operations = operations;
+		this.batches = batches;
+		this.roundTrips = roundTrips;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * Returns the number of recorded operations.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getOperations() {
+		return operations;
+	}
+
+	/**
+	 * Returns the number of groups of operations of the same kind on the same controller.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getBatches() {
+		return batches;
+	}
+
+	/**
+	 * Returns the number of controller calls made. Each batch sent to a
+	 * {@link br.com.arsmachina.controller.BatchWriteableController} counts as one call.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getRoundTrips() {
+		return roundTrips;
+	}
+
+	/**
+	 * Returns the commit duration in nanoseconds.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "operations=" + operations + ", batches=" + batches + ", roundTrips=" + roundTrips
+				+ ", elapsed=" + (elapsedNanos / 1000) + "us";
+	}
+
+}
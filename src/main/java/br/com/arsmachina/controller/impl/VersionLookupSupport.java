@@ -0,0 +1,50 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+
+import br.com.arsmachina.dao.ReadableDAO;
+
+/**
+ * Interface that can be implemented by {@link ReadableDAO}s that are able to return the current
+ * version of objects without loading them, for example by querying only a version column. When a
+ * controller DAO implements it, the controller conditional read methods use it to tell whether
+ * objects were modified.
+ *
+ * @param <K> the type of the field that represents the entity class' primary key.
+ */
+public interface VersionLookupSupport<K extends Serializable> {
+
+	/**
+	 * Returns the current version of the object with a given primary key value.
+	 *
+	 * @param id a <code>K</code>.
+	 * @return a {@link Serializable} or <code>null</code> if the object does not exist.
+	 */
+	Serializable findVersion(K id);
+
+	/**
+	 * Returns the current versions of the objects with some given primary key values.
+	 *
+	 * @param ids a {@link Collection} of <code>K</code>.
+	 * @return a {@link Map} from primary key value to version. Objects that do not exist are not
+	 * included.
+	 */
+	Map<K, Serializable> findVersions(Collection<K> ids);
+
+}
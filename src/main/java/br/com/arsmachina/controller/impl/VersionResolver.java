@@ -0,0 +1,35 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+
+/**
+ * Interface that defines how the version of an object is obtained, for example from a version
+ * number or last modification timestamp property. It is used by {@link VersionTracker}.
+ *
+ * @param <T> the entity class.
+ */
+public interface VersionResolver<T> {
+
+	/**
+	 * Returns the version of a given object.
+	 *
+	 * @param object a <code>T</code>. It cannot be <code>null</code>.
+	 * @return a {@link Serializable} or <code>null</code> if the object has no version yet.
+	 */
+	Serializable getVersion(T object);
+
+}
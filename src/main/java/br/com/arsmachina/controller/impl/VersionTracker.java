@@ -0,0 +1,344 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that keeps the last known version of objects, indexed by primary key value, so
+ * conditional reads can tell whether an object was modified without loading it. Controllers
+ * record the versions of the objects they load and forget the ones they write, as ORMs usually
+ * change versions only when changes are flushed.
+ * <p>
+ * Reads racing with writes must not record the versions they loaded, which may be already stale.
+ * Callers take a generation through {@link #getGeneration()} before loading objects and pass it
+ * to {@link #record(Object, long)}, which records nothing if a version was forgotten in the
+ * meantime. Forgetting the version of an object also keeps the version it had when it was
+ * written, which is ignored by later recordings, so objects read again before the write is
+ * flushed do not bring it back.
+ * </p>
+ * <p>
+ * At most {@link #getMaximumSize()} versions are kept. When a version is recorded and this limit
+ * was reached, all versions are forgotten, so the next conditional reads load their objects.
+ * The known versions are only accurate if all writes go through controllers sharing the same
+ * instance. Otherwise, the DAO should implement {@link VersionLookupSupport}, which takes
+ * precedence. Instances of this class are thread-safe and may be shared by the readable and
+ * writeable parts of a controller.
+ * </p>
+ *
+ * @param <T> the entity class.
+ * @param <K> the type of the field that represents the entity class' primary key.
+ */
+public class VersionTracker<T, K extends Serializable> {
+
+	/**
+	 * Default maximum number of versions kept.
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 100000;
+
+	/**
+	 * Known versions and {@link Stale} markers of forgotten ones.
+	 */
+	private final ConcurrentMap<K, Serializable> versions = new ConcurrentHashMap<K, Serializable>();
+
+	private final AtomicLong generation = new AtomicLong();
+
+	private final IdentifierResolver<T, K> identifierResolver;
+
+	private final VersionResolver<T> versionResolver;
+
+	private volatile int maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param identifierResolver an {@link IdentifierResolver}. It cannot be <code>null</code>.
+	 * @param versionResolver a {@link VersionResolver}. It cannot be <code>null</code>.
+	 */
+	public VersionTracker(IdentifierResolver<T, K> identifierResolver,
+			VersionResolver<T> versionResolver) {
+
+		if (identifierResolver == null) {
+			throw new IllegalArgumentException("Parameter identifierResolver cannot be null");
+		}
+
+		if (versionResolver == null) {
+			throw new IllegalArgumentException("Parameter versionResolver cannot be null");
+		}
+
+		this.identifierResolver = identifierResolver;
+		this.versionResolver = versionResolver;
+
+	}
+
+	/**
+	 * Returns the {@link IdentifierResolver} used by this tracker.
+	 *
+	 * @return an {@link IdentifierResolver}.
+	 */
+	public IdentifierResolver<T, K> getIdentifierResolver() {
+		return identifierResolver;
+	}
+
+	/**
+	 * Returns the maximum number of versions kept.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Sets the maximum number of versions kept. The default value is
+	 * {@link #DEFAULT_MAXIMUM_SIZE}.
+	 *
+	 * @param maximumSize an <code>int</code>. It must be positive.
+	 */
+	public void setMaximumSize(int maximumSize) {
+
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("Parameter maximumSize must be positive");
+		}
+
+		this.maximumSize = maximumSize;
+
+	}
+
+	/**
+	 * Returns the version of a given object, as returned by the {@link VersionResolver}.
+	 *
+	 * @param object a <code>T</code>. It cannot be <code>null</code>.
+	 * @return a {@link Serializable} or <code>null</code>.
+	 */
+	public Serializable versionOf(T object) {
+		return versionResolver.getVersion(object);
+	}
+
+	/**
+	 * Returns the current generation, which changes every time a version is forgotten. It must
+	 * be taken before loading the objects passed to {@link #record(Object, long)}.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Records the version of an object just loaded from the object store, replacing the previous
+	 * one. It is the same as invoking {@link #record(Object, long)} with the current generation,
+	 * so it should only be used when no write can happen concurrently.
+	 *
+	 * @param object a <code>T</code>. If it is <code>null</code>, nothing is done.
+	 */
+	public void record(T object) {
+		record(object, generation.get());
+	}
+
+	/**
+	 * Records the version of an object, replacing the previous one, unless a version was
+	 * forgotten since <code>generation</code> was taken or the object still has the version it
+	 * had when it was last written.
+	 *
+	 * @param object a <code>T</code>. If it is <code>null</code>, nothing is done.
+	 * @param generation a <code>long</code> returned by {@link #getGeneration()} before the object
+	 * was loaded.
+	 */
+	public void record(T object, long generation) {
+
+		final K id = object != null ? identifierResolver.getId(object) : null;
+
+		if (id == null) {
+			return;
+		}
+
+		final Serializable version = versionResolver.getVersion(object);
+
+		if (version == null) {
+
+			final Serializable current = versions.get(id);
+
+			if (current != null && !(current instanceof Stale)) {
+				versions.remove(id, current);
+			}
+
+			return;
+
+		}
+
+		if (this.generation.get() != generation) {
+			return;
+		}
+
+		if (versions.size() >= maximumSize && !versions.containsKey(id)) {
+			versions.clear();
+		}
+
+		Serializable current;
+
+		do {
+
+			current = versions.get(id);
+
+			if (current instanceof Stale && ((Stale) current).version.equals(version)) {
+				return;
+			}
+
+		}
+		while (current == null ? versions.putIfAbsent(id, version) != null : !versions.replace(id,
+				current, version));
+
+		// forget() changes the generation before changing versions, so a version forgotten
+		// after the check above either overwrites this one or is restored here
+		if (this.generation.get() != generation) {
+
+			if (current == null) {
+				versions.remove(id, version);
+			}
+			else {
+				versions.replace(id, version, current);
+			}
+
+		}
+
+	}
+
+	/**
+	 * Records the versions of some objects.
+	 *
+	 * @param objects a {@link Collection} of <code>T</code>. It may be <code>null</code>.
+	 */
+	public void recordAll(Collection<? extends T> objects) {
+		recordAll(objects, generation.get());
+	}
+
+	/**
+	 * Records the versions of some objects through {@link #record(Object, long)}.
+	 *
+	 * @param objects a {@link Collection} of <code>T</code>. It may be <code>null</code>.
+	 * @param generation a <code>long</code> returned by {@link #getGeneration()} before the objects
+	 * were loaded.
+	 */
+	public void recordAll(Collection<? extends T> objects, long generation) {
+
+		if (objects != null) {
+
+			for (T object : objects) {
+				record(object, generation);
+			}
+
+		}
+
+	}
+
+	/**
+	 * Forgets the version of an object just written. Its current version, which is the one it
+	 * had before the write is flushed, is not recorded again.
+	 *
+	 * @param object a <code>T</code>.
+	 */
+	public void forget(T object) {
+
+		final K id = object != null ? identifierResolver.getId(object) : null;
+
+		if (id != null) {
+
+			final Serializable version = versionResolver.getVersion(object);
+			generation.incrementAndGet();
+
+			if (version != null) {
+
+				if (versions.size() >= maximumSize && !versions.containsKey(id)) {
+					versions.clear();
+				}
+
+				versions.put(id, new Stale(version));
+
+			}
+			else {
+				versions.remove(id);
+			}
+
+		}
+
+	}
+
+	/**
+	 * Forgets the version of the object with a given primary key value.
+	 *
+	 * @param id a <code>K</code>.
+	 */
+	public void forgetId(K id) {
+
+		if (id != null) {
+			generation.incrementAndGet();
+			versions.remove(id);
+		}
+
+	}
+
+	/**
+	 * Forgets all versions.
+	 */
+	public void clear() {
+		generation.incrementAndGet();
+		versions.clear();
+	}
+
+	/**
+	 * Returns the last known version of the object with a given primary key value.
+	 *
+	 * @param id a <code>K</code>.
+	 * @return a {@link Serializable} or <code>null</code> if it is not known.
+	 */
+	public Serializable getVersion(K id) {
+
+		final Serializable version = id != null ? versions.get(id) : null;
+
+		return version instanceof Stale ? null : version;
+
+	}
+
+	/**
+	 * Returns the number of kept versions, including the ones of objects written and not read
+	 * again since then.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int size() {
+		return versions.size();
+	}
+
+	/**
+	 * Version of an object when it was last written, which must not be recorded again.
+	 */
+	private static final class Stale implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Serializable version;
+
+		public Stale(Serializable version) {
+			this.version = version;
+		}
+
+	}
+
+}
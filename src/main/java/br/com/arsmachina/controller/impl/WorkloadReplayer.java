@@ -0,0 +1,435 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import br.com.arsmachina.controller.Controller;
+
+/**
+ * Class that replays the controller calls recorded by {@link RecordingController} against other
+ * controllers, usually {@link ControllerImpl}s backed by {@link InMemoryDAO}s, and measures their
+ * throughput and latency.
+ * <p>
+ * Calls are dispatched at their recorded times, relative to the first one and divided by the
+ * speed set through {@link #setSpeed(double)}, to a pool of worker threads. Dispatching does not
+ * wait for previous calls to finish, and latencies are measured from the time each call was due,
+ * so the time calls spend waiting for a worker thread when the target controllers fall behind is
+ * part of their latency. When the speed is infinite, there is no schedule: calls are dispatched
+ * as worker threads become free and latencies are measured from the time they start running.
+ * As object state is not recorded,
+ * <code>save()</code> and <code>findByExample()</code> calls are skipped,
+ * <code>update()</code> and <code>saveOrUpdate()</code> calls are replayed on the object loaded
+ * by <code>findById()</code>, <code>refresh()</code> and <code>refreshAll()</code> calls are
+ * replayed as <code>findById()</code> and <code>findByIds()</code> calls and conditional reads
+ * are replayed without a known version. Calls that need a primary key value that was not
+ * recorded are skipped.
+ * </p>
+ * <p>
+ * Only reads are replayed by default. <code>update()</code>, <code>saveOrUpdate()</code> and
+ * <code>delete()</code> calls really change the objects of the target controllers, so they are
+ * skipped unless enabled through {@link #setReplayWrites(boolean)}, which should only be done
+ * against disposable object stores, such as {@link InMemoryDAO}s.
+ * </p>
+ * <p>
+ * Calls are read from the trace and sorted by start time before being replayed, so the whole
+ * trace is kept in memory.
+ * </p>
+ */
+public class WorkloadReplayer {
+
+	/**
+	 * Number of latency samples kept per method.
+	 */
+	private static final int WINDOW_SIZE = 64 * 1024;
+
+	/**
+	 * Maximum number of calls dispatched but not finished per worker thread when the speed is
+	 * infinite.
+	 */
+	private static final int MAXIMUM_PENDING_CALLS = 16;
+
+	private final Map<String, Controller<?, ?>> controllers = new ConcurrentHashMap<String, Controller<?, ?>>();
+
+	private volatile int threads = 4;
+
+	private volatile double speed = 1;
+
+	private volatile boolean replayWrites;
+
+	/**
+	 * Registers the controller that receives the calls recorded for a given entity class.
+	 *
+	 * @param entityClass a {@link Class}. It cannot be <code>null</code>.
+	 * @param controller a {@link Controller}. It cannot be <code>null</code>.
+	 */
+	public <T, K extends Serializable> void register(Class<T> entityClass,
+			Controller<T, K> controller) {
+
+		if (entityClass == null) {
+			throw new IllegalArgumentException("Parameter entityClass cannot be null");
+		}
+
+		if (controller == null) {
+			throw new IllegalArgumentException("Parameter controller cannot be null");
+		}
+
+		controllers.put(entityClass.getName(), controller);
+
+	}
+
+	/**
+	 * Sets the number of worker threads. The default value is 4.
+	 *
+	 * @param threads an <code>int</code>. It must be positive.
+	 */
+	public void setThreads(int threads) {
+
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Parameter threads must be positive");
+		}
+
+		this.threads = threads;
+
+	}
+
+	/**
+	 * Sets the replay speed relative to the recorded one. The default value is 1, which replays
+	 * calls at their recorded rate. {@link Double#POSITIVE_INFINITY} replays them as fast as
+	 * possible.
+	 *
+	 * @param speed a <code>double</code>. It must be positive.
+	 */
+	public void setSpeed(double speed) {
+
+		if (!(speed > 0)) {
+			throw new IllegalArgumentException("Parameter speed must be positive");
+		}
+
+		this.speed = speed;
+
+	}
+
+	/**
+	 * Sets whether <code>update()</code>, <code>saveOrUpdate()</code> and <code>delete()</code>
+	 * calls are replayed. They are skipped by default, as replaying them changes the objects of the
+	 * target controllers.
+	 *
+	 * @param replayWrites a <code>boolean</code>.
+	 */
+	public void setReplayWrites(boolean replayWrites) {
+		this.replayWrites = replayWrites;
+	}
+
+	/**
+	 * Replays the calls recorded in a trace file.
+	 *
+	 * @param file a {@link File}. It cannot be <code>null</code>.
+	 * @return a {@link ReplayReport}.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public ReplayReport replay(File file) throws IOException {
+
+		final TraceReader reader = new TraceReader(file);
+
+		try {
+			return replay(reader);
+		}
+		finally {
+			reader.close();
+		}
+
+	}
+
+	/**
+	 * Replays the remaining calls of a {@link TraceReader}, in the order they started.
+	 *
+	 * @param reader a {@link TraceReader}. It cannot be <code>null</code>.
+	 * @return a {@link ReplayReport}.
+	 */
+	public ReplayReport replay(TraceReader reader) {
+
+		if (reader == null) {
+			throw new IllegalArgumentException("Parameter reader cannot be null");
+		}
+
+		final int threads = this.threads;
+		final double speed = this.speed;
+		final boolean replayWrites = this.replayWrites;
+		final List<TraceEvent> events = reader.readAll();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final boolean scheduled = !Double.isInfinite(speed);
+		final Semaphore pendingCalls = scheduled ? null : new Semaphore(threads
+				* MAXIMUM_PENDING_CALLS);
+		final long origin = events.isEmpty() ? 0 : events.get(0).getStartTime();
+		final Map<TraceMethod, MethodRecorder> recorders = new EnumMap<TraceMethod, MethodRecorder>(
+				TraceMethod.class);
+
+		for (TraceMethod method : TraceMethod.values()) {
+			recorders.put(method, new MethodRecorder());
+		}
+
+		long skippedCount = 0;
+		final long start = System.nanoTime();
+
+		try {
+
+			for (TraceEvent event : events) {
+
+				final Controller<?, ?> controller = controllers.get(event.getEntityName());
+
+				if (controller == null || !isReplayable(event, replayWrites)) {
+					skippedCount++;
+					continue;
+				}
+
+				final long dueTime;
+
+				if (scheduled) {
+					dueTime = start + (long) ((event.getStartTime() - origin) / speed);
+					TimeUnit.NANOSECONDS.sleep(dueTime - System.nanoTime());
+				}
+				else {
+					dueTime = 0;
+					pendingCalls.acquire();
+				}
+
+				final TraceEvent call = event;
+				final MethodRecorder recorder = recorders.get(event.getMethod());
+
+				executor.execute(new Runnable() {
+
+					public void run() {
+
+						final long callStart = scheduled ? dueTime : System.nanoTime();
+						boolean failed = true;
+
+						try {
+							invoke(controller, call);
+							failed = false;
+						}
+						catch (RuntimeException e) {
+							// failures are counted in the report
+						}
+						finally {
+
+							recorder.record(System.nanoTime() - callStart, failed);
+
+							if (pendingCalls != null) {
+								pendingCalls.release();
+							}
+
+						}
+
+					}
+
+				});
+
+			}
+
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+		}
+		catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while replaying calls", e);
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		final long elapsedTime = System.nanoTime() - start;
+		final Map<TraceMethod, ReplayReport.MethodStatistics> methods = new LinkedHashMap<TraceMethod, ReplayReport.MethodStatistics>();
+
+		for (Map.Entry<TraceMethod, MethodRecorder> entry : recorders.entrySet()) {
+
+			if (entry.getValue().count.get() > 0) {
+				methods.put(entry.getKey(), entry.getValue().toStatistics());
+			}
+
+		}
+
+		return new ReplayReport(elapsedTime, skippedCount, methods);
+
+	}
+
+	private static boolean isReplayable(TraceEvent event, boolean replayWrites) {
+
+		switch (event.getMethod()) {
+
+			case SAVE:
+			case FIND_BY_EXAMPLE:
+				return false;
+
+			case UPDATE:
+			case SAVE_OR_UPDATE:
+			case DELETE:
+			case DELETE_BY_ID:
+				return replayWrites && !event.getIds().isEmpty();
+
+			case FIND_BY_ID:
+			case REFRESH:
+			case FIND_BY_ID_IF_CHANGED:
+			case FIND_BY_IDS:
+			case REFRESH_ALL:
+				return !event.getIds().isEmpty();
+
+			default:
+				return true;
+
+		}
+
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void invoke(Controller<?, ?> untyped, TraceEvent event) {
+
+		final Controller<Object, Serializable> controller = (Controller<Object, Serializable>) untyped;
+		final List<Serializable> ids = event.getIds();
+		final Serializable id = ids.isEmpty() ? null : ids.get(0);
+
+		switch (event.getMethod()) {
+
+			case COUNT_ALL:
+				controller.countAll();
+				break;
+
+			case FIND_ALL:
+				controller.findAll();
+				break;
+
+			case FIND_ALL_PAGED:
+				controller.findAll(event.getFirstResult(), event.getMaxResults(),
+						event.getSortCriteria());
+				break;
+
+			case FIND_PAGE:
+				controller.findPage(event.getFirstResult(), event.getMaxResults(),
+						event.getSortCriteria());
+				break;
+
+			case FIND_PAGE_WITHOUT_COUNT:
+				controller.findPage(event.getFirstResult(), event.getMaxResults(), false,
+						event.getSortCriteria());
+				break;
+
+			case FIND_BY_ID:
+			case REFRESH:
+				controller.findById(id);
+				break;
+
+			case FIND_BY_IDS:
+			case REFRESH_ALL:
+				controller.findByIds(Identifiers.toArray(ids));
+				break;
+
+			case FIND_BY_ID_IF_CHANGED:
+				controller.findByIdIfChanged(id, null);
+				break;
+
+			case FIND_BY_IDS_IF_CHANGED:
+
+				final Map<Serializable, Serializable> versions = new LinkedHashMap<Serializable, Serializable>();
+
+				for (Serializable key : ids) {
+					versions.put(key, null);
+				}
+
+				controller.findByIdsIfChanged(versions);
+				break;
+
+			case UPDATE:
+			case SAVE_OR_UPDATE:
+
+				final Object object = controller.findById(id);
+
+				if (object != null) {
+
+					if (event.getMethod() == TraceMethod.UPDATE) {
+						controller.update(object);
+					}
+					else {
+						controller.saveOrUpdate(object);
+					}
+
+				}
+
+				break;
+
+			case DELETE:
+			case DELETE_BY_ID:
+				controller.delete(id);
+				break;
+
+			default:
+				throw new IllegalArgumentException("Method cannot be replayed: " + event.getMethod());
+
+		}
+
+	}
+
+	/**
+	 * Latencies and counters of the replayed calls of a method.
+	 */
+	private static final class MethodRecorder {
+
+		final LatencyWindow latencies = new LatencyWindow(WINDOW_SIZE);
+
+		final AtomicLong count = new AtomicLong();
+
+		final AtomicLong failedCount = new AtomicLong();
+
+		final AtomicLong maximum = new AtomicLong();
+
+		void record(long nanos, boolean failed) {
+
+			latencies.record(nanos);
+			count.incrementAndGet();
+
+			if (failed) {
+				failedCount.incrementAndGet();
+			}
+
+			long current = maximum.get();
+
+			while (nanos > current && !maximum.compareAndSet(current, nanos)) {
+				current = maximum.get();
+			}
+
+		}
+
+		ReplayReport.MethodStatistics toStatistics() {
+			return new ReplayReport.MethodStatistics(count.get(), failedCount.get(),
+					latencies.percentile(0.5), latencies.percentile(0.9),
+					latencies.percentile(0.99), maximum.get());
+		}
+
+	}
+
+}
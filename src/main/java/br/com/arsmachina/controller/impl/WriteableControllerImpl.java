@@ -15,23 +15,31 @@
 package br.com.arsmachina.controller.impl;
 
 import java.io.Serializable;
+import java.util.Collection;
 
+import br.com.arsmachina.controller.BatchWriteableController;
 import br.com.arsmachina.controller.WriteableController;
 import br.com.arsmachina.dao.WriteableDAO;
 
 /**
  * Abstract class that implements the {@link WriteableController} interface by delegating all method
- * calls to a {@link WriteableDAO} passed through its constructor.
+ * calls to a {@link WriteableDAO} passed through its constructor. The
+ * {@link BatchWriteableController} methods write all objects in a single DAO call if the DAO
+ * implements {@link BatchWriteSupport} and one by one otherwise.
  * 
  * @author Thiago H. de Paula Figueiredo
  * @param <T> the entity class related to this controller.
  * @param <K> the type of the field that represents the entity class' primary key.
  */
 public abstract class WriteableControllerImpl<T, K extends Serializable> implements
-		WriteableController<T, K> {
+		BatchWriteableController<T, K> {
 
 	private WriteableDAO<T, K> dao;
 
+	private volatile ChangeTracker<T> changeTracker;
+
+	private volatile VersionTracker<T, K> versionTracker;
+
 	/**
 	 * Single constructor of this class.
 	 * 
@@ -47,6 +55,45 @@ public abstract class WriteableControllerImpl<T, K extends Serializable> impleme
 
 	}
 
+	/**
+	 * Returns the {@link ChangeTracker} used to skip updates of unchanged objects.
+	 * 
+	 * @return a {@link ChangeTracker} or <code>null</code> if change tracking is disabled.
+	 */
+	public ChangeTracker<T> getChangeTracker() {
+		return changeTracker;
+	}
+
+	/**
+	 * Sets the {@link ChangeTracker} used to skip updates of unchanged objects. It is usually
+	 * shared with the {@link ReadableControllerImpl} that loads the objects.
+	 * 
+	 * @param changeTracker a {@link ChangeTracker} or <code>null</code> to disable change tracking.
+	 */
+	public void setChangeTracker(ChangeTracker<T> changeTracker) {
+		this.changeTracker = changeTracker;
+	}
+
+	/**
+	 * Returns the {@link VersionTracker} that records the versions of written objects.
+	 * 
+	 * @return a {@link VersionTracker} or <code>null</code>.
+	 */
+	public VersionTracker<T, K> getVersionTracker() {
+		return versionTracker;
+	}
+
+	/**
+	 * Sets the {@link VersionTracker} that forgets the versions of written objects, as ORMs
+	 * usually change versions only when changes are flushed. It is usually shared with the
+	 * {@link ReadableControllerImpl} that records versions on reads and answers conditional reads.
+	 * 
+	 * @param versionTracker a {@link VersionTracker} or <code>null</code>.
+	 */
+	public void setVersionTracker(VersionTracker<T, K> versionTracker) {
+		this.versionTracker = versionTracker;
+	}
+
 	/**
 	 * Invokes <code>dao.isPersistent()<code>.
 	 * @param object
@@ -64,6 +111,7 @@ public abstract class WriteableControllerImpl<T, K extends Serializable> impleme
 	 */
 	public void delete(K id) {
 		dao.delete(id);
+		deleted(id);
 	}
 
 	/**
@@ -73,6 +121,7 @@ public abstract class WriteableControllerImpl<T, K extends Serializable> impleme
 	 */
 	public void delete(T object) {
 		dao.delete(object);
+		deleted(object);
 	}
 
 	/**
@@ -82,6 +131,7 @@ public abstract class WriteableControllerImpl<T, K extends Serializable> impleme
 	 */
 	public void save(T object) {
 		dao.save(object);
+		saved(object);
 	}
 
 	/**
@@ -104,12 +154,152 @@ public abstract class WriteableControllerImpl<T, K extends Serializable> impleme
 	}
 
 	/**
-	 * Invokes <code>dao.update()<code>.
+	 * Invokes <code>dao.update()<code>. If a {@link ChangeTracker} is set, the DAO is not invoked
+	 * for objects that were not changed since they were loaded.
 	 * @param object
 	 * @see br.com.arsmachina.dao.WriteableDAO#update(java.lang.Object)
+	 * @see ChangeTracker#update(Object, WriteableDAO)
 	 */
 	public T update(T object) {
-		return dao.update(object);
+
+		final ChangeTracker<T> changeTracker = this.changeTracker;
+		final T result = changeTracker != null ? changeTracker.update(object, dao)
+				: dao.update(object);
+
+		updated(result);
+
+		return result;
+
+	}
+
+	/**
+	 * Tells whether the DAO implements {@link BatchWriteSupport}.
+	 * @return a <code>boolean</code>.
+	 * @see br.com.arsmachina.controller.BatchWriteableController#isBatchWriteSupported()
+	 */
+	public boolean isBatchWriteSupported() {
+		return dao instanceof BatchWriteSupport;
+	}
+
+	/**
+	 * Invokes <code>dao.saveAll()</code> if the DAO implements {@link BatchWriteSupport} and
+	 * {@link #save(Object)} for each object otherwise.
+	 * @param objects
+	 * @see br.com.arsmachina.controller.BatchWriteableController#saveAll(java.util.Collection)
+	 */
+	public void saveAll(Collection<T> objects) {
+
+		final BatchWriteSupport<T, K> batch = getBatchWriteSupport(objects);
+
+		if (batch == null) {
+
+			for (T object : objects) {
+				save(object);
+			}
+
+			return;
+
+		}
+
+		batch.saveAll(objects);
+
+		for (T object : objects) {
+			saved(object);
+		}
+
+	}
+
+	/**
+	 * Invokes <code>dao.updateAll()</code> if the DAO implements {@link BatchWriteSupport} and
+	 * {@link #update(Object)} for each object otherwise. If a {@link ChangeTracker} is set,
+	 * unchanged objects are not passed to the DAO.
+	 * @param objects
+	 * @see br.com.arsmachina.controller.BatchWriteableController#updateAll(java.util.Collection)
+	 * @see ChangeTracker#updateAll(Collection, BatchWriteSupport)
+	 */
+	public void updateAll(Collection<T> objects) {
+
+		final BatchWriteSupport<T, K> batch = getBatchWriteSupport(objects);
+
+		if (batch == null) {
+
+			for (T object : objects) {
+				update(object);
+			}
+
+			return;
+
+		}
+
+		final ChangeTracker<T> changeTracker = this.changeTracker;
+
+		if (changeTracker != null) {
+			changeTracker.updateAll(objects, batch);
+		}
+		else {
+			batch.updateAll(objects);
+		}
+
+		for (T object : objects) {
+			updated(object);
+		}
+
+	}
+
+	/**
+	 * Invokes <code>dao.deleteAll()</code> if the DAO implements {@link BatchWriteSupport} and
+	 * {@link #delete(Object)} for each object otherwise.
+	 * @param objects
+	 * @see br.com.arsmachina.controller.BatchWriteableController#deleteAll(java.util.Collection)
+	 */
+	public void deleteAll(Collection<T> objects) {
+
+		final BatchWriteSupport<T, K> batch = getBatchWriteSupport(objects);
+
+		if (batch == null) {
+
+			for (T object : objects) {
+				delete(object);
+			}
+
+			return;
+
+		}
+
+		batch.deleteAll(objects);
+
+		for (T object : objects) {
+			deleted(object);
+		}
+
+	}
+
+	/**
+	 * Invokes <code>dao.deleteByIds()</code> if the DAO implements {@link BatchWriteSupport} and
+	 * {@link #delete(Serializable)} for each primary key value otherwise.
+	 * @param ids
+	 * @see br.com.arsmachina.controller.BatchWriteableController#deleteByIds(java.util.Collection)
+	 */
+	public void deleteByIds(Collection<K> ids) {
+
+		final BatchWriteSupport<T, K> batch = getBatchWriteSupport(ids);
+
+		if (batch == null) {
+
+			for (K id : ids) {
+				delete(id);
+			}
+
+			return;
+
+		}
+
+		batch.deleteByIds(ids);
+
+		for (K id : ids) {
+			deleted(id);
+		}
+
 	}
 
 	/**
@@ -118,7 +308,73 @@ public abstract class WriteableControllerImpl<T, K extends Serializable> impleme
 	 * @see br.com.arsmachina.dao.WriteableDAO#evict(java.lang.Object)
 	 */
 	public void evict(T object) {
+
 		dao.evict(object);
+
+		final ChangeTracker<T> changeTracker = this.changeTracker;
+
+		if (changeTracker != null) {
+			changeTracker.untrack(object);
+		}
+
+	}
+
+	@SuppressWarnings("unchecked")
+	private BatchWriteSupport<T, K> getBatchWriteSupport(Collection<?> values) {
+
+		if (values == null) {
+			throw new IllegalArgumentException("Parameter objects cannot be null");
+		}
+
+		return dao instanceof BatchWriteSupport ? (BatchWriteSupport<T, K>) dao : null;
+
+	}
+
+	private void saved(T object) {
+
+		final ChangeTracker<T> changeTracker = this.changeTracker;
+
+		if (changeTracker != null) {
+			changeTracker.track(object);
+		}
+
+		updated(object);
+
+	}
+
+	private void updated(T object) {
+
+		final VersionTracker<T, K> versionTracker = this.versionTracker;
+
+		if (versionTracker != null) {
+			versionTracker.forget(object);
+		}
+
+	}
+
+	private void deleted(T object) {
+
+		final ChangeTracker<T> changeTracker = this.changeTracker;
+		final VersionTracker<T, K> versionTracker = this.versionTracker;
+
+		if (changeTracker != null) {
+			changeTracker.untrack(object);
+		}
+
+		if (versionTracker != null) {
+			versionTracker.forget(object);
+		}
+
+	}
+
+	private void deleted(K id) {
+
+		final VersionTracker<T, K> versionTracker = this.versionTracker;
+
+		if (versionTracker != null) {
+			versionTracker.forgetId(id);
+		}
+
 	}
 
 }
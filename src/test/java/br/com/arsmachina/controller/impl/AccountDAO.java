@@ -0,0 +1,113 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link InMemoryDAO} of {@link Account}s that declares <code>findByIds()</code> with a concrete
+ * primary key type, as DAO implementations usually do, and counts its calls. Passing it a
+ * <code>Serializable[]</code> throws a {@link ClassCastException}.
+ */
+public class AccountDAO extends InMemoryDAO<AccountDAO.Account, Long> {
+
+	public static final IdentifierResolver<Account, Long> RESOLVER =
+		new IdentifierResolver<Account, Long>() {
+
+			public Long getId(Account object) {
+				return object.getId();
+			}
+
+		};
+
+	private final AtomicInteger findByIdsCount = new AtomicInteger();
+
+	public AccountDAO() {
+		super(Account.class, RESOLVER);
+	}
+
+	/**
+	 * Saves accounts with primary key values from 1 to <code>count</code>.
+	 */
+	public AccountDAO(int count) {
+
+		this();
+
+		for (long id = 1; id <= count; id++) {
+			save(new Account(id, "account " + id));
+		}
+
+	}
+
+	@Override
+	public List<Account> findByIds(Long... ids) {
+		findByIdsCount.incrementAndGet();
+		return super.findByIds(ids);
+	}
+
+	public int getFindByIdsCount() {
+		return findByIdsCount.get();
+	}
+
+	public static class Account {
+
+		private Long id;
+
+		private String name;
+
+		private List<String> tags = new ArrayList<String>();
+
+		public Account() {
+		}
+
+		public Account(Long id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+
+		public Long getId() {
+			return id;
+		}
+
+		public void setId(Long id) {
+			this.id = id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public List<String> getTags() {
+			return tags;
+		}
+
+		public void setTags(List<String> tags) {
+			this.tags = tags;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+
+	}
+
+}
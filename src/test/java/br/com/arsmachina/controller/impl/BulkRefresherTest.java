@@ -0,0 +1,149 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.controller.impl.AccountDAO.Account;
+
+/**
+ * Test class for {@link BulkRefresher}.
+ */
+public class BulkRefresherTest {
+
+	private AccountDAO dao;
+
+	@SuppressWarnings("unused")
+	@BeforeMethod
+	private void setUp() {
+		dao = new AccountDAO(3);
+	}
+
+	/**
+	 * Tests {@link BulkRefresher#refreshAll(br.com.arsmachina.dao.ReadableDAO, IdentifierResolver,
+	 * java.util.Collection, int)} with detached objects.
+	 */
+	@Test
+	public void refreshAll() {
+
+		final Account first = new Account(1L, "stale");
+		final Account second = new Account(2L, "stale");
+		final Account third = new Account(3L, "stale");
+		final List<String> tags = first.getTags();
+
+		final List<Account> result = BulkRefresher.refreshAll(dao, AccountDAO.RESOLVER, Arrays
+				.asList(first, second, third), 2);
+
+		assert result.equals(Arrays.asList(first, second, third));
+		assert first.getName().equals("account 1");
+		assert third.getName().equals("account 3");
+		assert dao.getFindByIdsCount() == 2;
+
+		// collections are not copied
+		assert first.getTags() == tags;
+
+	}
+
+	/**
+	 * Tests {@link BulkRefresher#refreshAll(br.com.arsmachina.dao.ReadableDAO, IdentifierResolver,
+	 * java.util.Collection, int)} when <code>findByIds()</code> returns the objects themselves.
+	 */
+	@Test
+	public void refreshAll_managed() {
+
+		final Account managed = dao.findById(1L);
+		final Account[] refreshed = new Account[1];
+
+		final AccountDAO managedDAO = new AccountDAO(1) {
+
+			@Override
+			public Account findById(Long id) {
+				return managed;
+			}
+
+			@Override
+			public Account refresh(Account object) {
+				refreshed[0] = object;
+				return object;
+			}
+
+		};
+
+		final List<Account> result = BulkRefresher.refreshAll(managedDAO, AccountDAO.RESOLVER,
+				Arrays.asList(managed), 10);
+
+		assert result.get(0) == managed;
+		assert refreshed[0] == managed;
+
+	}
+
+	/**
+	 * Tests {@link BulkRefresher#refreshAll(br.com.arsmachina.dao.ReadableDAO, IdentifierResolver,
+	 * java.util.Collection, int)} with a DAO implementing {@link PersistenceContextSupport}.
+	 */
+	@Test
+	public void refreshAll_persistenceContext() {
+
+		final ContextDAO contextDAO = new ContextDAO();
+		final Account first = contextDAO.findById(1L);
+		final Account second = contextDAO.findById(2L);
+		final Account detached = new Account(3L, "stale");
+
+		List<Account> result = BulkRefresher.refreshAll(contextDAO, AccountDAO.RESOLVER, Arrays
+				.asList(first, second), 10);
+
+		// managed objects are refreshed directly, without a bulk query
+		assert result.equals(Arrays.asList(first, second));
+		assert contextDAO.getFindByIdsCount() == 0;
+		assert contextDAO.refreshCount == 2;
+
+		result = BulkRefresher.refreshAll(contextDAO, AccountDAO.RESOLVER, Arrays.asList(first,
+				detached), 10);
+
+		assert result.equals(Arrays.asList(first, detached));
+		assert detached.getName().equals("account 3");
+		assert contextDAO.getFindByIdsCount() == 1;
+		assert contextDAO.refreshCount == 3;
+
+	}
+
+	/**
+	 * {@link AccountDAO} whose stored instances are the managed ones.
+	 */
+	private static class ContextDAO extends AccountDAO implements PersistenceContextSupport<Account> {
+
+		private int refreshCount;
+
+		public ContextDAO() {
+			super(3);
+		}
+
+		public boolean isManaged(Account object) {
+			return findById(object.getId()) == object;
+		}
+
+		@Override
+		public Account refresh(Account object) {
+			refreshCount++;
+			return super.refresh(object);
+		}
+
+	}
+
+}
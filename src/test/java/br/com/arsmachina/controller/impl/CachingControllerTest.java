@@ -0,0 +1,313 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.EasyMock;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.controller.Controller;
+import br.com.arsmachina.controller.impl.AccountDAO.Account;
+
+/**
+ * Test class for {@link CachingController}.
+ */
+public class CachingControllerTest {
+
+	final static Integer ID = 1;
+
+	private Controller<String, Integer> delegate;
+
+	private CachingController<String, Integer> controller;
+
+	private long now;
+
+	@SuppressWarnings( { "unused", "unchecked" })
+	@BeforeMethod
+	private void setUp() {
+
+		delegate = EasyMock.createMock(Controller.class);
+
+		final IdentifierResolver<String, Integer> resolver = new IdentifierResolver<String, Integer>() {
+
+			public Integer getId(String object) {
+				return ID;
+			}
+
+		};
+
+		final Executor executor = new Executor() {
+
+			public void execute(Runnable command) {
+				command.run();
+			}
+
+		};
+
+		now = 0;
+		controller = new CachingController<String, Integer>(delegate, resolver, executor) {
+
+			@Override
+			protected long currentTime() {
+				return now;
+			}
+
+		};
+		controller.setTimeToLive(100, TimeUnit.NANOSECONDS);
+
+	}
+
+	/**
+	 * Tests {@link CachingController#findById(Integer)} refreshing ahead.
+	 */
+	@Test
+	public void findById() {
+
+		EasyMock.expect(delegate.findById(ID)).andReturn("loaded");
+		EasyMock.replay(delegate);
+
+		assert controller.findById(ID).equals("loaded");
+		now = 50;
+		assert controller.findById(ID).equals("loaded");
+		EasyMock.verify(delegate);
+
+		assert controller.getMissCount() == 1;
+		assert controller.getHitCount() == 1;
+
+		EasyMock.reset(delegate);
+		EasyMock.expect(delegate.findByIds(ID)).andReturn(Arrays.asList("refreshed"));
+		EasyMock.replay(delegate);
+
+		now = 80;
+		assert controller.findById(ID).equals("loaded");
+		now = 150;
+		assert controller.findById(ID).equals("refreshed");
+		EasyMock.verify(delegate);
+
+		assert controller.getMissCount() == 1;
+		assert controller.getRefreshCount() == 1;
+
+	}
+
+	/**
+	 * Tests that {@link CachingController#update(Object)} removes the object from the cache.
+	 */
+	@Test
+	public void update() {
+
+		EasyMock.expect(delegate.findById(ID)).andReturn("loaded");
+		EasyMock.expect(delegate.update("changed")).andReturn("changed");
+		EasyMock.expect(delegate.findById(ID)).andReturn("changed");
+		EasyMock.replay(delegate);
+
+		assert controller.findById(ID).equals("loaded");
+		assert controller.update("changed").equals("changed");
+		assert controller.findById(ID).equals("changed");
+		EasyMock.verify(delegate);
+
+	}
+
+	/**
+	 * Tests that the least recently used objects are removed when the maximum size is exceeded.
+	 */
+	@Test
+	public void maximumSize() {
+
+		final AccountDAO dao = new AccountDAO(3);
+		final CachingController<Account, Long> accounts = newAccountController(dao);
+		accounts.setMaximumSize(2);
+
+		final Account first = accounts.findById(1L);
+		accounts.findById(2L);
+		assert accounts.findById(1L) == first;
+
+		// 2 is the least recently used object
+		accounts.findById(3L);
+		assert accounts.size() == 2;
+		assert accounts.findById(1L) == first;
+		assert accounts.getMissCount() == 3;
+
+		accounts.findById(2L);
+		assert accounts.getMissCount() == 4;
+
+	}
+
+	/**
+	 * Tests {@link CachingController#findByIds(Integer...)} loading and refreshing objects through a
+	 * DAO declaring <code>findByIds(Long...)</code>.
+	 */
+	@Test
+	public void findByIds_concreteKeyType() {
+
+		final AccountDAO dao = new AccountDAO(3);
+		final CachingController<Account, Long> accounts = newAccountController(dao);
+
+		assert accounts.findByIds(1L, 2L).size() == 2;
+		assert dao.getFindByIdsCount() == 1;
+
+		// the executor refreshes each object as soon as it is scheduled
+		now = 80;
+		assert accounts.findByIds(1L, 2L, 3L).size() == 3;
+		assert dao.getFindByIdsCount() == 4;
+		assert accounts.getRefreshCount() == 2;
+
+	}
+
+	/**
+	 * Tests that a write invalidates only the loads of the object written that are running at the
+	 * time.
+	 */
+	@Test
+	public void findById_concurrentWrite() {
+
+		final Runnable[] write = new Runnable[1];
+		final AccountDAO dao = new AccountDAO(3) {
+
+			@Override
+			public Account findById(Long id) {
+
+				final Account account = super.findById(id);
+
+				// the write runs while the object is being loaded
+				if (write[0] != null) {
+					write[0].run();
+					write[0] = null;
+				}
+
+				return account;
+
+			}
+
+		};
+
+		final CachingController<Account, Long> accounts = newAccountController(dao);
+
+		// writes of other objects do not prevent caching
+		write[0] = new Runnable() {
+
+			public void run() {
+				accounts.update(new Account(3L, "changed"));
+			}
+
+		};
+
+		accounts.findById(1L);
+		assert accounts.size() == 1;
+
+		// writes of the same object do
+		write[0] = new Runnable() {
+
+			public void run() {
+				accounts.update(new Account(2L, "changed"));
+			}
+
+		};
+
+		accounts.findById(2L);
+		assert accounts.size() == 1;
+
+		write[0] = new Runnable() {
+
+			public void run() {
+				accounts.invalidateAll();
+			}
+
+		};
+
+		accounts.findById(3L);
+		assert accounts.size() == 0;
+
+		accounts.findById(2L);
+		assert accounts.findById(2L).getName().equals("changed");
+		assert accounts.getHitCount() == 1;
+		assert accounts.getMissCount() == 4;
+
+	}
+
+	/**
+	 * Tests that failed refreshes are counted and keep the cached objects.
+	 */
+	@Test
+	public void findById_refreshFailure() {
+
+		EasyMock.expect(delegate.findById(ID)).andReturn("loaded");
+		EasyMock.expect(delegate.findByIds(ID)).andThrow(new IllegalStateException("failed"));
+		EasyMock.replay(delegate);
+
+		assert controller.findById(ID).equals("loaded");
+		now = 80;
+		assert controller.findById(ID).equals("loaded");
+		EasyMock.verify(delegate);
+
+		assert controller.getRefreshFailureCount() == 1;
+		assert controller.getRefreshCount() == 0;
+		assert controller.size() == 1;
+
+	}
+
+	/**
+	 * Tests that {@link CachingController#findByIds(Integer...)} rejects <code>null</code> primary
+	 * key values.
+	 */
+	@Test
+	public void findByIds_nullId() {
+
+		EasyMock.replay(delegate);
+
+		boolean ok = false;
+
+		try {
+			controller.findByIds(ID, null);
+		}
+		catch (IllegalArgumentException e) {
+			ok = true;
+		}
+
+		assert ok;
+		EasyMock.verify(delegate);
+
+	}
+
+	private CachingController<Account, Long> newAccountController(AccountDAO dao) {
+
+		final Executor executor = new Executor() {
+
+			public void execute(Runnable command) {
+				command.run();
+			}
+
+		};
+
+		final CachingController<Account, Long> accounts = new CachingController<Account, Long>(
+				new ControllerImpl<Account, Long>(dao) {
+				}, AccountDAO.RESOLVER, executor) {
+
+			@Override
+			protected long currentTime() {
+				return now;
+			}
+
+		};
+		accounts.setTimeToLive(100, TimeUnit.NANOSECONDS);
+
+		return accounts;
+
+	}
+
+}
@@ -0,0 +1,201 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.dao.WriteableDAO;
+
+/**
+ * Test class for {@link ChangeTracker}.
+ */
+public class ChangeTrackerTest {
+
+	private ChangeTracker<Customer> changeTracker;
+
+	@SuppressWarnings("unused")
+	@BeforeMethod
+	private void setUp() {
+		changeTracker = new ChangeTracker<Customer>();
+	}
+
+	/**
+	 * Tests {@link ChangeTracker#getChangedProperties(Object)} with value properties.
+	 */
+	@Test
+	public void getChangedProperties() {
+
+		final Customer customer = new Customer();
+		customer.setName("John");
+		customer.setSince(new Date(1000));
+		customer.setCode(new byte[] { 1, 2 });
+
+		assert changeTracker.getChangedProperties(customer) == null;
+
+		changeTracker.track(customer);
+		assert changeTracker.getChangedProperties(customer).isEmpty();
+
+		// in-place changes of mutable values are detected
+		customer.getSince().setTime(2000);
+		customer.getCode()[0] = 3;
+		assert changeTracker.getChangedProperties(customer).equals(
+				new HashSet<String>(Arrays.asList("since", "code")));
+
+		// equal values are not changes
+		changeTracker.track(customer);
+		customer.setName(new String("John"));
+		assert changeTracker.getChangedProperties(customer).isEmpty();
+
+		customer.setName("Paul");
+		assert changeTracker.getChangedProperties(customer).equals(Collections.singleton("name"));
+
+	}
+
+	/**
+	 * Tests {@link ChangeTracker#getChangedProperties(Object)} with properties that cannot be
+	 * compared.
+	 */
+	@Test
+	public void getChangedProperties_notComparable() {
+
+		final Customer customer = new Customer();
+		customer.setName("John");
+		customer.setAddress(new Address());
+		changeTracker.track(customer);
+
+		// objects without a value type are always considered changed
+		assert changeTracker.getChangedProperties(customer).equals(Collections.singleton("address"));
+
+		// collections are not read, so they are always considered changed
+		final Buyer buyer = new Buyer();
+		buyer.setName("John");
+		buyer.setOrders(Arrays.asList("o1"));
+		changeTracker.track(buyer);
+
+		assert changeTracker.getChangedProperties(buyer).equals(Collections.singleton("orders"));
+		assert buyer.orderReads == 0;
+
+	}
+
+	/**
+	 * Tests that {@link ChangeTracker#update(Object, WriteableDAO)} updates an object whose only
+	 * change is in a collection.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void update_collectionChanged() {
+
+		final WriteableDAO<Customer, Integer> dao = EasyMock.createMock(WriteableDAO.class);
+		final Buyer buyer = new Buyer();
+		buyer.setName("John");
+		buyer.setOrders(new ArrayList<String>(Arrays.asList("o1")));
+		changeTracker.track(buyer);
+
+		EasyMock.expect(dao.update(buyer)).andReturn(buyer);
+		EasyMock.replay(dao);
+
+		buyer.getOrders().add("o2");
+		assert changeTracker.update(buyer, dao) == buyer;
+		EasyMock.verify(dao);
+
+		assert changeTracker.getSkippedUpdateCount() == 0;
+
+	}
+
+	public static class Customer {
+
+		private String name;
+
+		private Date since;
+
+		private byte[] code;
+
+		private Address address;
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public Date getSince() {
+			return since;
+		}
+
+		public void setSince(Date since) {
+			this.since = since;
+		}
+
+		public byte[] getCode() {
+			return code;
+		}
+
+		public void setCode(byte[] code) {
+			this.code = code;
+		}
+
+		public Address getAddress() {
+			return address;
+		}
+
+		public void setAddress(Address address) {
+			this.address = address;
+		}
+
+	}
+
+	public static class Buyer extends Customer {
+
+		private List<String> orders;
+
+		private int orderReads;
+
+		public List<String> getOrders() {
+			orderReads++;
+			return orders;
+		}
+
+		public void setOrders(List<String> orders) {
+			this.orders = orders;
+		}
+
+	}
+
+	public static class Address {
+
+		private String street;
+
+		public String getStreet() {
+			return street;
+		}
+
+		public void setStreet(String street) {
+			this.street = street;
+		}
+
+	}
+
+}
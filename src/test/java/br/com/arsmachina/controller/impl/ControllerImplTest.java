@@ -14,13 +14,20 @@
 
 package br.com.arsmachina.controller.impl;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.easymock.EasyMock;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import br.com.arsmachina.controller.ConditionalResult;
+import br.com.arsmachina.controller.Page;
 import br.com.arsmachina.dao.DAO;
 
 /**
@@ -100,6 +107,75 @@ public class ControllerImplTest {
 		
 	}
 	
+	/**
+	 * Tests {@link ControllerImpl#update(Object)} with a {@link ChangeTracker}.
+	 */
+	@Test
+	public void update_changeTracker() {
+
+		final ChangeTracker<String> changeTracker = new ChangeTracker<String>();
+		controller.setChangeTracker(changeTracker);
+
+		EasyMock.expect(dao.findById(ID)).andReturn(OBJECT);
+		EasyMock.expect(dao.update(OTHER_OBJECT)).andReturn(OTHER_OBJECT);
+		EasyMock.replay(dao);
+		
+		// unchanged objects loaded through the controller are not updated
+		assert controller.findById(ID) == OBJECT;
+		assert controller.update(OBJECT) == OBJECT;
+		
+		// objects not loaded through the controller are
+		assert controller.update(OTHER_OBJECT) == OTHER_OBJECT;
+		EasyMock.verify(dao);
+		
+		assert changeTracker.getSkippedUpdateCount() == 1;
+		
+	}
+	
+	/**
+	 * Tests {@link ControllerImpl#saveAll(java.util.Collection)} with a DAO that does not
+	 * implement {@link BatchWriteSupport}.
+	 */
+	@Test
+	public void saveAll() {
+
+		dao.save(OBJECT);
+		dao.save(OTHER_OBJECT);
+		EasyMock.replay(dao);
+		
+		assert controller.isBatchWriteSupported() == false;
+		controller.saveAll(Arrays.asList(OBJECT, OTHER_OBJECT));
+		EasyMock.verify(dao);
+		
+	}
+	
+	/**
+	 * Tests {@link ControllerImpl#updateAll(java.util.Collection)} with a DAO that implements
+	 * {@link BatchWriteSupport} and a {@link ChangeTracker}.
+	 */
+	@Test
+	public void updateAll_batchWriteSupport() {
+
+		final BatchDAO batchDAO = EasyMock.createMock(BatchDAO.class);
+		final ControllerImpl<String, Integer> controller = new DummyGenericController(batchDAO);
+		final ChangeTracker<String> changeTracker = new ChangeTracker<String>();
+		controller.setChangeTracker(changeTracker);
+
+		EasyMock.expect(batchDAO.findById(ID)).andReturn(OBJECT);
+		batchDAO.updateAll(Arrays.asList(OTHER_OBJECT));
+		EasyMock.replay(batchDAO);
+		
+		assert controller.isBatchWriteSupported();
+		
+		// only the object not loaded through the controller is updated
+		assert controller.findById(ID) == OBJECT;
+		controller.updateAll(Arrays.asList(OBJECT, OTHER_OBJECT));
+		EasyMock.verify(batchDAO);
+		
+		assert changeTracker.getSkippedUpdateCount() == 1;
+		
+	}
+	
 	/**
 	 * Tests {@link ControllerImpl#delete(<K>))}.
 	 */
@@ -187,6 +263,57 @@ public class ControllerImplTest {
 		
 	}
 
+	/**
+	 * Tests {@link ControllerImpl#refreshAll(java.util.Collection)} without an
+	 * {@link IdentifierResolver}.
+	 */
+	@Test
+	public void refreshAll() {
+
+		EasyMock.expect(dao.refresh(OBJECT)).andReturn(OBJECT);
+		EasyMock.expect(dao.refresh(OTHER_OBJECT)).andReturn(OTHER_OBJECT);
+		EasyMock.replay(dao);
+		
+		final List<String> result = controller.refreshAll(Arrays.asList(OBJECT, OTHER_OBJECT));
+		EasyMock.verify(dao);
+		
+		assert result.equals(Arrays.asList(OBJECT, OTHER_OBJECT));
+		
+	}
+
+	/**
+	 * Tests {@link ControllerImpl#refreshAll(java.util.Collection)} with an
+	 * {@link IdentifierResolver}.
+	 */
+	@Test
+	public void refreshAll_identifierResolver() {
+
+		controller.setIdentifierResolver(new IdentifierResolver<String, Integer>() {
+
+			public Integer getId(String object) {
+				return object.equals(OBJECT) ? ID : object.equals(OTHER_OBJECT) ? ID + 1 : ID + 2;
+			}
+			
+		});
+		controller.setRefreshChunkSize(2);
+
+		final String third = "third";
+		final List<String> loaded = Arrays.asList(new String(OTHER_OBJECT), new String(OBJECT));
+		EasyMock.expect(dao.findByIds(ID, ID + 1)).andReturn(loaded);
+		EasyMock.expect(dao.findByIds(ID + 2)).andReturn(new ArrayList<String>());
+		EasyMock.expect(dao.refresh(third)).andReturn(third);
+		EasyMock.replay(dao);
+		
+		final List<String> result = controller.refreshAll(Arrays.asList(OBJECT, OTHER_OBJECT, third));
+		EasyMock.verify(dao);
+		
+		assert result.size() == 3;
+		assert result.get(0) == OBJECT;
+		assert result.get(1) == OTHER_OBJECT;
+		assert result.get(2) == third;
+		
+	}
+
 	/**
 	 * Tests {@link ControllerImpl#findById(<K>))}.
 	 */
@@ -220,6 +347,51 @@ public class ControllerImplTest {
 		
 	}
 	
+	/**
+	 * Tests {@link ControllerImpl#findByIdIfChanged(Integer, java.io.Serializable)}.
+	 */
+	@Test
+	public void findByIdIfChanged() {
+
+		final VersionTracker<String, Integer> versionTracker = new VersionTracker<String, Integer>(
+				new IdentifierResolver<String, Integer>() {
+
+					public Integer getId(String object) {
+						return ID;
+					}
+
+				}, new VersionResolver<String>() {
+
+					public Serializable getVersion(String object) {
+						return object.length();
+					}
+
+				});
+		controller.setVersionTracker(versionTracker);
+
+		EasyMock.expect(dao.findById(ID)).andReturn(OBJECT);
+		EasyMock.replay(dao);
+		
+		controller.findById(ID);
+		ConditionalResult<String> result = controller.findByIdIfChanged(ID, OBJECT.length());
+		EasyMock.verify(dao);
+		
+		assert !result.isModified();
+		assert result.getObject() == null;
+		
+		EasyMock.reset(dao);
+		EasyMock.expect(dao.findById(ID)).andReturn(OBJECT);
+		EasyMock.replay(dao);
+		
+		result = controller.findByIdIfChanged(ID, 0);
+		EasyMock.verify(dao);
+		
+		assert result.isModified();
+		assert result.getObject() == OBJECT;
+		assert result.getVersion().equals(OBJECT.length());
+		
+	}
+	
 	/**
 	 * Tests {@link ControllerImpl#findAll(int, int, String, boolean)))}.
 	 */
@@ -237,6 +409,98 @@ public class ControllerImplTest {
 		
 	}
 	
+	/**
+	 * Tests {@link ControllerImpl#findPage(int, int, br.com.arsmachina.dao.SortCriterion...)}.
+	 */
+	@Test
+	public void findPage() {
+
+		List<String> list = Arrays.asList(OBJECT);
+		EasyMock.expect(dao.findAll(1, 1)).andReturn(list);
+		EasyMock.expect(dao.countAll()).andReturn(3L);
+		EasyMock.replay(dao);
+		
+		final Page<String> page = controller.findPage(1, 1);
+		EasyMock.verify(dao);
+		
+		assert page.getRows() == list;
+		assert page.getTotalCount() == 3;
+		assert page.hasNext();
+		
+	}
+	
+	/**
+	 * Tests {@link ControllerImpl#findPage(int, int, br.com.arsmachina.dao.SortCriterion...)}
+	 * counting concurrently through the executor set with
+	 * {@link ControllerImpl#setCountExecutor(ExecutorService)}.
+	 */
+	@Test
+	public void findPage_countExecutor() throws InterruptedException {
+
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		controller.setCountExecutor(executor);
+
+		try {
+
+			List<String> list = Arrays.asList(OBJECT, OTHER_OBJECT);
+			EasyMock.expect(dao.findAll(0, 2)).andReturn(list);
+			EasyMock.expect(dao.countAll()).andReturn(2L);
+			EasyMock.replay(dao);
+			
+			final Page<String> page = controller.findPage(0, 2);
+			EasyMock.verify(dao);
+			
+			assert page.getRows() == list;
+			assert page.getTotalCount() == 2;
+			assert !page.hasNext();
+			
+			// exceptions thrown while counting are thrown by findPage()
+			EasyMock.reset(dao);
+			
+			final IllegalStateException exception = new IllegalStateException("count failed");
+			EasyMock.expect(dao.findAll(0, 2)).andReturn(list);
+			EasyMock.expect(dao.countAll()).andThrow(exception);
+			EasyMock.replay(dao);
+			
+			boolean ok = false;
+			
+			try {
+				controller.findPage(0, 2);
+			}
+			catch (IllegalStateException e) {
+				ok = e == exception;
+			}
+			
+			EasyMock.verify(dao);
+			assert ok;
+			
+		}
+		finally {
+			executor.shutdown();
+			assert executor.awaitTermination(1, TimeUnit.SECONDS);
+		}
+		
+	}
+	
+	/**
+	 * Tests {@link ControllerImpl#findPage(int, int, boolean, br.com.arsmachina.dao.SortCriterion...)}
+	 * without counting.
+	 */
+	@Test
+	public void findPage_hasNextOnly() {
+
+		EasyMock.expect(dao.findAll(2, 2)).andReturn(Arrays.asList(OBJECT, OTHER_OBJECT));
+		EasyMock.replay(dao);
+		
+		final Page<String> page = controller.findPage(2, 1, false);
+		EasyMock.verify(dao);
+		
+		assert page.getRows().equals(Arrays.asList(OBJECT));
+		assert !page.isTotalCountKnown();
+		assert page.hasNext();
+		
+	}
+	
 	/**
 	 * Tests {@link ControllerImpl#saveOrUpdate(Object)}.
 	 */
@@ -269,6 +533,10 @@ public class ControllerImplTest {
 
 	}
 
+	private static interface BatchDAO extends DAO<String, Integer>,
+			BatchWriteSupport<String, Integer> {
+	}
+
 	final private static class DummyGenericController extends
 			ControllerImpl<String, Integer> {
 
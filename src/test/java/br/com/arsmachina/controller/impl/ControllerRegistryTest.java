@@ -0,0 +1,355 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.easymock.EasyMock;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.controller.Controller;
+import br.com.arsmachina.controller.impl.AccountDAO.Account;
+import br.com.arsmachina.dao.DAO;
+
+/**
+ * Test class for {@link ControllerRegistry}.
+ */
+public class ControllerRegistryTest {
+
+	private ControllerRegistry registry;
+
+	private AtomicInteger creations;
+
+	private List<String> decorations;
+
+	@SuppressWarnings("unused")
+	@BeforeMethod
+	private void setUp() {
+
+		registry = new ControllerRegistry();
+		creations = new AtomicInteger();
+		decorations = new ArrayList<String>();
+
+		registry.register(String.class, new ControllerFactory<String, Integer>() {
+
+			@SuppressWarnings("unchecked")
+			public Controller<String, Integer> create(Class<String> entityClass) {
+				creations.incrementAndGet();
+				return new ControllerImpl<String, Integer>(EasyMock.createMock(DAO.class)) {
+				};
+			}
+
+		});
+
+		registry.registerDecorator("first", new NamedDecorator("first"));
+		registry.registerDecorator("second", new NamedDecorator("second"));
+
+	}
+
+	/**
+	 * Tests {@link ControllerRegistry#get(Class)}.
+	 */
+	@Test
+	public void get() throws InterruptedException {
+
+		final Properties configuration = new Properties();
+		configuration.setProperty("default.decorators", "first");
+		configuration.setProperty("java.lang.String.decorators", "first, second");
+		configuration.setProperty("default.second.size", "1");
+		configuration.setProperty("java.lang.String.second.size", "2");
+		registry.configure(configuration);
+
+		assert registry.isRegistered(String.class);
+		assert registry.isCreated(String.class) == false;
+		assert registry.getInitializationTime(String.class, TimeUnit.NANOSECONDS) == -1;
+
+		final int threads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		final Controller<?, ?>[] controllers = new Controller<?, ?>[threads];
+		final List<Thread> started = new ArrayList<Thread>();
+
+		for (int i = 0; i < threads; i++) {
+
+			final int index = i;
+			final Thread thread = new Thread() {
+
+				@Override
+				public void run() {
+
+					try {
+						start.await();
+						controllers[index] = registry.get(String.class);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+
+				}
+
+			};
+
+			thread.start();
+			started.add(thread);
+
+		}
+
+		start.countDown();
+
+		for (Thread thread : started) {
+			thread.join();
+		}
+
+		assert creations.get() == 1;
+		assert decorations.size() == 2 : decorations;
+		assert decorations.get(0).equals("first {}");
+		assert decorations.get(1).equals("second {size=2}");
+
+		for (Controller<?, ?> controller : controllers) {
+			assert controller == controllers[0];
+		}
+
+		assert controllers[0] instanceof DelegatingController;
+		assert registry.isCreated(String.class);
+		assert registry.getCreatedCount() == 1;
+		assert registry.getInitializationTime(String.class, TimeUnit.NANOSECONDS) >= 0;
+		assert registry.getInitializationTimes(TimeUnit.NANOSECONDS).keySet().contains(String.class);
+
+	}
+
+	/**
+	 * Tests {@link ControllerRegistry#get(Class)} with a decorator that is not registered.
+	 */
+	@Test
+	public void get_missingDecorator() {
+
+		final Properties configuration = new Properties();
+		configuration.setProperty("default.decorators", "missing");
+		registry.configure(configuration);
+
+		boolean ok = false;
+
+		try {
+			registry.get(String.class);
+		}
+		catch (IllegalStateException e) {
+			ok = true;
+		}
+
+		assert ok;
+		assert registry.isCreated(String.class) == false;
+
+		registry.configure(new Properties());
+
+		assert registry.get(String.class) != null;
+		assert creations.get() == 2;
+
+	}
+
+	/**
+	 * Tests {@link ControllerRegistry#get(Class)} with an entity class that is not registered.
+	 */
+	@Test
+	public void get_notRegistered() {
+
+		boolean ok = false;
+
+		try {
+			registry.get(Integer.class);
+		}
+		catch (IllegalArgumentException e) {
+			ok = true;
+		}
+
+		assert ok;
+
+	}
+
+	/**
+	 * Tests {@link ControllerRegistry#get(Class)} with a factory that requests the controller it is
+	 * creating, directly or through another entity class.
+	 */
+	@Test
+	public void get_circular() {
+
+		registry.register(Integer.class, new ControllerFactory<Integer, Integer>() {
+
+			public Controller<Integer, Integer> create(Class<Integer> entityClass) {
+				return registry.get(Integer.class);
+			}
+
+		});
+
+		registry.register(Long.class, new ControllerFactory<Long, Long>() {
+
+			public Controller<Long, Long> create(Class<Long> entityClass) {
+				registry.get(Short.class);
+				return null;
+			}
+
+		});
+
+		registry.register(Short.class, new ControllerFactory<Short, Short>() {
+
+			public Controller<Short, Short> create(Class<Short> entityClass) {
+				registry.get(Long.class);
+				return null;
+			}
+
+		});
+
+		for (Class<?> entityClass : new Class<?>[] { Integer.class, Long.class }) {
+
+			boolean ok = false;
+
+			try {
+				registry.get(entityClass);
+			}
+			catch (IllegalStateException e) {
+				ok = e.getMessage().contains("requested again");
+			}
+
+			assert ok : entityClass;
+
+		}
+
+		assert registry.getCreatedCount() == 0;
+		assert registry.get(String.class) != null;
+
+	}
+
+	/**
+	 * Tests {@link ControllerRegistry#get(Class)} with a {@link CachingControllerDecorator}.
+	 */
+	@Test
+	public void get_cachingDecorator() {
+
+		final AccountDAO dao = new AccountDAO(3);
+		registerAccounts(dao);
+
+		final Properties configuration = new Properties();
+		final String prefix = Account.class.getName() + ".";
+		configuration.setProperty(prefix + "decorators", "first, caching");
+		configuration.setProperty(prefix + "caching.timeToLive", "60");
+		configuration.setProperty(prefix + "caching.refreshAheadFactor", "0.5");
+		configuration.setProperty(prefix + "caching.maximumSize", "1");
+		registry.configure(configuration);
+
+		final Controller<Account, Long> controller = registry.get(Account.class);
+		assert controller instanceof CachingController;
+
+		final CachingController<Account, Long> cachingController = (CachingController<Account, Long>) controller;
+
+		assert controller.findById(1L).getName().equals("account 1");
+		assert controller.findById(2L).getName().equals("account 2");
+		assert controller.findById(2L).getName().equals("account 2");
+
+		assert cachingController.size() == 1;
+		assert cachingController.getHitCount() == 1;
+		assert cachingController.getMissCount() == 2;
+
+	}
+
+	/**
+	 * Tests {@link ControllerRegistry#get(Class)} with invalid {@link CachingControllerDecorator}
+	 * options.
+	 */
+	@Test
+	public void get_cachingDecoratorInvalidOptions() {
+
+		registerAccounts(new AccountDAO());
+
+		final String prefix = Account.class.getName() + ".";
+
+		for (String option : new String[] { "maximumSize=0", "timeToLive=1m", "ttl=60" }) {
+
+			final Properties configuration = new Properties();
+			configuration.setProperty(prefix + "decorators", "caching");
+			configuration.setProperty(prefix + "caching." + option.split("=")[0],
+					option.split("=")[1]);
+			registry.configure(configuration);
+
+			boolean ok = false;
+
+			try {
+				registry.get(Account.class);
+			}
+			catch (IllegalStateException e) {
+				ok = true;
+			}
+
+			assert ok : option;
+			assert registry.isCreated(Account.class) == false;
+
+		}
+
+	}
+
+	private void registerAccounts(final AccountDAO dao) {
+
+		registry.register(Account.class, new ControllerFactory<Account, Long>() {
+
+			public Controller<Account, Long> create(Class<Account> entityClass) {
+
+				final ControllerImpl<Account, Long> controller = new ControllerImpl<Account, Long>(dao) {
+				};
+
+				controller.setIdentifierResolver(AccountDAO.RESOLVER);
+
+				return controller;
+
+			}
+
+		});
+
+		registry.registerDecorator("caching", new CachingControllerDecorator(new Executor() {
+
+			public void execute(Runnable command) {
+				command.run();
+			}
+
+		}));
+
+	}
+
+	private class NamedDecorator implements ControllerDecorator {
+
+		private final String name;
+
+		public NamedDecorator(String name) {
+			this.name = name;
+		}
+
+		public <T, K extends Serializable> Controller<T, K> decorate(Controller<T, K> controller,
+				Class<T> entityClass, Map<String, String> options) {
+
+			decorations.add(name + " " + options);
+
+			return new DelegatingController<T, K>(controller) {
+			};
+
+		}
+
+	}
+
+}
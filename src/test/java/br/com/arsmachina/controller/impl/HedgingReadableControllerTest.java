@@ -0,0 +1,242 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.EasyMock;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.controller.ControllerTimeoutException;
+import br.com.arsmachina.controller.ReadableController;
+import br.com.arsmachina.dao.ReadableDAO;
+
+/**
+ * Test class for {@link HedgingReadableController}.
+ */
+public class HedgingReadableControllerTest {
+
+	private ExecutorService executor;
+
+	private ReadableDAO<String, Integer> alternate;
+
+	private CountDownLatch interrupted;
+
+	@SuppressWarnings({ "unused", "unchecked" })
+	@BeforeMethod
+	private void setUp() {
+		executor = Executors.newCachedThreadPool();
+		alternate = EasyMock.createMock(ReadableDAO.class);
+		interrupted = new CountDownLatch(1);
+	}
+
+	@SuppressWarnings("unused")
+	@AfterMethod
+	private void tearDown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Tests {@link HedgingReadableController#findById(java.io.Serializable)} when the hedged
+	 * request wins.
+	 */
+	@Test
+	public void findById_hedged() throws InterruptedException {
+
+		EasyMock.expect(alternate.findById(1)).andReturn("hedged");
+		EasyMock.replay(alternate);
+
+		final HedgingReadableController<String, Integer> controller = new HedgingReadableController<String, Integer>(
+				new BlockingController(), executor);
+		controller.setAlternate(alternate);
+		controller.setMinimumHedgeDelay(10, TimeUnit.MILLISECONDS);
+
+		assert "hedged".equals(controller.findById(1));
+		assert controller.getHedgeCount() == 1;
+		assert controller.getHedgeWinCount() == 1;
+		assert controller.getTimeoutCount() == 0;
+		assert interrupted.await(1, TimeUnit.SECONDS) : "losing call not cancelled";
+
+		EasyMock.verify(alternate);
+
+	}
+
+	/**
+	 * Tests {@link HedgingReadableController#findById(java.io.Serializable)} when the decorated
+	 * controller answers before the hedge delay.
+	 */
+	@Test
+	public void findById_primaryWins() {
+
+		EasyMock.replay(alternate);
+
+		final HedgingReadableController<String, Integer> controller = new HedgingReadableController<String, Integer>(
+				new FastController(), executor);
+		controller.setAlternate(alternate);
+		controller.setMinimumHedgeDelay(10, TimeUnit.SECONDS);
+
+		assert "primary".equals(controller.findById(1));
+		assert controller.getHedgeCount() == 0;
+		assert controller.getHedgeWinCount() == 0;
+
+	}
+
+	/**
+	 * Tests that the latency of a call that lost to a hedged request is recorded when it
+	 * finishes, so the hedge delay follows the decorated controller.
+	 */
+	@Test
+	public void findById_recordsPrimaryLatency() throws InterruptedException {
+
+		EasyMock.expect(alternate.findById(1)).andReturn("hedged");
+		EasyMock.replay(alternate);
+
+		final CountDownLatch finished = new CountDownLatch(1);
+		final HedgingReadableController<String, Integer> controller = new HedgingReadableController<String, Integer>(
+				new SlowController(200, finished), executor);
+		controller.setAlternate(alternate);
+		controller.setMinimumHedgeDelay(5, TimeUnit.MILLISECONDS);
+
+		assert "hedged".equals(controller.findById(1));
+		assert finished.await(1, TimeUnit.SECONDS);
+
+		// the sample is recorded right after the call finishes
+		Thread.sleep(50);
+
+		final long delay = controller.getHedgeDelay("findById", TimeUnit.MILLISECONDS);
+		assert delay >= 150 : delay;
+
+	}
+
+	/**
+	 * Tests a call that does not finish within its deadline.
+	 */
+	@Test
+	public void findAll_deadline() throws InterruptedException {
+
+		final HedgingReadableController<String, Integer> controller = new HedgingReadableController<String, Integer>(
+				new BlockingController(), executor);
+		controller.setDeadline("findAll", 50, TimeUnit.MILLISECONDS);
+
+		boolean ok = false;
+
+		try {
+			controller.findAll();
+		}
+		catch (ControllerTimeoutException e) {
+			ok = true;
+		}
+
+		assert ok;
+		assert controller.getTimeoutCount() == 1;
+		assert controller.getHedgeCount() == 0;
+		assert interrupted.await(1, TimeUnit.SECONDS) : "timed out call not cancelled";
+
+	}
+
+	private abstract static class TestController extends DelegatingReadableController<String, Integer> {
+
+		@SuppressWarnings("unchecked")
+		public TestController() {
+			super(EasyMock.createMock(ReadableController.class));
+		}
+
+	}
+
+	private static class FastController extends TestController {
+
+		@Override
+		public String findById(Integer id) {
+			return "primary";
+		}
+
+	}
+
+	/**
+	 * Controller whose calls block until they are interrupted.
+	 */
+	private class BlockingController extends TestController {
+
+		@Override
+		public String findById(Integer id) {
+			block();
+			return "primary";
+		}
+
+		@Override
+		public List<String> findAll() {
+			block();
+			return null;
+		}
+
+		private void block() {
+
+			try {
+				new CountDownLatch(1).await();
+			}
+			catch (InterruptedException e) {
+				interrupted.countDown();
+				Thread.currentThread().interrupt();
+			}
+
+		}
+
+	}
+
+	/**
+	 * Controller whose calls take a given time and ignore interruptions, like many drivers.
+	 */
+	private static class SlowController extends TestController {
+
+		private final long millis;
+
+		private final CountDownLatch finished;
+
+		public SlowController(long millis, CountDownLatch finished) {
+			this.millis = millis;
+			this.finished = finished;
+		}
+
+		@Override
+		public String findById(Integer id) {
+
+			final long end = System.currentTimeMillis() + millis;
+
+			while (System.currentTimeMillis() < end) {
+
+				try {
+					Thread.sleep(Math.max(1, end - System.currentTimeMillis()));
+				}
+				catch (InterruptedException e) {
+					// ignored on purpose
+				}
+
+			}
+
+			finished.countDown();
+
+			return "slow";
+
+		}
+
+	}
+
+}
@@ -0,0 +1,185 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * Test class for {@link InMemoryQueryEngine}.
+ */
+public class InMemoryQueryEngineTest {
+
+	private InMemoryQueryEngine<Person> engine;
+
+	private List<Person> people;
+
+	@SuppressWarnings("unused")
+	@BeforeMethod
+	private void setUp() {
+
+		people = new ArrayList<Person>();
+		people.add(new Person(1, "Ana", "Recife"));
+		people.add(new Person(2, "Bruno", "Natal"));
+		people.add(new Person(3, "Carla", "Recife"));
+		people.add(new Person(4, "Daniel", null));
+		people.add(new Person(5, "Elisa", "Natal"));
+
+		engine = new InMemoryQueryEngine<Person>(Person.class);
+		engine.load(people);
+
+	}
+
+	/**
+	 * Tests {@link InMemoryQueryEngine#findByExample(Object)}.
+	 */
+	@Test
+	public void findByExample() {
+
+		final Person example = new Person(null, null, "Recife");
+
+		List<Person> result = engine.findByExample(example);
+		assert result.size() == 2;
+		assert result.get(0) == people.get(0);
+		assert result.get(1) == people.get(2);
+
+		engine.addHashIndex("city");
+		assert result.equals(engine.findByExample(example));
+
+		example.setName("Carla");
+		result = engine.findByExample(example);
+		assert result.size() == 1;
+		assert result.get(0) == people.get(2);
+
+		assert engine.findByExample(new Person(null, null, "Olinda")).isEmpty();
+		assert engine.findByExample(new Person(null, null, null)).size() == people.size();
+
+	}
+
+	/**
+	 * Tests {@link InMemoryQueryEngine#findAll(int, int, SortCriterion...)}.
+	 */
+	@Test
+	public void findAll_paginated() {
+
+		final SortCriterion byNameDescending = new SortCriterion("name", false);
+
+		List<Person> result = engine.findAll(1, 2, byNameDescending);
+		assert result.size() == 2;
+		assert result.get(0).getName().equals("Daniel");
+		assert result.get(1).getName().equals("Carla");
+
+		engine.addSortedIndex("name");
+		assert result.equals(engine.findAll(1, 2, byNameDescending));
+
+		result = engine.findAll(0, 10, new SortCriterion("city", true), new SortCriterion("id", false));
+		assert result.size() == people.size();
+		assert result.get(0).getName().equals("Daniel");
+		assert result.get(1).getName().equals("Elisa");
+		assert result.get(2).getName().equals("Bruno");
+		assert result.get(3).getName().equals("Carla");
+
+		assert engine.findAll(4, 10).size() == 1;
+		assert engine.findAll(5, 10).isEmpty();
+
+	}
+
+	/**
+	 * Tests {@link InMemoryQueryEngine#update(Object)} and {@link InMemoryQueryEngine#remove(Object)}.
+	 */
+	@Test
+	public void update_remove() {
+
+		engine.addHashIndex("city");
+		engine.addSortedIndex("id");
+
+		final Person person = people.get(0);
+		person.setCity("Natal");
+		assert engine.update(person);
+		assert engine.findByProperty("city", "Natal").size() == 3;
+		assert engine.findByProperty("city", "Recife").size() == 1;
+
+		assert engine.remove(person);
+		assert engine.remove(person) == false;
+		assert engine.countAll() == people.size() - 1;
+		assert engine.findByProperty("city", "Natal").size() == 2;
+		assert engine.findAll(0, 1, new SortCriterion("id", true)).get(0) == people.get(1);
+
+	}
+
+	/**
+	 * Tests {@link InMemoryQueryEngine#add(Object)} with an object that is already in the engine.
+	 */
+	@Test
+	public void add_duplicate() {
+
+		engine.addHashIndex("city");
+
+		final Person person = people.get(0);
+		assert engine.add(person) == false;
+		assert engine.countAll() == people.size();
+
+		assert engine.remove(person);
+		assert engine.findAll().contains(person) == false;
+		assert engine.findByProperty("city", "Recife").size() == 1;
+
+		people.add(person);
+		engine.load(people);
+		assert engine.countAll() == people.size() - 1;
+
+	}
+
+	public static class Person {
+
+		private Integer id;
+
+		private String name;
+
+		private String city;
+
+		public Person(Integer id, String name, String city) {
+			this.id = id;
+			this.name = name;
+			this.city = city;
+		}
+
+		public Integer getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public String getCity() {
+			return city;
+		}
+
+		public void setCity(String city) {
+			this.city = city;
+		}
+
+	}
+
+}
@@ -0,0 +1,137 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.controller.impl.InMemoryQueryEngineTest.Person;
+
+/**
+ * Test class for {@link IntKeyControllerImpl}.
+ */
+public class IntKeyControllerImplTest {
+
+	private static final IdentifierResolver<Person, Integer> RESOLVER = new IdentifierResolver<Person, Integer>() {
+
+		public Integer getId(Person object) {
+			return object.getId();
+		}
+
+	};
+
+	private AtomicInteger loads;
+
+	private IntKeyControllerImpl<Person> controller;
+
+	@SuppressWarnings("unused")
+	@BeforeMethod
+	private void setUp() {
+
+		loads = new AtomicInteger();
+
+		final InMemoryDAO<Person, Integer> dao = new InMemoryDAO<Person, Integer>(Person.class, RESOLVER) {
+
+			@Override
+			public Person findById(Integer id) {
+				loads.incrementAndGet();
+				return super.findById(id);
+			}
+
+		};
+
+		dao.save(new Person(1, "Ana", "Recife"));
+		dao.save(new Person(2, "Bruno", "Natal"));
+
+		controller = new IntKeyControllerImpl<Person>(dao) {
+		};
+		controller.setIdentifierResolver(RESOLVER);
+		controller.setIdentityMapEnabled(true);
+
+	}
+
+	/**
+	 * Tests {@link IntKeyControllerImpl#findById(int)} and
+	 * {@link IntKeyControllerImpl#findByIds(int[])} with the identity map enabled.
+	 */
+	@Test
+	public void findById() {
+
+		final Person person = controller.findById(1);
+
+		assert controller.findById(Integer.valueOf(1)) == person;
+		assert loads.get() == 1;
+
+		assert controller.findByIds(new int[] { 1, 2 }).size() == 2;
+		assert controller.findByIds(2, 1).get(1) == person;
+		assert loads.get() == 3;
+
+	}
+
+	/**
+	 * Tests that deleting an object by primary key value removes it from the identity map.
+	 */
+	@Test
+	public void delete() {
+
+		controller.findById(1);
+		controller.delete(1);
+
+		assert controller.findById(1) == null;
+		assert controller.getIdentityMapSize() == 0;
+		assert loads.get() == 2;
+
+	}
+
+	/**
+	 * Tests that {@link IntKeyControllerImpl#deleteByIds(Collection)} removes the objects from
+	 * the identity map.
+	 */
+	@Test
+	public void deleteByIds() {
+
+		controller.findByIds(new int[] { 1, 2 });
+		controller.deleteByIds(Arrays.asList(1, 2));
+
+		assert controller.findById(1) == null;
+		assert controller.findByIds(new int[] { 1, 2 }).isEmpty();
+		assert controller.getIdentityMapSize() == 0;
+
+	}
+
+	/**
+	 * Tests that {@link IntKeyControllerImpl#updateAll(Collection)} removes the objects from the
+	 * identity map.
+	 */
+	@Test
+	public void updateAll() {
+
+		final Person person = controller.findById(1);
+		final Person changed = new Person(1, "Ana", "Olinda");
+
+		controller.updateAll(Collections.singletonList(changed));
+
+		assert controller.findById(1) == changed;
+		assert controller.findById(1) != person;
+		assert loads.get() == 2;
+
+	}
+
+}
@@ -0,0 +1,183 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.controller.impl.AccountDAO.Account;
+import br.com.arsmachina.dao.DAO;
+import br.com.arsmachina.dao.ReadableDAO;
+
+/**
+ * Test class for {@link LazyEntityList}.
+ */
+public class LazyEntityListTest {
+
+	private ReadableDAO<String, Integer> dao;
+
+	private LazyEntityList<String, Integer> list;
+
+	@SuppressWarnings( { "unused", "unchecked" })
+	@BeforeMethod
+	private void setUp() {
+
+		dao = EasyMock.createMock(ReadableDAO.class);
+
+		final IdentifierResolver<String, Integer> resolver = new IdentifierResolver<String, Integer>() {
+
+			public Integer getId(String object) {
+				return Integer.valueOf(object.substring(1));
+			}
+
+		};
+
+		list = new LazyEntityList<String, Integer>(dao, resolver, Arrays.asList(1, 2, 3, 4, 5), 2,
+				1);
+
+	}
+
+	/**
+	 * Tests {@link LazyEntityList#get(int)}.
+	 */
+	@Test
+	public void get() {
+
+		EasyMock.expect(dao.findByIds(1, 2)).andReturn(Arrays.asList("o2", "o1"));
+		EasyMock.expect(dao.findByIds(5)).andReturn(Arrays.<String> asList());
+		EasyMock.replay(dao);
+
+		assert list.size() == 5;
+		assert list.getLoadCount() == 0;
+		assert list.get(0).equals("o1");
+		assert list.get(1).equals("o2");
+		assert list.getLoadCount() == 1;
+		assert list.get(4) == null;
+		assert list.getLoadCount() == 2;
+
+		EasyMock.verify(dao);
+
+	}
+
+	/**
+	 * Tests that evicted chunks are loaded again.
+	 */
+	@Test
+	public void get_evicted() {
+
+		EasyMock.expect(dao.findByIds(1, 2)).andReturn(Arrays.asList("o1", "o2"));
+		EasyMock.expect(dao.findByIds(3, 4)).andReturn(Arrays.asList("o3", "o4"));
+		EasyMock.expect(dao.findByIds(1, 2)).andReturn(Arrays.asList("o1", "o2"));
+		EasyMock.replay(dao);
+
+		assert list.get(0).equals("o1");
+		assert list.get(3).equals("o4");
+		assert list.get(1).equals("o2");
+		assert list.getLoadCount() == 3;
+
+		EasyMock.verify(dao);
+
+	}
+
+	/**
+	 * Tests {@link LazyEntityList#get(int)} with a DAO declaring <code>findByIds(Long...)</code>.
+	 */
+	@Test
+	public void get_concreteKeyType() {
+
+		final AccountDAO accountDAO = new AccountDAO(3);
+		final LazyEntityList<Account, Long> accounts = new LazyEntityList<Account, Long>(
+				accountDAO, AccountDAO.RESOLVER, Arrays.asList(3L, 1L, 2L), 2);
+
+		assert accounts.get(0).getName().equals("account 3");
+		assert accounts.get(2).getName().equals("account 2");
+		assert accountDAO.getFindByIdsCount() == 2;
+
+	}
+
+	/**
+	 * Tests that {@link ReadableControllerImpl#findByIds(java.io.Serializable...)} returns missing
+	 * objects the same way in lazy mode whether the list is loaded lazily or not.
+	 */
+	@Test
+	public void findByIds_lazyMode() {
+
+		final AccountDAO accountDAO = new AccountDAO(3);
+		final ControllerImpl<Account, Long> controller = new ControllerImpl<Account, Long>(
+				accountDAO) {
+		};
+		controller.setIdentifierResolver(AccountDAO.RESOLVER);
+		controller.setLazyChunkSize(2);
+
+		final List<Account> eager = controller.findByIds(9L, 1L);
+		final List<Account> lazy = controller.findByIds(9L, 1L, 2L);
+
+		assert !(eager instanceof LazyEntityList);
+		assert lazy instanceof LazyEntityList;
+		assert eager.size() == 2 && eager.get(0) == null && eager.get(1).getId() == 1L;
+		assert lazy.size() == 3 && lazy.get(0) == null && lazy.get(1).getId() == 1L;
+
+	}
+
+	/**
+	 * Tests {@link ReadableControllerImpl#findByIds(java.io.Serializable...)} in lazy mode with a
+	 * <code>null</code> array, which is passed to the DAO, and <code>null</code> primary key
+	 * values, which are missing objects.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void findByIds_lazyModeNullIds() {
+
+		final DAO<String, Integer> stringDAO = EasyMock.createMock(DAO.class);
+		final ControllerImpl<String, Integer> stringController = new ControllerImpl<String, Integer>(
+				stringDAO) {
+		};
+		stringController.setIdentifierResolver(new IdentifierResolver<String, Integer>() {
+
+			public Integer getId(String object) {
+				return Integer.valueOf(object.substring(1));
+			}
+
+		});
+		stringController.setLazyChunkSize(2);
+
+		final List<String> empty = Collections.emptyList();
+		EasyMock.expect(stringDAO.findByIds((Integer[]) null)).andReturn(empty);
+		EasyMock.replay(stringDAO);
+
+		assert stringController.findByIds((Integer[]) null) == empty;
+		EasyMock.verify(stringDAO);
+
+		final AccountDAO accountDAO = new AccountDAO(3);
+		final ControllerImpl<Account, Long> controller = new ControllerImpl<Account, Long>(
+				accountDAO) {
+		};
+		controller.setIdentifierResolver(AccountDAO.RESOLVER);
+		controller.setLazyChunkSize(2);
+
+		final List<Account> eager = controller.findByIds(null, 1L);
+		final List<Account> lazy = controller.findByIds(1L, null, 2L);
+
+		assert eager.size() == 2 && eager.get(0) == null && eager.get(1).getId() == 1L;
+		assert lazy.size() == 3 && lazy.get(1) == null && lazy.get(2).getId() == 2L;
+
+	}
+
+}
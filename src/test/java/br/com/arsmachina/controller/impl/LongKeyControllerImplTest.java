@@ -0,0 +1,339 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.dao.DAO;
+
+/**
+ * Test class for {@link LongKeyControllerImpl}.
+ */
+public class LongKeyControllerImplTest {
+
+	private static final IdentifierResolver<Item, Long> RESOLVER = new IdentifierResolver<Item, Long>() {
+
+		public Long getId(Item object) {
+			return object.getId();
+		}
+
+	};
+
+	private CountingDAO dao;
+
+	private LongKeyControllerImpl<Item> controller;
+
+	@SuppressWarnings("unused")
+	@BeforeMethod
+	private void setUp() {
+
+		dao = new CountingDAO();
+
+		for (long id = 1; id <= 3; id++) {
+			dao.save(new Item(id, "item " + id));
+		}
+
+		controller = new LongKeyControllerImpl<Item>(dao) {
+		};
+		controller.setIdentifierResolver(RESOLVER);
+		controller.setIdentityMapEnabled(true);
+
+	}
+
+	/**
+	 * Tests {@link LongKeyControllerImpl#findById(long)} and
+	 * {@link LongKeyControllerImpl#findByIds(Long...)} with the identity map enabled.
+	 */
+	@Test
+	public void findById() {
+
+		final Item item = controller.findById(1);
+
+		assert controller.findById(1) == item;
+		assert controller.findById(Long.valueOf(1)) == item;
+		assert dao.loads.get() == 1;
+
+		// not all objects are in the identity map, so both are loaded
+		assert controller.findByIds(1L, 2L).size() == 2;
+		assert dao.loads.get() == 3;
+
+		final List<Item> items = controller.findByIds(2L, 1L);
+		assert items.get(0).getId() == 2L && items.get(1) == item;
+		assert dao.loads.get() == 3;
+
+	}
+
+	/**
+	 * Tests that updating a different instance with the same primary key value removes the
+	 * object from the identity map.
+	 */
+	@Test
+	public void update_otherInstance() {
+
+		final Item item = controller.findById(1);
+		final Item changed = new Item(1L, "changed");
+
+		controller.update(changed);
+
+		assert controller.findById(1) == changed;
+		assert controller.findById(1) != item;
+		assert dao.loads.get() == 2;
+
+	}
+
+	/**
+	 * Tests that an object loaded while a concurrent update removes it is not put in the identity
+	 * map.
+	 */
+	@Test
+	public void findById_concurrentUpdate() throws Exception {
+
+		final Item stale = dao.findById(1L);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		dao.loads.set(0);
+		dao.blocked = blocked;
+
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+
+			final Future<Item> future = executor.submit(new Callable<Item>() {
+
+				public Item call() {
+					return controller.findById(1);
+				}
+
+			});
+
+			assert dao.entered.await(1, TimeUnit.SECONDS);
+			controller.update(new Item(1L, "changed"));
+			blocked.countDown();
+
+			assert future.get(1, TimeUnit.SECONDS) == stale;
+			assert controller.findById(1).getName().equals("changed");
+			assert dao.loads.get() == 2;
+
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+	}
+
+	/**
+	 * Tests that {@link LongKeyControllerImpl#deleteByIds(Collection)} removes the objects from
+	 * the identity map.
+	 */
+	@Test
+	public void deleteByIds() {
+
+		controller.findByIds(new long[] { 1, 2, 3 });
+		assert controller.getIdentityMapSize() == 3;
+
+		controller.deleteByIds(Arrays.asList(1L, 2L));
+
+		assert controller.findById(1) == null;
+		assert controller.findByIds(new long[] { 2, 3 }).size() == 1;
+		assert controller.getIdentityMapSize() == 1;
+
+	}
+
+	/**
+	 * Tests that the objects written by a {@link UnitOfWork}, which uses the batch methods of the
+	 * controller, are removed from the identity map.
+	 */
+	@Test
+	public void unitOfWork() {
+
+		final Item item = controller.findById(1);
+		controller.findById(2);
+
+		final Item changed = new Item(1L, "changed");
+		final UnitOfWork unitOfWork = new UnitOfWork();
+		unitOfWork.update(controller, changed);
+		unitOfWork.deleteById(controller, 2L);
+		unitOfWork.commit();
+
+		assert dao.batches.get() == 2;
+		assert controller.findById(1) == changed;
+		assert controller.findById(1) != item;
+		assert controller.findById(2) == null;
+
+	}
+
+	/**
+	 * Tests that the identity map does not grow beyond its maximum size.
+	 */
+	@Test
+	public void identityMapMaximumSize() {
+
+		controller.setIdentityMapMaximumSize(2);
+
+		controller.findByIds(new long[] { 1, 2, 3 });
+		assert controller.getIdentityMapSize() <= 2;
+
+		controller.findById(1);
+		controller.findById(2);
+		controller.findById(3);
+		assert controller.getIdentityMapSize() <= 2;
+
+	}
+
+	/**
+	 * Tests that the identity map cannot be enabled without an {@link IdentifierResolver}.
+	 */
+	@Test
+	public void setIdentityMapEnabled_noResolver() {
+
+		final LongKeyControllerImpl<Item> other = new LongKeyControllerImpl<Item>(dao) {
+		};
+
+		boolean ok = false;
+
+		try {
+			other.setIdentityMapEnabled(true);
+		}
+		catch (IllegalStateException e) {
+			ok = true;
+		}
+
+		assert ok;
+		assert other.findByIds(1L).size() == 1;
+
+	}
+
+	/**
+	 * {@link DAO} that counts the objects loaded by primary key value, including the ones loaded
+	 * by <code>findByIds()</code>, and the batch writes, and can block while loading one of them.
+	 */
+	private static class CountingDAO extends InMemoryDAO<Item, Long> implements
+			BatchWriteSupport<Item, Long> {
+
+		private final AtomicInteger loads = new AtomicInteger();
+
+		private final AtomicInteger batches = new AtomicInteger();
+
+		private final CountDownLatch entered = new CountDownLatch(1);
+
+		private volatile CountDownLatch blocked;
+
+		public CountingDAO() {
+			super(Item.class, RESOLVER);
+		}
+
+		public void saveAll(Collection<Item> objects) {
+
+			batches.incrementAndGet();
+
+			for (Item object : objects) {
+				save(object);
+			}
+
+		}
+
+		public void updateAll(Collection<Item> objects) {
+
+			batches.incrementAndGet();
+
+			for (Item object : objects) {
+				update(object);
+			}
+
+		}
+
+		public void deleteAll(Collection<Item> objects) {
+
+			batches.incrementAndGet();
+
+			for (Item object : objects) {
+				delete(object);
+			}
+
+		}
+
+		public void deleteByIds(Collection<Long> ids) {
+
+			batches.incrementAndGet();
+
+			for (Long id : ids) {
+				delete(id);
+			}
+
+		}
+
+		@Override
+		public Item findById(Long id) {
+
+			loads.incrementAndGet();
+
+			final CountDownLatch blocked = this.blocked;
+
+			if (blocked != null) {
+
+				final Item item = super.findById(id);
+				this.blocked = null;
+				entered.countDown();
+
+				try {
+					blocked.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+
+				return item;
+
+			}
+
+			return super.findById(id);
+
+		}
+
+	}
+
+	public static class Item {
+
+		private Long id;
+
+		private String name;
+
+		public Item(Long id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+
+		public Long getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+	}
+
+}
@@ -0,0 +1,90 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test class for {@link LongObjectHashMap}.
+ */
+public class LongObjectHashMapTest {
+
+	/**
+	 * Tests {@link LongObjectHashMap#put(long, Object)}, {@link LongObjectHashMap#get(long)} and
+	 * {@link LongObjectHashMap#remove(long)} against a {@link HashMap}.
+	 */
+	@Test
+	public void put_get_remove() {
+
+		final LongObjectHashMap<String> map = new LongObjectHashMap<String>();
+		final Map<Long, String> expected = new HashMap<Long, String>();
+		final Random random = new Random(42);
+
+		for (int i = 0; i < 20000; i++) {
+
+			// a small key range forces collisions, updates and removals
+			final long key = random.nextInt(500) * 1024L;
+
+			if (random.nextInt(3) == 0) {
+				assert equal(expected.remove(key), map.remove(key));
+			}
+			else {
+				final String value = String.valueOf(i);
+				assert equal(expected.put(key, value), map.put(key, value));
+			}
+
+			assert map.size() == expected.size();
+
+		}
+
+		for (long key = 0; key < 500 * 1024L; key += 1024) {
+			assert equal(expected.get(key), map.get(key));
+		}
+
+	}
+
+	/**
+	 * Tests {@link LongObjectHashMap#clear()}.
+	 */
+	@Test
+	public void clear() {
+
+		final LongObjectHashMap<String> map = new LongObjectHashMap<String>(2);
+
+		for (long key = 0; key < 100; key++) {
+			map.put(key, String.valueOf(key));
+		}
+
+		assert map.size() == 100;
+		assert map.get(99).equals("99");
+
+		map.clear();
+		assert map.size() == 0;
+		assert map.get(1) == null;
+
+		map.put(1, "one");
+		assert map.get(1).equals("one");
+
+	}
+
+	private static boolean equal(Object o1, Object o2) {
+		return o1 == null ? o2 == null : o1.equals(o2);
+	}
+
+}
@@ -0,0 +1,122 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test class for {@link PriorityScheduler}.
+ */
+public class PrioritySchedulerTest {
+
+	private PriorityScheduler scheduler;
+
+	private List<String> calls;
+
+	@SuppressWarnings("unused")
+	@BeforeMethod
+	private void setUp() {
+		scheduler = new PriorityScheduler(1, 10, PriorityScheduler.Policy.STRICT);
+		calls = Collections.synchronizedList(new ArrayList<String>());
+	}
+
+	@SuppressWarnings("unused")
+	@AfterMethod
+	private void tearDown() {
+		scheduler.shutdown();
+	}
+
+	/**
+	 * Tests that interactive calls overtake queued batch calls.
+	 */
+	@Test
+	public void execute_strict() throws InterruptedException {
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final Thread blocker = submit(CallPriority.BATCH, new Callable<String>() {
+
+			public String call() throws InterruptedException {
+				started.countDown();
+				release.await();
+				return "blocker";
+			}
+
+		});
+
+		started.await();
+
+		final Thread batch = submit(CallPriority.BATCH, record("batch"));
+		final Thread interactive = submit(CallPriority.INTERACTIVE, record("interactive"));
+
+		while (scheduler.getQueueLength(CallPriority.BATCH) == 0
+				|| scheduler.getQueueLength(CallPriority.INTERACTIVE) == 0) {
+			Thread.sleep(1);
+		}
+
+		release.countDown();
+		blocker.join();
+		batch.join();
+		interactive.join();
+
+		assert calls.equals(Arrays.asList("interactive", "batch")) : calls;
+		assert scheduler.getWaitCount(CallPriority.INTERACTIVE) == 1;
+		assert scheduler.getWaitCount(CallPriority.BATCH) == 2;
+		assert scheduler.getWaitTimePercentile(CallPriority.INTERACTIVE, 0.99,
+				TimeUnit.NANOSECONDS) > 0;
+
+	}
+
+	private Callable<String> record(final String name) {
+
+		return new Callable<String>() {
+
+			public String call() {
+				calls.add(name);
+				return name;
+			}
+
+		};
+
+	}
+
+	private Thread submit(final CallPriority priority, final Callable<String> callable) {
+
+		final Thread thread = new Thread(new Runnable() {
+
+			public void run() {
+				scheduler.execute(priority, callable);
+			}
+
+		});
+
+		thread.start();
+
+		return thread;
+
+	}
+
+}
@@ -0,0 +1,147 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.easymock.EasyMock;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.controller.ReadableController;
+
+/**
+ * Test class for {@link SingleFlightReadableController}.
+ */
+public class SingleFlightReadableControllerTest {
+
+	/**
+	 * Tests that {@link SingleFlightReadableController#findByExample(Object)} compares examples
+	 * by property values, not through <code>equals()</code>.
+	 */
+	@Test
+	public void findByExample() throws Exception {
+
+		final AtomicInteger executions = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		final SingleFlight singleFlight = new SingleFlight();
+
+		@SuppressWarnings("unchecked")
+		final ReadableController<Example, Integer> delegate = new DelegatingReadableController<Example, Integer>(
+				EasyMock.createMock(ReadableController.class)) {
+
+			@Override
+			public List<Example> findByExample(Example example) {
+
+				executions.incrementAndGet();
+
+				try {
+					release.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+
+				return Collections.singletonList(example);
+
+			}
+
+		};
+
+		final SingleFlightReadableController<Example, Integer> controller = new SingleFlightReadableController<Example, Integer>(
+				delegate, singleFlight);
+
+		final ExecutorService executor = Executors.newCachedThreadPool();
+
+		try {
+
+			final List<Future<List<Example>>> futures = new ArrayList<Future<List<Example>>>();
+
+			// all examples are equal according to equals(), but only the first two match the same rows
+			for (String name : new String[] { "Ana", "Ana", "Bruno" }) {
+
+				final Example example = new Example(name);
+
+				futures.add(executor.submit(new Callable<List<Example>>() {
+
+					public List<Example> call() {
+						return controller.findByExample(example);
+					}
+
+				}));
+
+			}
+
+			while (singleFlight.getSharedCount() < 1 || executions.get() < 2) {
+				Thread.sleep(1);
+			}
+
+			release.countDown();
+
+			assert futures.get(0).get(1, TimeUnit.SECONDS) == futures.get(1).get(1, TimeUnit.SECONDS);
+			assert futures.get(2).get(1, TimeUnit.SECONDS).get(0).getName().equals("Bruno");
+			assert executions.get() == 2;
+			assert singleFlight.getSharedCount() == 1;
+
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+	}
+
+	/**
+	 * Example whose <code>equals()</code> only compares the primary key, like many entities.
+	 */
+	public static class Example {
+
+		private Integer id;
+
+		private String name;
+
+		public Example(String name) {
+			this.name = name;
+		}
+
+		public Integer getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			return object instanceof Example
+					&& (id == null ? ((Example) object).id == null : id.equals(((Example) object).id));
+		}
+
+		@Override
+		public int hashCode() {
+			return id != null ? id.hashCode() : 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,156 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test class for {@link SingleFlight}.
+ */
+public class SingleFlightTest {
+
+	private static final int THREADS = 8;
+
+	/**
+	 * Tests {@link SingleFlight#execute(Object, Callable)} with concurrent calls with the same key.
+	 */
+	@Test
+	public void execute_concurrent() throws Exception {
+
+		final SingleFlight singleFlight = new SingleFlight(4);
+		final AtomicInteger executions = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Object result = new Object();
+
+		final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+		try {
+
+			final List<Future<Object>> futures = new ArrayList<Future<Object>>();
+
+			futures.add(executor.submit(new Caller(singleFlight, new Callable<Object>() {
+
+				public Object call() throws Exception {
+					executions.incrementAndGet();
+					started.countDown();
+					release.await();
+					return result;
+				}
+
+			})));
+
+			started.await();
+
+			for (int i = 1; i < THREADS; i++) {
+
+				futures.add(executor.submit(new Caller(singleFlight, new Callable<Object>() {
+
+					public Object call() {
+						executions.incrementAndGet();
+						return new Object();
+					}
+
+				})));
+
+			}
+
+			while (singleFlight.getSharedCount() < THREADS - 1) {
+				Thread.sleep(1);
+			}
+
+			release.countDown();
+
+			for (Future<Object> future : futures) {
+				assert future.get() == result;
+			}
+
+			assert executions.get() == 1;
+			assert singleFlight.getExecutionCount() == 1;
+
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+	}
+
+	/**
+	 * Tests that calls with the same key are executed again once the previous one finished.
+	 */
+	@Test
+	public void execute_sequential() {
+
+		final SingleFlight singleFlight = new SingleFlight();
+		final AtomicInteger executions = new AtomicInteger();
+
+		final Callable<Integer> callable = new Callable<Integer>() {
+
+			public Integer call() {
+				return executions.incrementAndGet();
+			}
+
+		};
+
+		assert singleFlight.execute("key", callable) == 1;
+		assert singleFlight.execute("key", callable) == 2;
+		assert singleFlight.getSharedCount() == 0;
+
+		boolean ok = false;
+
+		try {
+			singleFlight.execute("key", new Callable<Object>() {
+
+				public Object call() {
+					throw new IllegalStateException();
+				}
+
+			});
+		}
+		catch (IllegalStateException e) {
+			ok = true;
+		}
+
+		assert ok;
+
+	}
+
+	private static final class Caller implements Callable<Object> {
+
+		private final SingleFlight singleFlight;
+
+		private final Callable<Object> callable;
+
+		public Caller(SingleFlight singleFlight, Callable<Object> callable) {
+			this.singleFlight = singleFlight;
+			this.callable = callable;
+		}
+
+		public Object call() {
+			return singleFlight.execute("key", callable);
+		}
+
+	}
+
+}
@@ -0,0 +1,278 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.controller.BatchWriteableController;
+import br.com.arsmachina.dao.WriteableDAO;
+
+/**
+ * Test class for {@link UnitOfWork}.
+ */
+public class UnitOfWorkTest {
+
+	private List<String> calls;
+
+	private RecordingController orders;
+
+	private BatchRecordingController customers;
+
+	@SuppressWarnings("unused")
+	@BeforeMethod
+	private void setUp() {
+		calls = new ArrayList<String>();
+		orders = new RecordingController("order", calls);
+		customers = new BatchRecordingController("customer", calls);
+	}
+
+	/**
+	 * Tests {@link UnitOfWork#commit()}.
+	 */
+	@Test
+	public void commit() {
+
+		final UnitOfWork unitOfWork = new UnitOfWork();
+		unitOfWork.addDependency(orders, customers);
+
+		unitOfWork.save(orders, "o1");
+		unitOfWork.save(customers, "c1");
+		unitOfWork.save(orders, "o2");
+		unitOfWork.save(customers, "c2");
+		unitOfWork.update(orders, "o3");
+		unitOfWork.delete(customers, "c3");
+		unitOfWork.deleteById(orders, 4);
+
+		assert unitOfWork.getPendingOperations() == 7;
+
+		final UnitOfWorkStatistics statistics = unitOfWork.commit();
+
+		assert calls.equals(Arrays.asList("customer saveAll [c1, c2]", "order save o1",
+				"order save o2", "order update o3", "order delete 4", "customer deleteAll [c3]")) : calls;
+
+		assert statistics.getOperations() == 7;
+		assert statistics.getBatches() == 5;
+		assert statistics.getRoundTrips() == 6;
+		assert unitOfWork.getPendingOperations() == 0;
+
+	}
+
+	/**
+	 * Tests {@link UnitOfWork#commit()} with cyclic dependencies.
+	 */
+	@Test
+	public void commit_cycle() {
+
+		final UnitOfWork unitOfWork = new UnitOfWork();
+		unitOfWork.addDependency(orders, customers);
+		unitOfWork.addDependency(customers, orders);
+		unitOfWork.save(orders, "o1");
+
+		boolean ok = false;
+
+		try {
+			unitOfWork.commit();
+		}
+		catch (IllegalStateException e) {
+			ok = true;
+		}
+
+		assert ok;
+		assert calls.isEmpty();
+
+	}
+
+	/**
+	 * Tests {@link UnitOfWork#commit()} with a removal followed by an insertion with the same
+	 * primary key on the same controller.
+	 */
+	@Test
+	public void commit_keepsOrderPerController() {
+
+		final UnitOfWork unitOfWork = new UnitOfWork();
+		unitOfWork.addDependency(orders, customers);
+
+		unitOfWork.delete(customers, "c1");
+		unitOfWork.save(customers, "c1");
+		unitOfWork.save(orders, "o1");
+		unitOfWork.deleteById(orders, 1);
+		unitOfWork.save(orders, "o1");
+
+		final UnitOfWorkStatistics statistics = unitOfWork.commit();
+
+		assert calls.equals(Arrays.asList("order save o1", "order delete 1",
+				"customer deleteAll [c1]", "customer saveAll [c1]", "order save o1")) : calls;
+
+		assert statistics.getOperations() == 5;
+		assert statistics.getBatches() == 5;
+		assert statistics.getRoundTrips() == 5;
+
+	}
+
+	/**
+	 * Tests {@link UnitOfWork#commit()} when an operation fails.
+	 */
+	@Test
+	public void commit_failure() {
+
+		final UnitOfWork unitOfWork = new UnitOfWork();
+		unitOfWork.save(orders, "o1");
+		unitOfWork.save(orders, "o2");
+		unitOfWork.save(orders, "o3");
+		orders.failOn("o2");
+
+		boolean ok = false;
+
+		try {
+			unitOfWork.commit();
+		}
+		catch (IllegalStateException e) {
+			ok = true;
+		}
+
+		assert ok;
+		assert calls.equals(Arrays.asList("order save o1")) : calls;
+		assert unitOfWork.getPendingOperations() == 2;
+
+		orders.failOn(null);
+
+		final UnitOfWorkStatistics statistics = unitOfWork.commit();
+
+		assert calls.equals(Arrays.asList("order save o1", "order save o2", "order save o3")) : calls;
+		assert statistics.getOperations() == 2;
+		assert unitOfWork.getPendingOperations() == 0;
+
+	}
+
+	/**
+	 * Tests {@link UnitOfWork#commit()} with a {@link BatchWriteableController} that does not
+	 * support batch writes.
+	 */
+	@Test
+	public void commit_batchNotSupported() {
+
+		final UnitOfWork unitOfWork = new UnitOfWork();
+		customers.setBatchWriteSupported(false);
+		unitOfWork.save(customers, "c1");
+		unitOfWork.save(customers, "c2");
+
+		final UnitOfWorkStatistics statistics = unitOfWork.commit();
+
+		assert calls.equals(Arrays.asList("customer save c1", "customer save c2")) : calls;
+		assert statistics.getBatches() == 1;
+		assert statistics.getRoundTrips() == 2;
+
+	}
+
+	private static class RecordingController extends WriteableControllerImpl<String, Integer> {
+
+		private final String name;
+
+		private final List<String> calls;
+
+		private String failing;
+
+		@SuppressWarnings("unchecked")
+		public RecordingController(String name, List<String> calls) {
+			super(EasyMock.createMock(WriteableDAO.class));
+			this.name = name;
+			this.calls = calls;
+		}
+
+		public void failOn(String object) {
+			failing = object;
+		}
+
+		@Override
+		public void save(String object) {
+
+			if (object.equals(failing)) {
+				throw new IllegalStateException("Cannot save " + object);
+			}
+
+			calls.add(name + " save " + object);
+
+		}
+
+		@Override
+		public String update(String object) {
+			calls.add(name + " update " + object);
+			return object;
+		}
+
+		@Override
+		public void delete(String object) {
+			calls.add(name + " delete " + object);
+		}
+
+		@Override
+		public void delete(Integer id) {
+			calls.add(name + " delete " + id);
+		}
+
+		protected void record(String call) {
+			calls.add(name + " " + call);
+		}
+
+	}
+
+	private static class BatchRecordingController extends RecordingController implements
+			BatchWriteableController<String, Integer> {
+
+		private boolean batchWriteSupported = true;
+
+		public BatchRecordingController(String name, List<String> calls) {
+			super(name, calls);
+		}
+
+		public void setBatchWriteSupported(boolean batchWriteSupported) {
+			this.batchWriteSupported = batchWriteSupported;
+		}
+
+		@Override
+		public boolean isBatchWriteSupported() {
+			return batchWriteSupported;
+		}
+
+		@Override
+		public void saveAll(Collection<String> objects) {
+			record("saveAll " + objects);
+		}
+
+		@Override
+		public void updateAll(Collection<String> objects) {
+			record("updateAll " + objects);
+		}
+
+		@Override
+		public void deleteAll(Collection<String> objects) {
+			record("deleteAll " + objects);
+		}
+
+		@Override
+		public void deleteByIds(Collection<Integer> ids) {
+			record("deleteByIds " + ids);
+		}
+
+	}
+
+}
@@ -0,0 +1,192 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.controller.ConditionalResult;
+import br.com.arsmachina.controller.impl.AccountDAO.Account;
+
+/**
+ * Test class for {@link VersionTracker}.
+ */
+public class VersionTrackerTest {
+
+	private static final VersionResolver<Account> NAME_VERSION = new VersionResolver<Account>() {
+
+		public Serializable getVersion(Account object) {
+			return object.getName();
+		}
+
+	};
+
+	private AccountDAO dao;
+
+	private VersionTracker<Account, Long> versionTracker;
+
+	private ControllerImpl<Account, Long> controller;
+
+	@SuppressWarnings("unused")
+	@BeforeMethod
+	private void setUp() {
+
+		dao = new AccountDAO(3);
+		versionTracker = new VersionTracker<Account, Long>(AccountDAO.RESOLVER, NAME_VERSION);
+
+		controller = new ControllerImpl<Account, Long>(dao) {
+		};
+		controller.setIdentifierResolver(AccountDAO.RESOLVER);
+		controller.setVersionTracker(versionTracker);
+
+	}
+
+	/**
+	 * Tests {@link VersionTracker#record(Object)} with a maximum size.
+	 */
+	@Test
+	public void record_maximumSize() {
+
+		versionTracker.setMaximumSize(2);
+
+		versionTracker.record(dao.findById(1L));
+		versionTracker.record(dao.findById(2L));
+		versionTracker.record(dao.findById(2L));
+		assert versionTracker.size() == 2;
+
+		versionTracker.record(dao.findById(3L));
+		assert versionTracker.size() == 1;
+		assert versionTracker.getVersion(3L).equals("account 3");
+
+	}
+
+	/**
+	 * Tests that controllers record versions on reads and forget them on writes.
+	 */
+	@Test
+	public void readsAndWrites() {
+
+		controller.findAll();
+		assert versionTracker.size() == 3;
+
+		final Account account = controller.findById(1L);
+		account.setName("changed");
+		controller.update(account);
+		assert versionTracker.getVersion(1L) == null;
+
+		controller.delete(2L);
+		assert versionTracker.getVersion(2L) == null;
+		assert versionTracker.getVersion(3L).equals("account 3");
+
+	}
+
+	/**
+	 * Tests that a read that loaded an object before a concurrent write does not record its
+	 * version after the write forgot it.
+	 */
+	@Test
+	public void record_concurrentWrite() {
+
+		final AccountDAO writingDAO = new AccountDAO(1) {
+
+			private boolean written;
+
+			@Override
+			public Account findById(Long id) {
+
+				final Account stale = new Account(id, super.findById(id).getName());
+
+				// the write runs between the DAO read and the recording of its result
+				if (!written) {
+					written = true;
+					controller.update(new Account(id, "changed"));
+				}
+
+				return stale;
+
+			}
+
+		};
+
+		controller = new ControllerImpl<Account, Long>(writingDAO) {
+		};
+		controller.setIdentifierResolver(AccountDAO.RESOLVER);
+		controller.setVersionTracker(versionTracker);
+
+		assert controller.findById(1L).getName().equals("account 1");
+		assert versionTracker.getVersion(1L) == null;
+
+		assert controller.findById(1L).getName().equals("changed");
+		assert versionTracker.getVersion(1L) == null;
+
+		// generations taken before a write are rejected, later ones are not
+		final long generation = versionTracker.getGeneration();
+		versionTracker.forgetId(1L);
+		versionTracker.record(new Account(1L, "v2"), generation);
+		assert versionTracker.getVersion(1L) == null;
+
+		versionTracker.record(new Account(1L, "v2"), versionTracker.getGeneration());
+		assert versionTracker.getVersion(1L).equals("v2");
+
+	}
+
+	/**
+	 * Tests that reading an object written but not flushed yet, which still has the version it
+	 * had when it was written, does not record that version again.
+	 */
+	@Test
+	public void record_afterWriteBeforeFlush() {
+
+		final Account account = controller.findById(1L);
+		assert versionTracker.getVersion(1L).equals("account 1");
+
+		controller.update(account);
+		assert versionTracker.getVersion(1L) == null;
+
+		controller.findById(1L);
+		assert versionTracker.getVersion(1L) == null;
+
+		// once flushed, the object has a new version
+		account.setName("flushed");
+		controller.findById(1L);
+		assert versionTracker.getVersion(1L).equals("flushed");
+
+	}
+
+	/**
+	 * Tests {@link ControllerImpl#findByIdsIfChanged(Map)} with a DAO declaring
+	 * <code>findByIds(Long...)</code>.
+	 */
+	@Test
+	public void findByIdsIfChanged() {
+
+		final Map<Long, Serializable> versions = new HashMap<Long, Serializable>();
+		versions.put(1L, "account 1");
+		versions.put(2L, "old");
+
+		final Map<Long, ConditionalResult<Account>> result = controller.findByIdsIfChanged(versions);
+
+		assert !result.get(1L).isModified();
+		assert result.get(2L).isModified();
+		assert result.get(2L).getObject().getName().equals("account 2");
+		assert dao.getFindByIdsCount() == 1;
+
+	}
+
+}
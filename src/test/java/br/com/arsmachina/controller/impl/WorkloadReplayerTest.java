@@ -0,0 +1,266 @@
+// Copyright 2008-2013 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.controller.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.EasyMock;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.controller.impl.AccountDAO.Account;
+import br.com.arsmachina.controller.impl.InMemoryQueryEngineTest.Person;
+import br.com.arsmachina.dao.DAO;
+import br.com.arsmachina.dao.SortCriterion;
+
+/**
+ * Test class for {@link RecordingController}, {@link TraceReader} and {@link WorkloadReplayer}.
+ */
+public class WorkloadReplayerTest {
+
+	private static final IdentifierResolver<Person, Integer> RESOLVER = new IdentifierResolver<Person, Integer>() {
+
+		public Integer getId(Person object) {
+			return object.getId();
+		}
+
+	};
+
+	private File file;
+
+	@SuppressWarnings("unused")
+	@BeforeMethod
+	private void setUp() throws IOException {
+		file = File.createTempFile("trace", ".bin");
+		file.deleteOnExit();
+	}
+
+	/**
+	 * Tests recording, reading and replaying a trace.
+	 */
+	@Test
+	public void replay() throws IOException {
+
+		final TraceWriter writer = new TraceWriter(file, 4096);
+		final RecordingController<Person, Integer> recording = new RecordingController<Person, Integer>(
+				createController(), Person.class, writer);
+		recording.setIdentifierResolver(RESOLVER);
+
+		recording.findById(1);
+		recording.findByIds(1, 2);
+		recording.findAll(0, 10, new SortCriterion("name", false));
+		recording.update(recording.findById(2));
+		recording.findByExample(new Person(null, "Ana", null));
+		writer.close();
+
+		assert writer.getRecordedCount() == 6;
+		assert writer.getDroppedCount() == 0;
+
+		final TraceReader reader = new TraceReader(file);
+		final List<TraceEvent> events = reader.readAll();
+		reader.close();
+
+		assert events.size() == 6;
+		assert events.get(0).getMethod() == TraceMethod.FIND_BY_ID;
+		assert events.get(0).getEntityName().equals(Person.class.getName());
+		assert events.get(1).getIds().equals(Arrays.asList(1, 2));
+		assert events.get(2).getMaxResults() == 10;
+		assert events.get(2).getSortCriteria()[0].getProperty().equals("name");
+		assert !events.get(2).getSortCriteria()[0].isAscending();
+		assert events.get(4).getMethod() == TraceMethod.UPDATE;
+		assert events.get(4).getIds().equals(Arrays.asList(2));
+
+		final WorkloadReplayer replayer = new WorkloadReplayer();
+		replayer.register(Person.class, createController());
+		replayer.setSpeed(Double.POSITIVE_INFINITY);
+
+		// writes are skipped by default
+		ReplayReport report = replayer.replay(file);
+
+		assert report.getReplayedCount() == 4 : report;
+		assert report.getSkippedCount() == 2;
+		assert report.getFailedCount() == 0;
+		assert report.getMethods().get(TraceMethod.FIND_BY_ID).getCount() == 2;
+
+		replayer.setReplayWrites(true);
+		report = replayer.replay(file);
+
+		assert report.getReplayedCount() == 5 : report;
+		assert report.getSkippedCount() == 1;
+		assert report.getMethods().get(TraceMethod.UPDATE).getCount() == 1;
+
+	}
+
+	/**
+	 * Tests recording from many threads and reading the calls back in start time order.
+	 */
+	@Test
+	public void record_concurrent() throws Exception {
+
+		final TraceWriter writer = new TraceWriter(file, 1024 * 1024);
+		final int threads = 4;
+		final int calls = 500;
+		final Thread[] workers = new Thread[threads];
+
+		for (int i = 0; i < threads; i++) {
+
+			final int worker = i;
+
+			workers[i] = new Thread() {
+
+				@Override
+				public void run() {
+
+					for (int j = 0; j < calls; j++) {
+
+						final Class<?> entityClass = j % 2 == 0 ? Person.class : String.class;
+						final long start = System.nanoTime() - (j % 3) * 1000;
+
+						writer.write(TraceMethod.FIND_BY_ID, entityClass, start, 10, false, Arrays
+								.asList(worker * calls + j), 0, 0, null);
+
+					}
+
+				}
+
+			};
+			workers[i].start();
+
+		}
+
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		writer.close();
+
+		assert writer.getRecordedCount() == threads * calls;
+		assert writer.getDroppedCount() == 0;
+
+		final TraceReader reader = new TraceReader(file);
+		final List<TraceEvent> events = reader.readAll();
+		reader.close();
+
+		assert events.size() == threads * calls;
+
+		for (int i = 1; i < events.size(); i++) {
+			assert events.get(i - 1).getStartTime() <= events.get(i).getStartTime();
+		}
+
+	}
+
+	/**
+	 * Tests replaying <code>findByIds()</code> calls against a DAO declaring
+	 * <code>findByIds(Long...)</code>.
+	 */
+	@Test
+	public void replay_concreteKeyType() throws IOException {
+
+		final TraceWriter writer = new TraceWriter(file, 4096);
+		final RecordingController<Account, Long> recording = new RecordingController<Account, Long>(
+				new ControllerImpl<Account, Long>(new AccountDAO(2)) {
+				}, Account.class, writer);
+
+		recording.findByIds(1L, 2L);
+		writer.close();
+
+		final AccountDAO dao = new AccountDAO(2);
+		final WorkloadReplayer replayer = new WorkloadReplayer();
+		replayer.register(Account.class, new ControllerImpl<Account, Long>(dao) {
+		});
+		replayer.setSpeed(Double.POSITIVE_INFINITY);
+
+		final ReplayReport report = replayer.replay(file);
+
+		assert report.getReplayedCount() == 1 : report;
+		assert report.getFailedCount() == 0;
+		assert dao.getFindByIdsCount() == 1;
+
+	}
+
+	/**
+	 * Tests that the replay schedule starts at the first recorded call, not at the creation of
+	 * the {@link TraceWriter}.
+	 */
+	@Test
+	public void replay_scheduleOrigin() throws IOException {
+
+		final TraceWriter writer = new TraceWriter(file, 4096);
+		final long start = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+		writer.write(TraceMethod.FIND_BY_ID, Person.class, start, 10, false, Arrays.asList(1), 0,
+				0, null);
+		writer.write(TraceMethod.FIND_BY_ID, Person.class, start + 1000, 10, false, Arrays
+				.asList(2), 0, 0, null);
+		writer.close();
+
+		final WorkloadReplayer replayer = new WorkloadReplayer();
+		replayer.register(Person.class, createController());
+
+		final ReplayReport report = replayer.replay(file);
+
+		assert report.getReplayedCount() == 2 : report;
+		assert report.getElapsedTime(TimeUnit.SECONDS) < 5 : report;
+
+	}
+
+	/**
+	 * Tests that {@link RecordingController#findByIds(Integer...)} records calls with a
+	 * <code>null</code> array.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void record_nullIds() throws IOException {
+
+		final DAO<Person, Integer> dao = EasyMock.createMock(DAO.class);
+		final TraceWriter writer = new TraceWriter(file, 4096);
+		final RecordingController<Person, Integer> recording = new RecordingController<Person, Integer>(
+				new ControllerImpl<Person, Integer>(dao) {
+				}, Person.class, writer);
+
+		final List<Person> empty = Collections.emptyList();
+		EasyMock.expect(dao.findByIds((Integer[]) null)).andReturn(empty);
+		EasyMock.replay(dao);
+
+		assert recording.findByIds((Integer[]) null) == empty;
+		EasyMock.verify(dao);
+		writer.close();
+
+		final TraceReader reader = new TraceReader(file);
+		final List<TraceEvent> events = reader.readAll();
+		reader.close();
+
+		assert events.size() == 1;
+		assert events.get(0).getIds().isEmpty();
+
+	}
+
+	private ControllerImpl<Person, Integer> createController() {
+
+		final InMemoryDAO<Person, Integer> dao = new InMemoryDAO<Person, Integer>(Person.class,
+				RESOLVER);
+		dao.load(Arrays.asList(new Person(1, "Ana", "Recife"), new Person(2, "Bia", "Natal")));
+
+		return new ControllerImpl<Person, Integer>(dao) {
+		};
+
+	}
+
+}